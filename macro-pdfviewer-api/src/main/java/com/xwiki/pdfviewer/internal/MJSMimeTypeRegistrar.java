@@ -31,6 +31,8 @@ import org.apache.tika.mime.MediaType;
 import org.apache.tika.mime.MimeTypes;
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
 import org.xwiki.tika.internal.TikaUtils;
 
 /**
@@ -43,16 +45,47 @@ import org.xwiki.tika.internal.TikaUtils;
  */
 @Component(roles = MJSMimeTypeRegistrar.class)
 @Singleton
-public class MJSMimeTypeRegistrar
+public class MJSMimeTypeRegistrar implements Initializable
 {
     @Inject
     private Logger logger;
 
+    /**
+     * Whether the mime type detection for ".mjs" files has already been checked (and fixed, if needed). Written only
+     * while holding the instance lock, but read without it so that the check costs nothing once done.
+     */
+    private volatile boolean registered;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        // Register the mime type as soon as the component is loaded, so that no page rendering has to pay for it. A
+        // failure is not fatal here: it is retried (and reported) the next time the macro is executed.
+        try {
+            maybeRegisterMJSMimeType();
+        } catch (RuntimeException e) {
+            this.logger.debug("The .mjs mime type registration will be retried on the next macro execution.", e);
+        }
+    }
+
     /**
      * If the correct mime type for files with ".mjs" extension is not detected, reflection is used to modify the
-     * {@link TikaUtils} {@link Tika} object with the right mime type configuration for ".mjs" files.
+     * {@link TikaUtils} {@link Tika} object with the right mime type configuration for ".mjs" files. The check is
+     * done only once, so calling this method after a successful registration has no cost.
      */
     public void maybeRegisterMJSMimeType()
+    {
+        if (!this.registered) {
+            synchronized (this) {
+                if (!this.registered) {
+                    register();
+                    this.registered = true;
+                }
+            }
+        }
+    }
+
+    private void register()
     {
         try {
             String mjsMimeType = TikaUtils.detect("test.mjs");
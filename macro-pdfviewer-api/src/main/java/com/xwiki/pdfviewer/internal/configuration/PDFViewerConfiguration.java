@@ -0,0 +1,126 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.configuration;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.LocalDocumentReference;
+import org.xwiki.model.reference.WikiReference;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+/**
+ * Provides the PDF Viewer configuration of the current wiki. The values of the configuration page are read once per
+ * wiki and kept in memory until {@link PDFViewerConfigurationListener} notices a change of that page.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component(roles = PDFViewerConfiguration.class)
+@Singleton
+public class PDFViewerConfiguration
+{
+    /**
+     * The reference of the page holding the configuration, relative to the wiki.
+     */
+    public static final LocalDocumentReference CONFIGURATION_REFERENCE =
+        new LocalDocumentReference(List.of("PDFViewer", "Code"), "PDFViewerConfiguration");
+
+    /**
+     * The reference of the configuration class, relative to the wiki.
+     */
+    public static final LocalDocumentReference CONFIGURATION_CLASS_REFERENCE =
+        new LocalDocumentReference(List.of("PDFViewer", "Code"), "PDFViewerConfigurationClass");
+
+    private static final String TRUSTED_ORIGINS = "trustedOrigins";
+
+    private static final String WITH_CREDENTIALS = "withCredentials";
+
+    private static final String LAZY_LOADING = "lazyLoading";
+
+    private static final Pattern LINE_SEPARATOR = Pattern.compile("\\R");
+
+    private final Map<String, PDFViewerConfigurationSnapshot> snapshots = new ConcurrentHashMap<>();
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private Provider<XWikiContext> wikiContextProvider;
+
+    /**
+     * @return the configuration of the current wiki
+     */
+    public PDFViewerConfigurationSnapshot getConfiguration()
+    {
+        String wikiId = this.wikiContextProvider.get().getWikiId();
+        PDFViewerConfigurationSnapshot snapshot = this.snapshots.computeIfAbsent(wikiId, this::load);
+        // The snapshot is not cached when the configuration page could not be loaded, so that it is retried later.
+        return snapshot != null ? snapshot : PDFViewerConfigurationSnapshot.DEFAULT;
+    }
+
+    /**
+     * Forget the configuration of the given wiki, so that it is read again on the next access.
+     *
+     * @param wikiId the identifier of the wiki whose configuration changed
+     */
+    public void invalidate(String wikiId)
+    {
+        this.snapshots.remove(wikiId);
+    }
+
+    private PDFViewerConfigurationSnapshot load(String wikiId)
+    {
+        XWikiContext wikiContext = this.wikiContextProvider.get();
+        DocumentReference configReference = new DocumentReference(CONFIGURATION_REFERENCE, new WikiReference(wikiId));
+        try {
+            XWikiDocument configDocument = wikiContext.getWiki().getDocument(configReference, wikiContext);
+            BaseObject configObject = configDocument.getXObject(CONFIGURATION_CLASS_REFERENCE);
+            if (configObject == null) {
+                return PDFViewerConfigurationSnapshot.DEFAULT;
+            }
+            List<String> trustedOrigins =
+                Arrays.stream(LINE_SEPARATOR.split(configObject.getLargeStringValue(TRUSTED_ORIGINS)))
+                    .map(String::trim).filter(StringUtils::isNotEmpty).collect(Collectors.toList());
+            return new PDFViewerConfigurationSnapshot(trustedOrigins, configObject.getIntValue(WITH_CREDENTIALS) == 1,
+                configObject.getIntValue(LAZY_LOADING) == 1);
+        } catch (Exception e) {
+            this.logger.warn("Failed to load the PDF Viewer configuration from [{}]. Root cause: [{}]",
+                configReference, ExceptionUtils.getRootCauseMessage(e));
+            return null;
+        }
+    }
+}
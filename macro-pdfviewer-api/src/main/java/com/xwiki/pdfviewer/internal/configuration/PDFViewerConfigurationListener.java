@@ -0,0 +1,77 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.configuration;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.bridge.event.WikiDeletedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Invalidates the cached PDF Viewer configuration of a wiki when its configuration page is modified.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component
+@Named(PDFViewerConfigurationListener.NAME)
+@Singleton
+public class PDFViewerConfigurationListener extends AbstractEventListener
+{
+    /**
+     * The name of the listener.
+     */
+    public static final String NAME = "com.xwiki.pdfviewer.internal.configuration.PDFViewerConfigurationListener";
+
+    @Inject
+    private PDFViewerConfiguration configuration;
+
+    /**
+     * Default constructor.
+     */
+    public PDFViewerConfigurationListener()
+    {
+        super(NAME, new DocumentCreatedEvent(), new DocumentUpdatedEvent(), new DocumentDeletedEvent(),
+            new WikiDeletedEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        if (event instanceof WikiDeletedEvent) {
+            this.configuration.invalidate(((WikiDeletedEvent) event).getWikiId());
+        } else {
+            DocumentReference documentReference = ((XWikiDocument) source).getDocumentReference();
+            if (PDFViewerConfiguration.CONFIGURATION_REFERENCE.equals(documentReference.getLocalDocumentReference())) {
+                this.configuration.invalidate(documentReference.getWikiReference().getName());
+            }
+        }
+    }
+}
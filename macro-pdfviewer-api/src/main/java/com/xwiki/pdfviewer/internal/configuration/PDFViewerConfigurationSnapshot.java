@@ -0,0 +1,95 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.configuration;
+
+import java.util.List;
+
+/**
+ * Immutable view of the values stored in the {@code PDFViewer.Code.PDFViewerConfiguration} page of a wiki.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+public class PDFViewerConfigurationSnapshot
+{
+    /**
+     * The configuration used when the configuration page or its object is missing. The lazy loading is opt-in, so that
+     * the viewers keep being created with the page unless the wiki or the macro asks otherwise.
+     */
+    public static final PDFViewerConfigurationSnapshot DEFAULT =
+        new PDFViewerConfigurationSnapshot(List.of(), false, false);
+
+    private final List<String> trustedOrigins;
+
+    private final String trustedOriginsParameter;
+
+    private final boolean withCredentials;
+
+    private final boolean lazyLoading;
+
+    /**
+     * Default constructor.
+     *
+     * @param trustedOrigins the viewer origins trusted to display external PDF files
+     * @param withCredentials whether the credentials should be sent when fetching external PDF files
+     * @param lazyLoading whether the viewers should be created only when they are scrolled into view, by default
+     */
+    public PDFViewerConfigurationSnapshot(List<String> trustedOrigins, boolean withCredentials, boolean lazyLoading)
+    {
+        this.trustedOrigins = List.copyOf(trustedOrigins);
+        this.trustedOriginsParameter = String.join(",", this.trustedOrigins);
+        this.withCredentials = withCredentials;
+        this.lazyLoading = lazyLoading;
+    }
+
+    /**
+     * @return the viewer origins trusted to display external PDF files
+     */
+    public List<String> getTrustedOrigins()
+    {
+        return this.trustedOrigins;
+    }
+
+    /**
+     * @return the trusted origins joined with a comma, as expected by the viewer query string
+     */
+    public String getTrustedOriginsParameter()
+    {
+        return this.trustedOriginsParameter;
+    }
+
+    /**
+     * @return {@code true} if the credentials should be sent when fetching external PDF files, {@code false}
+     *         otherwise
+     */
+    public boolean isWithCredentials()
+    {
+        return this.withCredentials;
+    }
+
+    /**
+     * @return {@code true} if the viewers should be created only when they are scrolled into view, unless the macro
+     *         parameter says otherwise, {@code false} otherwise
+     */
+    public boolean isLazyLoading()
+    {
+        return this.lazyLoading;
+    }
+}
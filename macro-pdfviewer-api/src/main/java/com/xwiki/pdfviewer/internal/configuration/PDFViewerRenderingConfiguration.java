@@ -0,0 +1,51 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.configuration;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.configuration.ConfigurationSource;
+
+/**
+ * Server level configuration of the macro rendering, read from {@code xwiki.properties}.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component(roles = PDFViewerRenderingConfiguration.class)
+@Singleton
+public class PDFViewerRenderingConfiguration
+{
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configurationSource;
+
+    /**
+     * @return {@code true} if the macro should be rendered by the {@code pdfviewer/pdfviewer.vm} template (e.g.
+     *         because a skin overrides it), {@code false} if it should be rendered by the faster Java implementation
+     */
+    public boolean isTemplateEnabled()
+    {
+        return this.configurationSource.getProperty("pdfviewer.rendering.template", false);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.derivative;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.io.FileUtils;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.environment.Environment;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiAttachment;
+
+/**
+ * Linearizes the PDF attachments ("fast web view"), so that the viewer can display the first page before the whole
+ * file is downloaded. The linearization is done by the {@code qpdf} executable, see {@link PDFLinearizer}.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component
+@Named(LinearizedPDFGenerator.VARIANT)
+@Singleton
+public class LinearizedPDFGenerator implements PDFDerivativeGenerator
+{
+    /**
+     * The name of the linearized derivative.
+     */
+    public static final String VARIANT = "linearized";
+
+    @Inject
+    private PDFLinearizer linearizer;
+
+    @Inject
+    private Environment environment;
+
+    @Inject
+    private Provider<XWikiContext> wikiContextProvider;
+
+    @Override
+    public boolean isEnabled()
+    {
+        return this.linearizer.isEnabled();
+    }
+
+    @Override
+    public boolean isDisplayable()
+    {
+        return true;
+    }
+
+    @Override
+    public void generate(XWikiAttachment attachment, File target) throws Exception
+    {
+        File input = File.createTempFile("pdfviewer-", ".pdf", this.environment.getTemporaryDirectory());
+        try {
+            try (InputStream content = attachment.getContentInputStream(this.wikiContextProvider.get())) {
+                FileUtils.copyInputStreamToFile(content, input);
+            }
+            this.linearizer.linearize(input, target);
+        } finally {
+            Files.deleteIfExists(input.toPath());
+        }
+    }
+}
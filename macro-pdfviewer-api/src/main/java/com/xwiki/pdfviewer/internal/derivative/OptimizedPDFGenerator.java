@@ -0,0 +1,252 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.derivative;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.environment.Environment;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiAttachment;
+
+/**
+ * Creates a web optimized copy of the PDF attachments, whose images are downsampled to the configured resolution and
+ * whose page content is compressed, so that image heavy files (e.g. scans) download faster. The copy is linearized
+ * too, when {@link PDFLinearizer} is enabled. The viewer loads it instead of the attachment, while the download and
+ * permalink buttons still point to the attachment.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component
+@Named(OptimizedPDFGenerator.VARIANT)
+@Singleton
+public class OptimizedPDFGenerator implements PDFDerivativeGenerator
+{
+    /**
+     * The name of the web optimized derivative.
+     */
+    public static final String VARIANT = "optimized";
+
+    /**
+     * Preferred over the other displayable derivatives, since it is linearized too when possible.
+     */
+    private static final int PRIORITY = 500;
+
+    private static final float POINTS_PER_INCH = 72;
+
+    /**
+     * Images that would shrink by less than this ratio are kept, since recompressing them would only lose quality.
+     */
+    private static final double MAX_SCALE = 0.9;
+
+    @Inject
+    private PDFDerivativeConfiguration configuration;
+
+    @Inject
+    private PDFLinearizer linearizer;
+
+    @Inject
+    private Environment environment;
+
+    @Inject
+    private Provider<XWikiContext> wikiContextProvider;
+
+    @Override
+    public boolean isEnabled()
+    {
+        return this.configuration.isOptimizedEnabled();
+    }
+
+    @Override
+    public boolean isDisplayable()
+    {
+        return true;
+    }
+
+    @Override
+    public boolean accepts(XWikiAttachment attachment)
+    {
+        return attachment.getLongSize() >= this.configuration.getOptimizedMinFileSize();
+    }
+
+    @Override
+    public int getPriority()
+    {
+        return PRIORITY;
+    }
+
+    @Override
+    public void generate(XWikiAttachment attachment, File target) throws Exception
+    {
+        if (!this.linearizer.isEnabled()) {
+            optimize(attachment, target);
+            return;
+        }
+
+        File optimized = File.createTempFile("pdfviewer-", ".pdf", this.environment.getTemporaryDirectory());
+        try {
+            optimize(attachment, optimized);
+            this.linearizer.linearize(optimized, target);
+        } finally {
+            Files.deleteIfExists(optimized.toPath());
+        }
+    }
+
+    private void optimize(XWikiAttachment attachment, File target) throws Exception
+    {
+        // Let PDFBox use temporary files rather than the heap, since the PDF files can be very large.
+        try (InputStream content = attachment.getContentInputStream(this.wikiContextProvider.get());
+            PDDocument document = PDDocument.load(content, MemoryUsageSetting.setupTempFileOnly()))
+        {
+            if (document.isEncrypted()) {
+                throw new IOException("Encrypted PDF files are not optimized.");
+            }
+
+            // The images shared by several pages are replaced only once.
+            Map<COSStream, PDImageXObject> replacements = new HashMap<>();
+            for (PDPage page : document.getPages()) {
+                PDRectangle box = page.getCropBox();
+                int maxWidth = toPixels(Math.max(box.getWidth(), box.getHeight()));
+                optimizeImages(document, page.getResources(), maxWidth, replacements, new HashSet<>());
+                compressContent(page);
+            }
+            document.save(target);
+        }
+
+        if (target.length() >= attachment.getLongSize()) {
+            throw new IOException("The optimized PDF file is not smaller than the attachment.");
+        }
+    }
+
+    private int toPixels(float points)
+    {
+        return (int) Math.ceil(points / POINTS_PER_INCH * this.configuration.getOptimizedDPI());
+    }
+
+    private void optimizeImages(PDDocument document, PDResources resources, int maxSize,
+        Map<COSStream, PDImageXObject> replacements, Set<COSStream> visitedForms) throws IOException
+    {
+        if (resources == null) {
+            return;
+        }
+
+        for (COSName name : resources.getXObjectNames()) {
+            PDXObject xobject = resources.getXObject(name);
+            if (xobject instanceof PDImageXObject) {
+                COSStream stream = xobject.getCOSObject();
+                if (!replacements.containsKey(stream)) {
+                    replacements.put(stream, downsample(document, (PDImageXObject) xobject, maxSize));
+                }
+                PDImageXObject replacement = replacements.get(stream);
+                if (replacement != null) {
+                    resources.put(name, replacement);
+                }
+            } else if (xobject instanceof PDFormXObject && visitedForms.add(xobject.getCOSObject())) {
+                // The forms can refer to themselves, directly or not, so each form of the page is visited only once.
+                optimizeImages(document, ((PDFormXObject) xobject).getResources(), maxSize, replacements,
+                    visitedForms);
+            }
+        }
+    }
+
+    private PDImageXObject downsample(PDDocument document, PDImageXObject image, int maxSize) throws IOException
+    {
+        // JPEG supports neither transparency nor bi-level images, which are already well compressed anyway.
+        if (image.isStencil() || image.getBitsPerComponent() == 1
+            || image.getCOSObject().containsKey(COSName.SMASK) || image.getCOSObject().containsKey(COSName.MASK))
+        {
+            return null;
+        }
+
+        // The size of the image on the page is not known without parsing the content, so the images are scaled to fit
+        // the page, which is the largest they can be displayed.
+        double scale = Math.min(1, (double) maxSize / Math.max(image.getWidth(), image.getHeight()));
+        if (scale > MAX_SCALE) {
+            return null;
+        }
+
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        // Decode only every n-th pixel of the image, keeping it at least as large as the downsampled one, rather than
+        // decoding the whole image on the heap (about 400 MB for a 10000 x 10000 scan).
+        int subsampling = Math.max(1, (int) Math.floor(1 / scale));
+        boolean gray = image.getColorSpace().getNumberOfComponents() == 1;
+        BufferedImage downsampled =
+            new BufferedImage(width, height, gray ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = downsampled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image.getImage(null, subsampling), 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return JPEGFactory.createFromImage(document, downsampled, this.configuration.getOptimizedJPEGQuality());
+    }
+
+    private void compressContent(PDPage page) throws IOException
+    {
+        Iterator<PDStream> contentStreams = page.getContentStreams();
+        while (contentStreams.hasNext()) {
+            COSStream stream = contentStreams.next().getCOSObject();
+            if (stream.getFilters() == null) {
+                byte[] content;
+                try (InputStream input = stream.createInputStream()) {
+                    content = IOUtils.toByteArray(input);
+                }
+                try (OutputStream output = stream.createOutputStream(COSName.FLATE_DECODE)) {
+                    output.write(content);
+                }
+            }
+        }
+    }
+}
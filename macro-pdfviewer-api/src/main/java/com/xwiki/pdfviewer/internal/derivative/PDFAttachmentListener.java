@@ -0,0 +1,99 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.derivative;
+
+import java.io.IOException;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.AttachmentReference;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.internal.event.AbstractAttachmentEvent;
+import com.xpn.xwiki.internal.event.AttachmentAddedEvent;
+import com.xpn.xwiki.internal.event.AttachmentDeletedEvent;
+import com.xpn.xwiki.internal.event.AttachmentUpdatedEvent;
+
+/**
+ * Schedules the creation of the derivatives of the PDF attachments when they are uploaded, and removes them when the
+ * attachments are deleted.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component
+@Named(PDFAttachmentListener.NAME)
+@Singleton
+public class PDFAttachmentListener extends AbstractEventListener
+{
+    /**
+     * The name of the listener.
+     */
+    public static final String NAME = "com.xwiki.pdfviewer.internal.derivative.PDFAttachmentListener";
+
+    private static final String PDF_EXTENSION = ".pdf";
+
+    @Inject
+    private PDFDerivativeScheduler scheduler;
+
+    @Inject
+    private PDFDerivativeStore derivativeStore;
+
+    @Inject
+    private Logger logger;
+
+    /**
+     * Default constructor.
+     */
+    public PDFAttachmentListener()
+    {
+        super(NAME, new AttachmentAddedEvent(), new AttachmentUpdatedEvent(), new AttachmentDeletedEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        String attachmentName = ((AbstractAttachmentEvent) event).getName();
+        if (!StringUtils.endsWithIgnoreCase(attachmentName, PDF_EXTENSION)) {
+            return;
+        }
+
+        AttachmentReference attachmentReference =
+            new AttachmentReference(attachmentName, ((XWikiDocument) source).getDocumentReference());
+        if (event instanceof AttachmentDeletedEvent) {
+            try {
+                this.derivativeStore.delete(attachmentReference);
+            } catch (IOException e) {
+                this.logger.warn("Failed to remove the derivatives of [{}]. Root cause: [{}]", attachmentReference,
+                    ExceptionUtils.getRootCauseMessage(e));
+            }
+        } else {
+            this.scheduler.schedule(attachmentReference);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.derivative;
+
+import java.util.Date;
+
+import com.xpn.xwiki.doc.XWikiAttachment;
+
+/**
+ * Helpers identifying the content of the PDF attachments, for the URLs, entity tags and derivatives that have to change
+ * whenever the content changes.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+public final class PDFAttachmentRevisions
+{
+    private PDFAttachmentRevisions()
+    {
+    }
+
+    /**
+     * The attachment version alone doesn't identify the content: an attachment that is deleted and uploaded again
+     * starts over at version 1.1. The upload date is added to tell these attachments apart.
+     *
+     * @param attachment a PDF attachment
+     * @return a string that changes whenever the content of the attachment changes
+     */
+    public static String getRevision(XWikiAttachment attachment)
+    {
+        Date date = attachment.getDate();
+        return date != null ? attachment.getVersion() + '.' + date.getTime() : attachment.getVersion();
+    }
+}
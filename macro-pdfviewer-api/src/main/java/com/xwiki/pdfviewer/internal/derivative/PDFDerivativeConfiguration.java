@@ -0,0 +1,171 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.derivative;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.configuration.ConfigurationSource;
+
+/**
+ * Server level configuration of the PDF derivatives, read from {@code xwiki.properties}.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component(roles = PDFDerivativeConfiguration.class)
+@Singleton
+public class PDFDerivativeConfiguration
+{
+    private static final String PREFIX = "pdfviewer.derivatives.";
+
+    private static final int DEFAULT_THREADS = 2;
+
+    private static final int DEFAULT_QUEUE_SIZE = 100;
+
+    private static final int DEFAULT_TIMEOUT = 300;
+
+    private static final long DEFAULT_CACHE_SIZE = 10240;
+
+    private static final String OPTIMIZED_PREFIX = PREFIX + "optimized.";
+
+    private static final int DEFAULT_OPTIMIZED_DPI = 150;
+
+    private static final float DEFAULT_OPTIMIZED_JPEG_QUALITY = 0.75F;
+
+    private static final long DEFAULT_OPTIMIZED_MIN_FILE_SIZE = 5;
+
+    private static final long MEGABYTE = 1024L * 1024L;
+
+    private static final String JOB_PREFIX = PREFIX + "job.";
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configurationSource;
+
+    /**
+     * @return the number of threads creating the derivatives in the background
+     */
+    public int getThreads()
+    {
+        return Math.max(1, this.configurationSource.getProperty(PREFIX + "threads", DEFAULT_THREADS));
+    }
+
+    /**
+     * @return the maximum number of attachments waiting for their derivatives to be created; attachments uploaded
+     *         while the queue is full are skipped
+     */
+    public int getQueueSize()
+    {
+        return Math.max(1, this.configurationSource.getProperty(PREFIX + "queueSize", DEFAULT_QUEUE_SIZE));
+    }
+
+    /**
+     * @return the path of the {@code qpdf} executable used to linearize the PDF files, or {@code null} if the PDF
+     *         files should not be linearized
+     */
+    public String getQPDFPath()
+    {
+        return this.configurationSource.getProperty(PREFIX + "linearized.qpdf", String.class);
+    }
+
+    /**
+     * @return {@code true} if the text of the PDF files should be extracted to support searching them without
+     *         downloading them, {@code false} otherwise; disabled by default, like the other derivatives, since the
+     *         text of each uploaded PDF file is extracted and stored
+     */
+    public boolean isTextEnabled()
+    {
+        return this.configurationSource.getProperty(PREFIX + "text.enabled", false);
+    }
+
+    /**
+     * @return {@code true} if a web optimized copy of the PDF files, with downsampled images, should be created and
+     *         displayed instead of the attachment, {@code false} otherwise
+     */
+    public boolean isOptimizedEnabled()
+    {
+        return this.configurationSource.getProperty(OPTIMIZED_PREFIX + "enabled", false);
+    }
+
+    /**
+     * @return the resolution, in dots per inch, above which the images of the web optimized PDF files are downsampled
+     */
+    public int getOptimizedDPI()
+    {
+        return Math.max(1, this.configurationSource.getProperty(OPTIMIZED_PREFIX + "dpi", DEFAULT_OPTIMIZED_DPI));
+    }
+
+    /**
+     * @return the quality, between 0 and 1, of the JPEG compression of the downsampled images
+     */
+    public float getOptimizedJPEGQuality()
+    {
+        float quality =
+            this.configurationSource.getProperty(OPTIMIZED_PREFIX + "jpegQuality", DEFAULT_OPTIMIZED_JPEG_QUALITY);
+        return Math.min(1, Math.max(0, quality));
+    }
+
+    /**
+     * @return the size, in bytes, under which the PDF files are displayed as they are, since optimizing them wouldn't
+     *         make a noticeable difference
+     */
+    public long getOptimizedMinFileSize()
+    {
+        return this.configurationSource.getProperty(OPTIMIZED_PREFIX + "minFileSize", DEFAULT_OPTIMIZED_MIN_FILE_SIZE)
+            * MEGABYTE;
+    }
+
+    /**
+     * @return the number of threads used by the job creating the derivatives of the existing PDF attachments
+     */
+    public int getJobThreads()
+    {
+        return Math.max(1, this.configurationSource.getProperty(JOB_PREFIX + "threads", DEFAULT_THREADS));
+    }
+
+    /**
+     * @return the time, in milliseconds, each thread of the job creating the derivatives of the existing PDF
+     *         attachments waits between two attachments, to limit the load of the server
+     */
+    public long getJobDelay()
+    {
+        return Math.max(0, this.configurationSource.getProperty(JOB_PREFIX + "delay", 0L));
+    }
+
+    /**
+     * @return the maximum size, in bytes, of the stored derivatives; the least recently used derivatives are removed
+     *         first
+     */
+    public long getCacheSize()
+    {
+        return this.configurationSource.getProperty(PREFIX + "cacheSize", DEFAULT_CACHE_SIZE) * MEGABYTE;
+    }
+
+    /**
+     * @return the maximum time, in seconds, an external process creating a derivative can take
+     */
+    public int getProcessTimeout()
+    {
+        return this.configurationSource.getProperty(PREFIX + "processTimeout", DEFAULT_TIMEOUT);
+    }
+}
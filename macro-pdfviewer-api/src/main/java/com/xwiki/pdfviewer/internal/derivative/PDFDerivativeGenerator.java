@@ -0,0 +1,80 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.derivative;
+
+import java.io.File;
+
+import org.xwiki.component.annotation.Role;
+
+import com.xpn.xwiki.doc.XWikiAttachment;
+
+/**
+ * Creates a derivative of the PDF attachments in the background, when they are uploaded. The component hint is used
+ * as the variant name of the derivative in the {@link PDFDerivativeStore}.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Role
+public interface PDFDerivativeGenerator
+{
+    /**
+     * The default priority of the derivatives.
+     */
+    int DEFAULT_PRIORITY = 1000;
+
+    /**
+     * @return {@code true} if the derivatives should be created, {@code false} otherwise
+     */
+    boolean isEnabled();
+
+    /**
+     * @return {@code true} if the derivative is a PDF file that the viewer can load instead of the attachment,
+     *         {@code false} otherwise
+     */
+    boolean isDisplayable();
+
+    /**
+     * @param attachment a PDF attachment
+     * @return {@code true} if the derivative of the given attachment should be created, {@code false} otherwise
+     */
+    default boolean accepts(XWikiAttachment attachment)
+    {
+        return true;
+    }
+
+    /**
+     * @return the priority of the derivative, lower values being preferred when the viewer can load several
+     *         derivatives of the same attachment
+     */
+    default int getPriority()
+    {
+        return DEFAULT_PRIORITY;
+    }
+
+    /**
+     * Create the derivative of a PDF attachment.
+     *
+     * @param attachment the PDF attachment
+     * @param target the file where to write the derivative
+     * @throws Exception if the derivative cannot be created
+     */
+    void generate(XWikiAttachment attachment, File target) throws Exception;
+}
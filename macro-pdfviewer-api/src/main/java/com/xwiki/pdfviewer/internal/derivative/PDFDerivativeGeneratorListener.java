@@ -0,0 +1,66 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.derivative;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.event.ComponentDescriptorAddedEvent;
+import org.xwiki.component.event.ComponentDescriptorRemovedEvent;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+
+/**
+ * Makes the scheduler look up the derivative generators again when a generator is registered or unregistered, e.g.
+ * when an extension providing one is installed.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component
+@Named(PDFDerivativeGeneratorListener.NAME)
+@Singleton
+public class PDFDerivativeGeneratorListener extends AbstractEventListener
+{
+    /**
+     * The name of the listener.
+     */
+    public static final String NAME = "com.xwiki.pdfviewer.internal.derivative.PDFDerivativeGeneratorListener";
+
+    @Inject
+    private PDFDerivativeScheduler scheduler;
+
+    /**
+     * Default constructor.
+     */
+    public PDFDerivativeGeneratorListener()
+    {
+        super(NAME, new ComponentDescriptorAddedEvent(PDFDerivativeGenerator.class),
+            new ComponentDescriptorRemovedEvent(PDFDerivativeGenerator.class));
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        this.scheduler.invalidateGenerators();
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.derivative;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.model.reference.AttachmentReference;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiAttachment;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.util.AbstractXWikiRunnable;
+import com.xwiki.pdfviewer.internal.macro.PDFViewerRenderingCache;
+
+/**
+ * Creates the derivatives of the PDF attachments in the background, using a bounded pool of threads so that large
+ * uploads don't compete with the request threads.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component(roles = PDFDerivativeScheduler.class)
+@Singleton
+public class PDFDerivativeScheduler implements Initializable, Disposable
+{
+    private static final long KEEP_ALIVE_MINUTES = 1;
+
+    private final Set<AttachmentReference> pendingAttachments = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The component manager where this component is registered, which is also where the generators of this extension
+     * are registered.
+     */
+    @Inject
+    private ComponentManager componentManager;
+
+    @Inject
+    private PDFDerivativeStore derivativeStore;
+
+    @Inject
+    private PDFDerivativeConfiguration configuration;
+
+    @Inject
+    private Provider<XWikiContext> wikiContextProvider;
+
+    @Inject
+    private PDFViewerRenderingCache renderingCache;
+
+    @Inject
+    private Logger logger;
+
+    private ThreadPoolExecutor executor;
+
+    /**
+     * The enabled generators, sorted by priority, or {@code null} if they have to be looked up again.
+     */
+    private volatile Map<String, PDFDerivativeGenerator> generators;
+
+    @Override
+    public void initialize()
+    {
+        AtomicInteger threadCount = new AtomicInteger();
+        int threads = this.configuration.getThreads();
+        this.executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES,
+            new ArrayBlockingQueue<>(this.configuration.getQueueSize()), runnable -> {
+                Thread thread = new Thread(runnable, "PDF Viewer derivatives " + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void dispose()
+    {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Schedule the creation of the derivatives of the current version of a PDF attachment. Nothing is done if no
+     * derivative generator is enabled, if the attachment is already scheduled or if the queue is full.
+     *
+     * @param attachmentReference the PDF attachment
+     */
+    public void schedule(AttachmentReference attachmentReference)
+    {
+        if (getGenerators().isEmpty() || !this.pendingAttachments.add(attachmentReference)) {
+            return;
+        }
+
+        try {
+            this.executor.execute(new DerivativesRunnable(attachmentReference));
+        } catch (RejectedExecutionException e) {
+            this.pendingAttachments.remove(attachmentReference);
+            this.logger.warn("Skipped the derivatives of [{}] because too many PDF files are being processed.",
+                attachmentReference);
+        }
+    }
+
+    /**
+     * @param attachment a PDF attachment
+     * @return the name of a derivative of the current attachment version that the viewer can load instead of the
+     *         attachment, or {@code null} if there is none yet
+     */
+    public String getDisplayableVariant(XWikiAttachment attachment)
+    {
+        for (Map.Entry<String, PDFDerivativeGenerator> entry : getGenerators().entrySet()) {
+            if (entry.getValue().isDisplayable() && this.derivativeStore.exists(attachment.getReference(),
+                PDFAttachmentRevisions.getRevision(attachment), entry.getKey()))
+            {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param variant the name of a derivative
+     * @return {@code true} if the given variant is created by an enabled generator of PDF files that the viewer can
+     *         load, {@code false} otherwise
+     */
+    public boolean isDisplayableVariant(String variant)
+    {
+        PDFDerivativeGenerator generator = getGenerators().get(variant);
+        return generator != null && generator.isDisplayable();
+    }
+
+    /**
+     * Look up the generators again the next time they are needed, e.g. after a generator has been registered or
+     * unregistered.
+     */
+    public void invalidateGenerators()
+    {
+        this.generators = null;
+    }
+
+    private Map<String, PDFDerivativeGenerator> getGenerators()
+    {
+        // The lookup is cached since it is done by each macro execution and each file request. The generators are
+        // enabled from xwiki.properties, which doesn't change at runtime.
+        Map<String, PDFDerivativeGenerator> currentGenerators = this.generators;
+        if (currentGenerators == null) {
+            currentGenerators = lookupGenerators();
+            this.generators = currentGenerators;
+        }
+        return currentGenerators;
+    }
+
+    private Map<String, PDFDerivativeGenerator> lookupGenerators()
+    {
+        Map<String, PDFDerivativeGenerator> enabledGenerators = new LinkedHashMap<>();
+        try {
+            // Sorted by priority so that the preferred displayable derivative is found first.
+            this.componentManager.<PDFDerivativeGenerator>getInstanceMap(PDFDerivativeGenerator.class).entrySet()
+                .stream().filter(entry -> entry.getValue().isEnabled())
+                .sorted(Comparator.comparingInt(entry -> entry.getValue().getPriority()))
+                .forEach(entry -> enabledGenerators.put(entry.getKey(), entry.getValue()));
+        } catch (ComponentLookupException e) {
+            this.logger.warn("Failed to lookup the PDF derivative generators. Root cause: [{}]",
+                ExceptionUtils.getRootCauseMessage(e));
+        }
+        return Collections.unmodifiableMap(enabledGenerators);
+    }
+
+    private void generate(AttachmentReference attachmentReference) throws Exception
+    {
+        XWikiContext wikiContext = this.wikiContextProvider.get();
+        wikiContext.setWikiId(attachmentReference.getWikiReference().getName());
+        XWikiDocument document =
+            wikiContext.getWiki().getDocument(attachmentReference.getDocumentReference(), wikiContext);
+        XWikiAttachment attachment = document.getAttachment(attachmentReference.getName());
+        if (attachment != null) {
+            createDerivatives(attachment);
+        }
+    }
+
+    /**
+     * Create the missing derivatives of the current version of a PDF attachment, in the current thread.
+     *
+     * @param attachment a PDF attachment
+     * @return {@code true} if a derivative that the viewer can load has been created, {@code false} otherwise
+     */
+    public boolean createDerivatives(XWikiAttachment attachment)
+    {
+        AttachmentReference attachmentReference = attachment.getReference();
+        String revision = PDFAttachmentRevisions.getRevision(attachment);
+        boolean displayableCreated = false;
+        for (Map.Entry<String, PDFDerivativeGenerator> entry : getGenerators().entrySet()) {
+            if (!entry.getValue().accepts(attachment)
+                || this.derivativeStore.exists(attachmentReference, revision, entry.getKey()))
+            {
+                continue;
+            }
+            try {
+                this.derivativeStore.getOrCreate(attachmentReference, revision, entry.getKey(),
+                    target -> entry.getValue().generate(attachment, target));
+                displayableCreated |= entry.getValue().isDisplayable();
+            } catch (IOException e) {
+                this.logger.warn("Failed to create the [{}] derivative of [{}]. Root cause: [{}]", entry.getKey(),
+                    attachmentReference, ExceptionUtils.getRootCauseMessage(e));
+            }
+        }
+        if (displayableCreated) {
+            // The macros displaying the attachment can now load the derivative instead.
+            this.renderingCache.invalidate(attachmentReference.getDocumentReference());
+        }
+        return displayableCreated;
+    }
+
+    private final class DerivativesRunnable extends AbstractXWikiRunnable
+    {
+        private final AttachmentReference attachmentReference;
+
+        DerivativesRunnable(AttachmentReference attachmentReference)
+        {
+            this.attachmentReference = attachmentReference;
+        }
+
+        @Override
+        protected void runInternal()
+        {
+            // Remove the attachment first so that a new version uploaded meanwhile gets scheduled again.
+            pendingAttachments.remove(this.attachmentReference);
+            try {
+                generate(this.attachmentReference);
+            } catch (Exception e) {
+                logger.warn("Failed to create the derivatives of [{}]. Root cause: [{}]", this.attachmentReference,
+                    ExceptionUtils.getRootCauseMessage(e));
+            }
+        }
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.derivative;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.commons.lang3.function.FailableConsumer;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.environment.Environment;
+import org.xwiki.model.reference.AttachmentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+
+/**
+ * Stores the files derived from PDF attachments (e.g. the poster image of the first page) in the permanent directory.
+ * Each derivative is identified by the attachment reference, the attachment revision (see
+ * {@link PDFAttachmentRevisions}) and a variant name, so a new version of an attachment never gets the derivatives of
+ * the previous one. The least recently used derivatives are removed when the store exceeds
+ * {@link PDFDerivativeConfiguration#getCacheSize()}; they are created again when needed.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component(roles = PDFDerivativeStore.class)
+@Singleton
+public class PDFDerivativeStore implements Initializable
+{
+    private static final String SEPARATOR = "-";
+
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final Map<String, CompletableFuture<File>> pendingDerivatives = new ConcurrentHashMap<>();
+
+    /**
+     * The sizes of the stored derivatives, by path, from the least to the most recently used. Guarded by itself.
+     */
+    private final Map<String, Long> sizes = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+
+    private long totalSize;
+
+    @Inject
+    private Environment environment;
+
+    @Inject
+    private EntityReferenceSerializer<String> entityReferenceSerializer;
+
+    @Inject
+    private PDFDerivativeConfiguration configuration;
+
+    @Inject
+    private Logger logger;
+
+    @Override
+    public void initialize()
+    {
+        // Restore the derivatives created before the restart, the least recently modified first.
+        Path root = getRoot().toPath();
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        List<Path> paths;
+        try (Stream<Path> stream = Files.walk(root)) {
+            paths = stream.filter(Files::isRegularFile).collect(Collectors.toList());
+        } catch (IOException e) {
+            this.logger.warn("Failed to list the stored PDF derivatives. Root cause: [{}]",
+                ExceptionUtils.getRootCauseMessage(e));
+            return;
+        }
+        List<File> files = new ArrayList<>();
+        for (Path path : paths) {
+            File file = path.toFile();
+            if (file.getName().endsWith(TEMPORARY_EXTENSION)) {
+                // Left by an interrupted creation.
+                FileUtils.deleteQuietly(file);
+            } else {
+                files.add(file);
+            }
+        }
+        files.sort(Comparator.comparingLong(File::lastModified));
+        synchronized (this.sizes) {
+            for (File file : files) {
+                long size = file.length();
+                this.sizes.put(file.getPath(), size);
+                this.totalSize += size;
+            }
+        }
+        evict();
+    }
+
+    /**
+     * @param attachmentReference the attachment the derivative is created from
+     * @param revision the attachment revision the derivative is created from
+     * @param variant the type of derivative, used as file name (e.g. {@code poster.png})
+     * @return the file where the derivative is stored, which might not exist yet
+     */
+    public File getFile(AttachmentReference attachmentReference, String revision, String variant)
+    {
+        File file = new File(getDirectory(attachmentReference), revision + SEPARATOR + variant);
+        synchronized (this.sizes) {
+            // Mark the derivative as recently used.
+            this.sizes.get(file.getPath());
+        }
+        return file;
+    }
+
+    /**
+     * @param attachmentReference the attachment the derivative is created from
+     * @param revision the attachment revision the derivative is created from
+     * @param variant the type of derivative
+     * @return {@code true} if the derivative has already been created, {@code false} otherwise
+     */
+    public boolean exists(AttachmentReference attachmentReference, String revision, String variant)
+    {
+        return getFile(attachmentReference, revision, variant).isFile();
+    }
+
+    /**
+     * Get a derivative, creating it if it doesn't exist yet. Concurrent calls for the same derivative wait for a
+     * single creation. The derivatives of the same variant created from older revisions of the attachment are removed.
+     *
+     * @param attachmentReference the attachment the derivative is created from
+     * @param revision the attachment revision the derivative is created from
+     * @param variant the type of derivative
+     * @param producer writes the derivative to the given (temporary) file
+     * @return the file where the derivative is stored
+     * @throws IOException if the derivative cannot be created
+     */
+    public File getOrCreate(AttachmentReference attachmentReference, String revision, String variant,
+        FailableConsumer<File, Exception> producer) throws IOException
+    {
+        File file = getFile(attachmentReference, revision, variant);
+        if (file.isFile()) {
+            return file;
+        }
+
+        CompletableFuture<File> creation = new CompletableFuture<>();
+        CompletableFuture<File> pendingCreation = this.pendingDerivatives.putIfAbsent(file.getPath(), creation);
+        if (pendingCreation != null) {
+            return waitFor(pendingCreation, file);
+        }
+
+        try {
+            if (!file.isFile()) {
+                create(file, producer);
+                removeOtherRevisions(file.getParentFile(), revision, variant);
+                add(file);
+            }
+            creation.complete(file);
+            return file;
+        } catch (Exception e) {
+            creation.completeExceptionally(e);
+            throw new IOException(String.format("Failed to create the [%s] derivative of [%s].", variant,
+                attachmentReference), e);
+        } finally {
+            this.pendingDerivatives.remove(file.getPath());
+        }
+    }
+
+    /**
+     * Remove all the derivatives of an attachment.
+     *
+     * @param attachmentReference the attachment whose derivatives are removed
+     * @throws IOException if the derivatives cannot be removed
+     */
+    public void delete(AttachmentReference attachmentReference) throws IOException
+    {
+        File directory = getDirectory(attachmentReference);
+        String prefix = directory.getPath() + File.separator;
+        synchronized (this.sizes) {
+            Iterator<Map.Entry<String, Long>> iterator = this.sizes.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Long> entry = iterator.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    iterator.remove();
+                    this.totalSize -= entry.getValue();
+                }
+            }
+        }
+        FileUtils.deleteDirectory(directory);
+    }
+
+    private File getRoot()
+    {
+        return new File(this.environment.getPermanentDirectory(), "pdfviewer/derivatives");
+    }
+
+    private File getDirectory(AttachmentReference attachmentReference)
+    {
+        // Hash the reference to avoid any issue with the characters allowed in file names.
+        String hash = DigestUtils.sha256Hex(this.entityReferenceSerializer.serialize(attachmentReference));
+        return new File(new File(getRoot(), hash.substring(0, 2)), hash);
+    }
+
+    private void add(File file)
+    {
+        synchronized (this.sizes) {
+            long size = file.length();
+            Long previousSize = this.sizes.put(file.getPath(), size);
+            this.totalSize += size - (previousSize != null ? previousSize : 0);
+        }
+        evict();
+    }
+
+    private void remove(File file)
+    {
+        synchronized (this.sizes) {
+            Long size = this.sizes.remove(file.getPath());
+            if (size != null) {
+                this.totalSize -= size;
+            }
+        }
+        FileUtils.deleteQuietly(file);
+    }
+
+    private void evict()
+    {
+        List<File> evictedFiles = new ArrayList<>();
+        synchronized (this.sizes) {
+            long cacheSize = this.configuration.getCacheSize();
+            Iterator<Map.Entry<String, Long>> iterator = this.sizes.entrySet().iterator();
+            // The most recently used derivative is never removed, even if it is larger than the store.
+            while (this.totalSize > cacheSize && this.sizes.size() > 1) {
+                Map.Entry<String, Long> eldest = iterator.next();
+                iterator.remove();
+                this.totalSize -= eldest.getValue();
+                evictedFiles.add(new File(eldest.getKey()));
+            }
+        }
+        // The files being streamed are still readable once deleted, at least on POSIX file systems.
+        evictedFiles.forEach(FileUtils::deleteQuietly);
+    }
+
+    private void create(File file, FailableConsumer<File, Exception> producer) throws Exception
+    {
+        Files.createDirectories(file.getParentFile().toPath());
+        File temporaryFile = File.createTempFile(file.getName(), TEMPORARY_EXTENSION, file.getParentFile());
+        try {
+            producer.accept(temporaryFile);
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile.toPath());
+        }
+    }
+
+    private void removeOtherRevisions(File directory, String revision, String variant)
+    {
+        File[] outdatedFiles = directory.listFiles((dir, name) -> name.endsWith(SEPARATOR + variant)
+            && !name.equals(revision + SEPARATOR + variant));
+        if (outdatedFiles != null) {
+            for (File outdatedFile : outdatedFiles) {
+                remove(outdatedFile);
+            }
+        }
+    }
+
+    private File waitFor(CompletableFuture<File> pendingCreation, File file) throws IOException
+    {
+        try {
+            return pendingCreation.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(String.format("Interrupted while waiting for [%s].", file), e);
+        } catch (ExecutionException e) {
+            throw new IOException(String.format("Failed to create [%s].", file), e.getCause());
+        }
+    }
+}
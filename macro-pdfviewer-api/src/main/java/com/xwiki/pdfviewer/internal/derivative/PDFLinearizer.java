@@ -0,0 +1,79 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.derivative;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ProcessBuilder.Redirect;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.xwiki.component.annotation.Component;
+
+/**
+ * Linearizes PDF files ("fast web view") with the {@code qpdf} executable, when its path is configured.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component(roles = PDFLinearizer.class)
+@Singleton
+public class PDFLinearizer
+{
+    /**
+     * The exit code of {@code qpdf} when the output has been written despite some warnings.
+     */
+    private static final int QPDF_WARNINGS = 3;
+
+    @Inject
+    private PDFDerivativeConfiguration configuration;
+
+    /**
+     * @return {@code true} if the PDF files can be linearized, {@code false} otherwise
+     */
+    public boolean isEnabled()
+    {
+        return StringUtils.isNotBlank(this.configuration.getQPDFPath());
+    }
+
+    /**
+     * @param input the PDF file to linearize
+     * @param output the file where to write the linearized PDF file
+     * @throws IOException if the linearization fails
+     * @throws InterruptedException if interrupted while waiting for the linearization
+     */
+    public void linearize(File input, File output) throws IOException, InterruptedException
+    {
+        Process process = new ProcessBuilder(this.configuration.getQPDFPath(), "--linearize",
+            input.getAbsolutePath(), output.getAbsolutePath()).redirectErrorStream(true)
+            .redirectOutput(Redirect.DISCARD).start();
+        if (!process.waitFor(this.configuration.getProcessTimeout(), TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            throw new IOException("The linearization has timed out.");
+        }
+        int exitCode = process.exitValue();
+        if (exitCode != 0 && exitCode != QPDF_WARNINGS) {
+            throw new IOException(String.format("The linearization has failed with exit code [%d].", exitCode));
+        }
+    }
+}
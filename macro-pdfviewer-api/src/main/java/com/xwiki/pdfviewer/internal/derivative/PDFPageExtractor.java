@@ -0,0 +1,133 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.derivative;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.interactive.action.PDActionGoTo;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationLink;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.destination.PDDestination;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.destination.PDPageDestination;
+import org.xwiki.component.annotation.Component;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiAttachment;
+
+/**
+ * Extracts some pages of a PDF attachment into a smaller PDF file, so that a macro displaying only a few pages of a
+ * large file doesn't make the browser download the whole file. The extracted file is created on first access and then
+ * stored alongside the other derivatives of the attachment.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component(roles = PDFPageExtractor.class)
+@Singleton
+public class PDFPageExtractor
+{
+    @Inject
+    private PDFDerivativeStore derivativeStore;
+
+    @Inject
+    private Provider<XWikiContext> wikiContextProvider;
+
+    /**
+     * @param attachment a PDF attachment
+     * @param pageRange the pages to extract
+     * @return a PDF file holding only the given pages of the attachment
+     * @throws IOException if the pages cannot be extracted
+     */
+    public File getPages(XWikiAttachment attachment, PDFPageRange pageRange) throws IOException
+    {
+        return this.derivativeStore.getOrCreate(attachment.getReference(),
+            PDFAttachmentRevisions.getRevision(attachment), pageRange.getVariant(),
+            target -> extract(attachment, pageRange, target));
+    }
+
+    private void extract(XWikiAttachment attachment, PDFPageRange pageRange, File target) throws Exception
+    {
+        // Let PDFBox use temporary files rather than the heap, since the PDF files can be very large.
+        try (InputStream content = attachment.getContentInputStream(this.wikiContextProvider.get());
+            PDDocument document = PDDocument.load(content, MemoryUsageSetting.setupTempFileOnly());
+            PDDocument extracted = new PDDocument(MemoryUsageSetting.setupTempFileOnly()))
+        {
+            if (pageRange.getFirstPage() > document.getNumberOfPages()) {
+                throw new IOException(String.format("The PDF file has only [%d] pages.",
+                    document.getNumberOfPages()));
+            }
+            // Copy the requested pages to a new document rather than removing the other pages: the document level
+            // structures (outline, named destinations, form fields, structure tree) refer to all the pages, so they
+            // would keep the removed pages in the saved file. They are dropped instead.
+            extracted.setVersion(document.getVersion());
+            extracted.setDocumentInformation(document.getDocumentInformation());
+            int pageNumber = 0;
+            for (PDPage page : document.getPages()) {
+                pageNumber++;
+                if (pageRange.contains(pageNumber)) {
+                    importPage(page, extracted);
+                }
+            }
+            extracted.save(target);
+        }
+    }
+
+    private void importPage(PDPage page, PDDocument extracted) throws IOException
+    {
+        PDPage importedPage = extracted.importPage(page);
+        // The resources inherited from the page tree of the original document are not copied with the page.
+        if (page.getResources() != null && !page.getCOSObject().containsKey(COSName.RESOURCES)) {
+            importedPage.setResources(page.getResources());
+        }
+        // The article threads of the original document refer to its other pages.
+        importedPage.getCOSObject().removeItem(COSName.B);
+        // The annotations are shared with the original document, which is not saved, so they are modified in place to
+        // drop their references to the other pages and to the form fields.
+        for (PDAnnotation annotation : importedPage.getAnnotations()) {
+            if (annotation instanceof PDAnnotationLink) {
+                PDDestination destination = getDestination((PDAnnotationLink) annotation);
+                if (destination instanceof PDPageDestination) {
+                    ((PDPageDestination) destination).setPage(null);
+                }
+            }
+            annotation.setPage(null);
+            annotation.getCOSObject().removeItem(COSName.PARENT);
+        }
+    }
+
+    private PDDestination getDestination(PDAnnotationLink link) throws IOException
+    {
+        PDDestination destination = link.getDestination();
+        if (destination == null && link.getAction() instanceof PDActionGoTo) {
+            destination = ((PDActionGoTo) link.getAction()).getDestination();
+        }
+        return destination;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.derivative;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * A set of pages of a PDF file, such as {@code 1-5,8}, displayed instead of the whole file. The ranges are sorted and
+ * merged, so that equivalent values share the same derivative.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+public final class PDFPageRange
+{
+    private static final Pattern RANGE = Pattern.compile("^(\\d{1,6})(?:\\s*-\\s*(\\d{1,6}))?$");
+
+    private static final int MAX_RANGES = 50;
+
+    private static final String RANGE_SEPARATOR = ",";
+
+    private static final String BOUND_SEPARATOR = "-";
+
+    /**
+     * The first and last pages of each range, starting from 1.
+     */
+    private final List<int[]> ranges;
+
+    private PDFPageRange(List<int[]> ranges)
+    {
+        this.ranges = ranges;
+    }
+
+    /**
+     * @param value the pages, as comma separated page numbers or ranges of page numbers (e.g. {@code 1-5,8}),
+     *            starting from 1
+     * @return the corresponding page range, or {@code null} if the value is blank
+     * @throws IllegalArgumentException if the value is not a valid page range
+     */
+    public static PDFPageRange parse(String value)
+    {
+        if (StringUtils.isBlank(value)) {
+            return null;
+        }
+
+        String[] parts = value.split(RANGE_SEPARATOR);
+        if (parts.length > MAX_RANGES) {
+            throw new IllegalArgumentException(String.format("Too many page ranges in [%s].", value));
+        }
+        List<int[]> ranges = new ArrayList<>();
+        for (String part : parts) {
+            Matcher matcher = RANGE.matcher(part.trim());
+            if (!matcher.matches()) {
+                throw new IllegalArgumentException(String.format("Invalid page range [%s].", part));
+            }
+            int first = Integer.parseInt(matcher.group(1));
+            int last = matcher.group(2) != null ? Integer.parseInt(matcher.group(2)) : first;
+            if (first < 1 || last < first) {
+                throw new IllegalArgumentException(String.format("Invalid page range [%s].", part));
+            }
+            ranges.add(new int[] { first, last });
+        }
+
+        // Sort and merge the overlapping or adjacent ranges.
+        ranges.sort(Comparator.comparingInt(range -> range[0]));
+        List<int[]> mergedRanges = new ArrayList<>();
+        for (int[] range : ranges) {
+            int[] previous = mergedRanges.isEmpty() ? null : mergedRanges.get(mergedRanges.size() - 1);
+            if (previous != null && range[0] <= previous[1] + 1) {
+                previous[1] = Math.max(previous[1], range[1]);
+            } else {
+                mergedRanges.add(range);
+            }
+        }
+        return new PDFPageRange(mergedRanges);
+    }
+
+    /**
+     * @return the first page of the range, starting from 1
+     */
+    public int getFirstPage()
+    {
+        return this.ranges.get(0)[0];
+    }
+
+    /**
+     * @param page a page number of the whole file, starting from 1
+     * @return {@code true} if the page is part of the range, {@code false} otherwise
+     */
+    public boolean contains(int page)
+    {
+        return indexOf(page) > 0;
+    }
+
+    /**
+     * @param page a page number of the whole file, starting from 1
+     * @return the number of the page in the extracted file, starting from 1, or {@code -1} if the page is not part of
+     *         the range
+     */
+    public int indexOf(int page)
+    {
+        int offset = 0;
+        for (int[] range : this.ranges) {
+            if (page < range[0]) {
+                return -1;
+            } else if (page <= range[1]) {
+                return offset + page - range[0] + 1;
+            }
+            offset += range[1] - range[0] + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the name of the derivative holding the pages of the range
+     */
+    public String getVariant()
+    {
+        // The commas are replaced since the variant is used as file name.
+        return "pages-" + toString().replace(RANGE_SEPARATOR, "_") + ".pdf";
+    }
+
+    @Override
+    public String toString()
+    {
+        List<String> values = new ArrayList<>();
+        for (int[] range : this.ranges) {
+            values.add(range[0] == range[1] ? String.valueOf(range[0]) : range[0] + BOUND_SEPARATOR + range[1]);
+        }
+        return String.join(RANGE_SEPARATOR, values);
+    }
+}
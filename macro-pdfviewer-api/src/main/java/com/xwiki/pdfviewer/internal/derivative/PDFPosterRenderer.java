@@ -0,0 +1,112 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.derivative;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.imageio.ImageIO;
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.xwiki.component.annotation.Component;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiAttachment;
+
+/**
+ * Renders the first page of a PDF attachment as a PNG image, displayed by the macro while the PDF viewer is loading.
+ * The image is created on first access and then stored alongside the other derivatives of the attachment.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component(roles = PDFPosterRenderer.class)
+@Singleton
+public class PDFPosterRenderer
+{
+    /**
+     * The name of the poster derivative.
+     */
+    public static final String VARIANT = "poster.png";
+
+    /**
+     * The media type of the poster.
+     */
+    public static final String MEDIA_TYPE = "image/png";
+
+    private static final float POSTER_WIDTH = 1024;
+
+    private static final float MAX_SCALE = 4;
+
+    @Inject
+    private PDFDerivativeStore derivativeStore;
+
+    @Inject
+    private Provider<XWikiContext> wikiContextProvider;
+
+    /**
+     * @param attachment a PDF attachment
+     * @return the poster image of the given attachment
+     * @throws IOException if the poster cannot be created
+     */
+    public File getPoster(XWikiAttachment attachment) throws IOException
+    {
+        return getPoster(attachment, 1);
+    }
+
+    /**
+     * @param attachment a PDF attachment
+     * @param page the page to render, starting from 1, e.g. the first page of a {@link PDFPageRange}
+     * @return the poster image of the given page of the attachment
+     * @throws IOException if the poster cannot be created
+     */
+    public File getPoster(XWikiAttachment attachment, int page) throws IOException
+    {
+        String variant = page == 1 ? VARIANT : "poster-" + page + ".png";
+        return this.derivativeStore.getOrCreate(attachment.getReference(),
+            PDFAttachmentRevisions.getRevision(attachment), variant, target -> render(attachment, page - 1, target));
+    }
+
+    private void render(XWikiAttachment attachment, int pageIndex, File target) throws Exception
+    {
+        // Let PDFBox use temporary files rather than the heap, since the PDF files can be very large.
+        try (InputStream content = attachment.getContentInputStream(this.wikiContextProvider.get());
+            PDDocument document = PDDocument.load(content, MemoryUsageSetting.setupTempFileOnly()))
+        {
+            if (pageIndex >= document.getNumberOfPages()) {
+                throw new IOException(String.format("The PDF file has only [%d] pages.",
+                    document.getNumberOfPages()));
+            }
+            PDRectangle pageBox = document.getPage(pageIndex).getCropBox();
+            float scale = Math.min(POSTER_WIDTH / pageBox.getWidth(), MAX_SCALE);
+            BufferedImage image = new PDFRenderer(document).renderImage(pageIndex, scale, ImageType.RGB);
+            ImageIO.write(image, "png", target);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.derivative;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.xwiki.component.annotation.Component;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiAttachment;
+
+/**
+ * Extracts the text of the PDF attachments, one line per page, so that they can be searched without being downloaded
+ * by the viewer. See {@link PDFTextIndex}.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component
+@Named(PDFTextGenerator.VARIANT)
+@Singleton
+public class PDFTextGenerator implements PDFDerivativeGenerator
+{
+    /**
+     * The name of the text derivative.
+     */
+    public static final String VARIANT = "text";
+
+    @Inject
+    private PDFDerivativeConfiguration configuration;
+
+    @Inject
+    private Provider<XWikiContext> wikiContextProvider;
+
+    @Override
+    public boolean isEnabled()
+    {
+        return this.configuration.isTextEnabled();
+    }
+
+    @Override
+    public boolean isDisplayable()
+    {
+        return false;
+    }
+
+    @Override
+    public void generate(XWikiAttachment attachment, File target) throws Exception
+    {
+        try (InputStream content = attachment.getContentInputStream(this.wikiContextProvider.get());
+            PDDocument document = PDDocument.load(content, MemoryUsageSetting.setupTempFileOnly());
+            BufferedWriter output = Files.newBufferedWriter(target.toPath(), StandardCharsets.UTF_8))
+        {
+            new PageTextStripper(output).writeText(document, new StringWriter());
+        }
+    }
+
+    /**
+     * Writes the text of each page on its own line, as soon as the page has been processed.
+     */
+    private static final class PageTextStripper extends PDFTextStripper
+    {
+        private final BufferedWriter pages;
+
+        PageTextStripper(BufferedWriter pages) throws IOException
+        {
+            this.pages = pages;
+        }
+
+        @Override
+        public void processPage(PDPage page) throws IOException
+        {
+            // Pages without content are skipped by the stripper, but they still need their (empty) line.
+            super.processPage(page);
+            Writer pageOutput = getOutput();
+            pageOutput.flush();
+            StringBuffer pageText = ((StringWriter) pageOutput).getBuffer();
+            this.pages.write(StringUtils.normalizeSpace(pageText.toString()));
+            this.pages.newLine();
+            pageText.setLength(0);
+        }
+    }
+}
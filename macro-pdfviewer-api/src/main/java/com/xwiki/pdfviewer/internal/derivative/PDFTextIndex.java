@@ -0,0 +1,185 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.derivative;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+
+import com.xpn.xwiki.doc.XWikiAttachment;
+
+/**
+ * Searches the text extracted from the PDF attachments by {@link PDFTextGenerator}, so that the viewer can jump to the
+ * matching pages without downloading and parsing the whole file.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component(roles = PDFTextIndex.class)
+@Singleton
+public class PDFTextIndex
+{
+    /**
+     * A page matching the searched text.
+     *
+     * @version $Id$
+     */
+    public static final class Hit
+    {
+        private final int page;
+
+        private final int matches;
+
+        private final String snippet;
+
+        Hit(int page, int matches, String snippet)
+        {
+            this.page = page;
+            this.matches = matches;
+            this.snippet = snippet;
+        }
+
+        /**
+         * @return the page number, starting from 1
+         */
+        public int getPage()
+        {
+            return this.page;
+        }
+
+        /**
+         * @return the number of matches in the page
+         */
+        public int getMatches()
+        {
+            return this.matches;
+        }
+
+        /**
+         * @return the text around the first match in the page
+         */
+        public String getSnippet()
+        {
+            return this.snippet;
+        }
+    }
+
+    private static final int SNIPPET_CONTEXT = 60;
+
+    private static final String ELLIPSIS = "...";
+
+    @Inject
+    private PDFDerivativeStore derivativeStore;
+
+    @Inject
+    @Named(PDFTextGenerator.VARIANT)
+    private PDFDerivativeGenerator textGenerator;
+
+    /**
+     * @return {@code true} if the text of the PDF files is extracted and can be searched, {@code false} otherwise
+     */
+    public boolean isEnabled()
+    {
+        return this.textGenerator.isEnabled();
+    }
+
+    /**
+     * Search the text of a PDF attachment, ignoring the case. The text is extracted first if it wasn't already (e.g.
+     * for the attachments uploaded before the text extraction was enabled).
+     *
+     * @param attachment the PDF attachment to search
+     * @param text the text to search
+     * @param limit the maximum number of pages to return
+     * @return the matching pages, in the document order
+     * @throws IOException if the text of the attachment cannot be extracted or read
+     */
+    public List<Hit> search(XWikiAttachment attachment, String text, int limit) throws IOException
+    {
+        return search(attachment, text, null, limit);
+    }
+
+    /**
+     * Search the text of some pages of a PDF attachment, ignoring the case. See {@link #search(XWikiAttachment,
+     * String, int)}.
+     *
+     * @param attachment the PDF attachment to search
+     * @param text the text to search
+     * @param pageRange the pages to search, or {@code null} to search the whole attachment; the returned page numbers
+     *            are then the ones of the extracted file (see {@link PDFPageExtractor})
+     * @param limit the maximum number of pages to return
+     * @return the matching pages, in the document order
+     * @throws IOException if the text of the attachment cannot be extracted or read
+     */
+    public List<Hit> search(XWikiAttachment attachment, String text, PDFPageRange pageRange, int limit)
+        throws IOException
+    {
+        File pages = this.derivativeStore.getOrCreate(attachment.getReference(),
+            PDFAttachmentRevisions.getRevision(attachment), PDFTextGenerator.VARIANT,
+            target -> this.textGenerator.generate(attachment, target));
+        Pattern pattern = Pattern.compile(Pattern.quote(text), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        List<Hit> hits = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(pages.toPath(), StandardCharsets.UTF_8)) {
+            int pageNumber = 1;
+            String pageText = reader.readLine();
+            while (pageText != null && hits.size() < limit) {
+                Matcher matcher = pattern.matcher(pageText);
+                if ((pageRange == null || pageRange.contains(pageNumber)) && matcher.find()) {
+                    String snippet = getSnippet(pageText, matcher.start(), matcher.end());
+                    int matches = 1;
+                    while (matcher.find()) {
+                        matches++;
+                    }
+                    hits.add(new Hit(pageRange != null ? pageRange.indexOf(pageNumber) : pageNumber, matches,
+                        snippet));
+                }
+                pageNumber++;
+                pageText = reader.readLine();
+            }
+        }
+        return hits;
+    }
+
+    private String getSnippet(String pageText, int matchStart, int matchEnd)
+    {
+        int start = Math.max(0, matchStart - SNIPPET_CONTEXT);
+        int end = Math.min(pageText.length(), matchEnd + SNIPPET_CONTEXT);
+        StringBuilder snippet = new StringBuilder();
+        if (start > 0) {
+            snippet.append(ELLIPSIS);
+        }
+        snippet.append(pageText, start, end);
+        if (end < pageText.length()) {
+            snippet.append(ELLIPSIS);
+        }
+        return snippet.toString();
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.job;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.annotation.InstantiationStrategy;
+import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
+import org.xwiki.job.AbstractJob;
+import org.xwiki.job.DefaultJobStatus;
+import org.xwiki.model.reference.AttachmentReference;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.query.QueryException;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.util.AbstractXWikiRunnable;
+import com.xwiki.pdfviewer.internal.derivative.PDFDerivativeConfiguration;
+
+/**
+ * Creates the derivatives (posters, extracted text, linearized or web optimized copies and the page ranges displayed
+ * by the macros) of the existing PDF attachments, so that the first visitors don't wait for them once a derivative is
+ * enabled. The attachments are processed in parallel by a bounded pool of threads, in batches after which the
+ * position of the job is saved, see {@link PDFDerivativesJobCheckpoint}.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component
+@Named(PDFDerivativesJob.JOB_TYPE)
+@InstantiationStrategy(ComponentInstantiationStrategy.PER_LOOKUP)
+public class PDFDerivativesJob
+    extends AbstractJob<PDFDerivativesJobRequest, DefaultJobStatus<PDFDerivativesJobRequest>>
+{
+    /**
+     * The type of the job.
+     */
+    public static final String JOB_TYPE = "pdfviewer.derivatives";
+
+    private static final int BATCH_SIZE = 100;
+
+    private static final long POLL_SECONDS = 1;
+
+    @Inject
+    private PDFDerivativesJobQueries queries;
+
+    @Inject
+    private PDFDerivativesJobProcessor processor;
+
+    @Inject
+    private PDFDerivativeConfiguration configuration;
+
+    @Inject
+    private PDFDerivativesJobCheckpoint checkpoint;
+
+    @Inject
+    private Provider<XWikiContext> wikiContextProvider;
+
+    private final AtomicInteger failureCount = new AtomicInteger();
+
+    @Override
+    public String getType()
+    {
+        return JOB_TYPE;
+    }
+
+    @Override
+    protected void runInternal() throws Exception
+    {
+        this.status.setCancelable(true);
+
+        List<String> wikis = getRequest().getWikis();
+        String resumedWiki = null;
+        int resumedOffset = 0;
+        PDFDerivativesJobCheckpoint.Position position = getRequest().isResume() ? this.checkpoint.load() : null;
+        if (position != null) {
+            wikis = position.getWikis();
+            resumedWiki = position.getWiki();
+            resumedOffset = position.getOffset();
+            this.logger.info("Resuming the creation of the PDF derivatives from wiki [{}], attachment [{}].",
+                resumedWiki, resumedOffset);
+        }
+        if (wikis == null) {
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(this.configuration.getJobThreads());
+        this.progressManager.pushLevelProgress(wikis.size(), this);
+        try {
+            for (String wiki : wikis) {
+                this.progressManager.startStep(this);
+                // The wikis processed before the interruption are skipped.
+                if (resumedWiki == null || resumedWiki.equals(wiki)) {
+                    processWiki(wikis, wiki, resumedWiki != null ? resumedOffset : 0, executor);
+                    resumedWiki = null;
+                }
+                this.progressManager.endStep(this);
+                if (this.status.isCanceled()) {
+                    break;
+                }
+            }
+        } finally {
+            this.progressManager.popLevelProgress(this);
+            executor.shutdownNow();
+        }
+
+        // A canceled job is not resumed after a restart, it has to be started again.
+        this.checkpoint.delete();
+        if (this.status.isCanceled()) {
+            this.logger.info("The creation of the PDF derivatives has been canceled.");
+        } else {
+            this.logger.info("The PDF derivatives have been created, [{}] attachments failed.",
+                this.failureCount.get());
+        }
+    }
+
+    private void processWiki(List<String> wikis, String wiki, int offset, ExecutorService executor)
+        throws QueryException, IOException
+    {
+        this.progressManager.pushLevelProgress(2, this);
+        try {
+            this.progressManager.startStep(this);
+            processAttachments(wikis, wiki, offset, executor);
+            this.progressManager.endStep(this);
+
+            // The page ranges are not checkpointed since their derivatives are not created again anyway.
+            this.progressManager.startStep(this);
+            if (!this.status.isCanceled()) {
+                processPageRanges(wiki, executor);
+            }
+            this.progressManager.endStep(this);
+        } finally {
+            this.progressManager.popLevelProgress(this);
+        }
+    }
+
+    private void processAttachments(List<String> wikis, String wiki, int offset, ExecutorService executor)
+        throws QueryException, IOException
+    {
+        int total = this.queries.countAttachments(wiki);
+        this.logger.info("Creating the derivatives of [{}] PDF attachments of wiki [{}].", total - offset, wiki);
+
+        this.progressManager.pushLevelProgress(Math.max(0, total - offset), this);
+        try {
+            int current = offset;
+            while (!this.status.isCanceled()) {
+                List<AttachmentReference> attachments = this.queries.getAttachments(wiki, current, BATCH_SIZE);
+                if (attachments.isEmpty()) {
+                    break;
+                }
+
+                List<Future<?>> tasks = new ArrayList<>();
+                for (AttachmentReference attachment : attachments) {
+                    tasks.add(executor.submit(
+                        new WikiRunnable(wiki, () -> this.processor.processAttachment(attachment))));
+                }
+                if (!await(tasks)) {
+                    break;
+                }
+                current += attachments.size();
+                this.checkpoint.save(wikis, wiki, current);
+            }
+        } finally {
+            this.progressManager.popLevelProgress(this);
+        }
+    }
+
+    private void processPageRanges(String wiki, ExecutorService executor) throws QueryException
+    {
+        List<DocumentReference> documents = this.queries.getMacroDocuments(wiki);
+
+        this.progressManager.pushLevelProgress(documents.size(), this);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (DocumentReference document : documents) {
+                tasks.add(executor.submit(new WikiRunnable(wiki, () -> this.processor.processDocument(document))));
+            }
+            await(tasks);
+        } finally {
+            this.progressManager.popLevelProgress(this);
+        }
+    }
+
+    /**
+     * Wait for the given tasks, advancing the progress as they complete.
+     *
+     * @return {@code true} if all the tasks have completed, {@code false} if the job has been canceled meanwhile
+     */
+    private boolean await(List<Future<?>> tasks)
+    {
+        for (Future<?> task : tasks) {
+            this.progressManager.startStep(this);
+            while (!task.isDone()) {
+                if (this.status.isCanceled()) {
+                    tasks.forEach(remainingTask -> remainingTask.cancel(true));
+                    return false;
+                }
+                try {
+                    task.get(POLL_SECONDS, TimeUnit.SECONDS);
+                } catch (TimeoutException | ExecutionException | CancellationException e) {
+                    // Either still running or done, the failures being logged by the task itself.
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    tasks.forEach(remainingTask -> remainingTask.cancel(true));
+                    return false;
+                }
+            }
+            this.progressManager.endStep(this);
+        }
+        return true;
+    }
+
+    /**
+     * A task of the job, which needs a context for the wiki it processes.
+     */
+    private final class WikiRunnable extends AbstractXWikiRunnable
+    {
+        private final String wiki;
+
+        private final Task task;
+
+        WikiRunnable(String wiki, Task task)
+        {
+            this.wiki = wiki;
+            this.task = task;
+        }
+
+        @Override
+        protected void runInternal()
+        {
+            wikiContextProvider.get().setWikiId(this.wiki);
+            try {
+                this.task.run();
+            } catch (Exception e) {
+                failureCount.incrementAndGet();
+                logger.warn("Failed to create the PDF derivatives. Root cause: [{}]",
+                    ExceptionUtils.getRootCauseMessage(e));
+            }
+
+            // Throttle the job so that it doesn't compete too much with the request threads.
+            long delay = configuration.getJobDelay();
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * The processing of an attachment or of a document.
+     */
+    @FunctionalInterface
+    private interface Task
+    {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.job;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.environment.Environment;
+
+/**
+ * Keeps track, in the permanent directory, of the attachments already processed by {@link PDFDerivativesJob}, so that
+ * a job interrupted by a restart continues where it stopped instead of starting again.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component(roles = PDFDerivativesJobCheckpoint.class)
+@Singleton
+public class PDFDerivativesJobCheckpoint
+{
+    private static final String WIKIS = "wikis";
+
+    private static final String WIKI = "wiki";
+
+    private static final String OFFSET = "offset";
+
+    private static final String SEPARATOR = ",";
+
+    @Inject
+    private Environment environment;
+
+    /**
+     * The position of the job, i.e. the wiki being processed and the number of its attachments already processed.
+     */
+    public static final class Position
+    {
+        private final List<String> wikis;
+
+        private final String wiki;
+
+        private final int offset;
+
+        Position(List<String> wikis, String wiki, int offset)
+        {
+            this.wikis = wikis;
+            this.wiki = wiki;
+            this.offset = offset;
+        }
+
+        /**
+         * @return all the wikis processed by the job
+         */
+        public List<String> getWikis()
+        {
+            return this.wikis;
+        }
+
+        /**
+         * @return the wiki being processed
+         */
+        public String getWiki()
+        {
+            return this.wiki;
+        }
+
+        /**
+         * @return the number of attachments of the wiki already processed
+         */
+        public int getOffset()
+        {
+            return this.offset;
+        }
+    }
+
+    /**
+     * @return the position of the interrupted job, or {@code null} if there is none
+     * @throws IOException if the checkpoint cannot be read
+     */
+    public Position load() throws IOException
+    {
+        File file = getFile();
+        if (!file.isFile()) {
+            return null;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(file.toPath())) {
+            properties.load(input);
+        }
+        String wikis = properties.getProperty(WIKIS);
+        String wiki = properties.getProperty(WIKI);
+        if (StringUtils.isEmpty(wikis) || StringUtils.isEmpty(wiki)) {
+            return null;
+        }
+        try {
+            return new Position(Arrays.asList(StringUtils.split(wikis, SEPARATOR)), wiki,
+                Integer.parseInt(properties.getProperty(OFFSET, "0")));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param wikis all the wikis processed by the job
+     * @param wiki the wiki being processed
+     * @param offset the number of attachments of the wiki already processed
+     * @throws IOException if the checkpoint cannot be written
+     */
+    public void save(List<String> wikis, String wiki, int offset) throws IOException
+    {
+        Properties properties = new Properties();
+        properties.setProperty(WIKIS, String.join(SEPARATOR, wikis));
+        properties.setProperty(WIKI, wiki);
+        properties.setProperty(OFFSET, String.valueOf(offset));
+
+        // Write a temporary file first so that a restart while writing doesn't leave a broken checkpoint.
+        File file = getFile();
+        Files.createDirectories(file.getParentFile().toPath());
+        File temporaryFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (OutputStream output = Files.newOutputStream(temporaryFile.toPath())) {
+            properties.store(output, null);
+        }
+        Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Forget the position of the job, once it has processed all the attachments or has been canceled.
+     *
+     * @throws IOException if the checkpoint cannot be removed
+     */
+    public void delete() throws IOException
+    {
+        Files.deleteIfExists(getFile().toPath());
+    }
+
+    private File getFile()
+    {
+        return new File(this.environment.getPermanentDirectory(), "pdfviewer/derivatives/job.properties");
+    }
+}
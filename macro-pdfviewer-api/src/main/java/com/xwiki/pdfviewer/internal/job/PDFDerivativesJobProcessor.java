@@ -0,0 +1,173 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.job;
+
+import java.io.IOException;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.AttachmentReference;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.MacroBlock;
+import org.xwiki.rendering.block.match.MacroBlockMatcher;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiAttachment;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xwiki.pdfviewer.internal.derivative.PDFDerivativeScheduler;
+import com.xwiki.pdfviewer.internal.derivative.PDFPageExtractor;
+import com.xwiki.pdfviewer.internal.derivative.PDFPageRange;
+import com.xwiki.pdfviewer.internal.derivative.PDFPosterRenderer;
+import com.xwiki.pdfviewer.internal.macro.PDFFileEntry;
+import com.xwiki.pdfviewer.internal.macro.PDFFileEntryCache;
+
+/**
+ * Creates the derivatives of the attachments and of the documents processed by the {@link PDFDerivativesJob}.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component(roles = PDFDerivativesJobProcessor.class)
+@Singleton
+public class PDFDerivativesJobProcessor
+{
+    /**
+     * The identifier of the PDF Viewer macro.
+     */
+    static final String MACRO_ID = "pdfviewer";
+
+    private static final String PDF_MEDIA_TYPE = "application/pdf";
+
+    @Inject
+    private PDFDerivativeScheduler scheduler;
+
+    @Inject
+    private PDFPosterRenderer posterRenderer;
+
+    @Inject
+    private PDFPageExtractor pageExtractor;
+
+    @Inject
+    private PDFFileEntryCache fileEntryCache;
+
+    @Inject
+    private Provider<XWikiContext> wikiContextProvider;
+
+    @Inject
+    @Named("current")
+    private DocumentReferenceResolver<String> documentReferenceResolver;
+
+    /**
+     * Create the derivatives of an attachment, and its poster.
+     *
+     * @param attachmentReference a PDF attachment
+     * @throws XWikiException if the attachment cannot be loaded
+     * @throws IOException if the derivatives cannot be created
+     */
+    public void processAttachment(AttachmentReference attachmentReference) throws XWikiException, IOException
+    {
+        XWikiAttachment attachment = getAttachment(attachmentReference);
+        if (attachment != null) {
+            this.scheduler.createDerivatives(attachment);
+            this.posterRenderer.getPoster(attachment);
+        }
+    }
+
+    /**
+     * Extract the page ranges displayed by the PDF Viewer macros of a document, and render their posters.
+     *
+     * @param documentReference a document holding PDF Viewer macros
+     * @throws XWikiException if the document or the displayed attachments cannot be loaded
+     * @throws IOException if the pages cannot be extracted
+     */
+    public void processDocument(DocumentReference documentReference) throws XWikiException, IOException
+    {
+        XWikiContext wikiContext = this.wikiContextProvider.get();
+        XWikiDocument document = wikiContext.getWiki().getDocument(documentReference, wikiContext);
+        // The file parameters are resolved relative to the document holding the macro.
+        wikiContext.setDoc(document);
+        for (Block block : document.getXDOM().getBlocks(new MacroBlockMatcher(MACRO_ID), Block.Axes.DESCENDANT)) {
+            MacroBlock macro = (MacroBlock) block;
+            PDFPageRange pageRange;
+            try {
+                pageRange = PDFPageRange.parse(getParameter(macro, "pages"));
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            if (pageRange == null) {
+                continue;
+            }
+            for (PDFFileEntry entry : this.fileEntryCache.getEntries(getParameter(macro, "file"))) {
+                XWikiAttachment attachment =
+                    entry.isURL() ? null : getAttachment(entry, getParameter(macro, "document"), wikiContext);
+                if (attachment != null) {
+                    this.pageExtractor.getPages(attachment, pageRange);
+                    this.posterRenderer.getPoster(attachment, pageRange.getFirstPage());
+                }
+            }
+        }
+    }
+
+    private XWikiAttachment getAttachment(PDFFileEntry entry, String ownerDocument, XWikiContext wikiContext)
+        throws XWikiException
+    {
+        // Same as the macro: the attachment is looked for in the given document first, for the macros added with the
+        // file and document parameters.
+        if (StringUtils.isNotEmpty(ownerDocument)) {
+            XWikiDocument document = wikiContext.getWiki().getDocument(
+                this.documentReferenceResolver.resolve(ownerDocument, wikiContext.getDoc().getDocumentReference()),
+                wikiContext);
+            XWikiAttachment attachment = document.getAttachment(entry.getFile());
+            if (attachment != null) {
+                return PDF_MEDIA_TYPE.equals(attachment.getMimeType(wikiContext)) ? attachment : null;
+            }
+        }
+        return getAttachment(entry.getReference());
+    }
+
+    private XWikiAttachment getAttachment(AttachmentReference attachmentReference) throws XWikiException
+    {
+        XWikiContext wikiContext = this.wikiContextProvider.get();
+        XWikiDocument document =
+            wikiContext.getWiki().getDocument(attachmentReference.getDocumentReference(), wikiContext);
+        XWikiAttachment attachment = document.getAttachment(attachmentReference.getName());
+        return attachment != null && PDF_MEDIA_TYPE.equals(attachment.getMimeType(wikiContext)) ? attachment : null;
+    }
+
+    private String getParameter(MacroBlock macro, String name)
+    {
+        // The macro parameter names are case insensitive.
+        for (Map.Entry<String, String> parameter : macro.getParameters().entrySet()) {
+            if (parameter.getKey().equalsIgnoreCase(name)) {
+                return parameter.getValue();
+            }
+        }
+        return null;
+    }
+}
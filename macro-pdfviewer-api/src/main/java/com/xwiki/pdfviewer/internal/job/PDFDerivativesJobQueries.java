@@ -0,0 +1,109 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.job;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.AttachmentReference;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+
+/**
+ * Finds the attachments and the documents processed by the {@link PDFDerivativesJob}.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component(roles = PDFDerivativesJobQueries.class)
+@Singleton
+public class PDFDerivativesJobQueries
+{
+    private static final String ATTACHMENTS_FROM = "from XWikiDocument doc, XWikiAttachment attachment "
+        + "where attachment.docId = doc.id and doc.translation = 0 and lower(attachment.filename) like '%.pdf'";
+
+    @Inject
+    private QueryManager queryManager;
+
+    @Inject
+    @Named("current")
+    private DocumentReferenceResolver<String> documentReferenceResolver;
+
+    /**
+     * @param wiki a wiki
+     * @return the number of PDF attachments of the given wiki
+     * @throws QueryException if the attachments cannot be counted
+     */
+    public int countAttachments(String wiki) throws QueryException
+    {
+        List<Long> count = this.queryManager.createQuery("select count(attachment.id) " + ATTACHMENTS_FROM, Query.HQL)
+            .setWiki(wiki).execute();
+        return count.isEmpty() ? 0 : count.get(0).intValue();
+    }
+
+    /**
+     * @param wiki a wiki
+     * @param offset the number of attachments to skip
+     * @param limit the maximum number of attachments to return
+     * @return the PDF attachments of the given wiki, always in the same order
+     * @throws QueryException if the attachments cannot be listed
+     */
+    public List<AttachmentReference> getAttachments(String wiki, int offset, int limit) throws QueryException
+    {
+        // Sorted so that the offset saved in the checkpoint still makes sense after a restart.
+        List<Object[]> rows = this.queryManager.createQuery(
+            "select doc.fullName, attachment.filename " + ATTACHMENTS_FROM
+                + " order by doc.fullName, attachment.filename", Query.HQL)
+            .setWiki(wiki).setOffset(offset).setLimit(limit).execute();
+        List<AttachmentReference> attachments = new ArrayList<>();
+        for (Object[] row : rows) {
+            attachments.add(new AttachmentReference((String) row[1],
+                this.documentReferenceResolver.resolve((String) row[0], new WikiReference(wiki))));
+        }
+        return attachments;
+    }
+
+    /**
+     * @param wiki a wiki
+     * @return the documents of the given wiki that may hold PDF Viewer macros
+     * @throws QueryException if the documents cannot be listed
+     */
+    public List<DocumentReference> getMacroDocuments(String wiki) throws QueryException
+    {
+        List<String> documents = this.queryManager.createQuery("select doc.fullName from XWikiDocument doc "
+            + "where doc.translation = 0 and doc.content like :macro order by doc.fullName", Query.HQL)
+            .bindValue("macro").anyChars().literal("{{" + PDFDerivativesJobProcessor.MACRO_ID).anyChars().query()
+            .setWiki(wiki).execute();
+        List<DocumentReference> documentReferences = new ArrayList<>();
+        for (String document : documents) {
+            documentReferences.add(this.documentReferenceResolver.resolve(document, new WikiReference(wiki)));
+        }
+        return documentReferences;
+    }
+}
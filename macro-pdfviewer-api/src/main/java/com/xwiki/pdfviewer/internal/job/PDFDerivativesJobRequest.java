@@ -0,0 +1,87 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.job;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.xwiki.job.AbstractRequest;
+
+/**
+ * The request of {@link PDFDerivativesJob}.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+public class PDFDerivativesJobRequest extends AbstractRequest
+{
+    /**
+     * The identifier of the job, which is unique since a single job processes all the wikis.
+     */
+    public static final List<String> JOB_ID = Arrays.asList("pdfviewer", "derivatives");
+
+    private static final String PROPERTY_WIKIS = "wikis";
+
+    private static final String PROPERTY_RESUME = "resume";
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Create a new request.
+     */
+    public PDFDerivativesJobRequest()
+    {
+        setId(JOB_ID);
+    }
+
+    /**
+     * @return the wikis whose PDF attachments are processed
+     */
+    public List<String> getWikis()
+    {
+        return getProperty(PROPERTY_WIKIS);
+    }
+
+    /**
+     * @param wikis the wikis whose PDF attachments are processed
+     */
+    public void setWikis(List<String> wikis)
+    {
+        setProperty(PROPERTY_WIKIS, wikis);
+    }
+
+    /**
+     * @return {@code true} if the job should continue from where a previous job has been interrupted (e.g. by a
+     *         restart), {@code false} if it should process all the attachments
+     */
+    public boolean isResume()
+    {
+        return getProperty(PROPERTY_RESUME, false);
+    }
+
+    /**
+     * @param resume {@code true} if the job should continue from where a previous job has been interrupted,
+     *            {@code false} if it should process all the attachments
+     */
+    public void setResume(boolean resume)
+    {
+        setProperty(PROPERTY_RESUME, resume);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.license;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.DocumentReference;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xwiki.licensing.Licensor;
+
+/**
+ * Keeps the result of the PDF Viewer license check for a short time, per wiki, so that pages displaying many viewers
+ * don't ask the {@link Licensor} again for each of them.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component(roles = PDFViewerLicensureCache.class)
+@Singleton
+public class PDFViewerLicensureCache
+{
+    private static final long TIME_TO_LIVE = TimeUnit.SECONDS.toNanos(30);
+
+    private final Map<String, Licensure> licensures = new ConcurrentHashMap<>();
+
+    @Inject
+    private Licensor licensor;
+
+    @Inject
+    private Provider<XWikiContext> wikiContextProvider;
+
+    /**
+     * @return {@code true} if the PDF Viewer application has a valid license in the current wiki, {@code false}
+     *         otherwise
+     */
+    public boolean hasLicensure()
+    {
+        String wikiId = this.wikiContextProvider.get().getWikiId();
+        long now = System.nanoTime();
+        Licensure licensure = this.licensures.get(wikiId);
+        if (licensure == null || now - licensure.checkTime > TIME_TO_LIVE) {
+            DocumentReference licenseDoc = new DocumentReference(wikiId, List.of("PDFViewer", "Code"), "WebHome");
+            licensure = new Licensure(this.licensor.hasLicensure(licenseDoc), now);
+            this.licensures.put(wikiId, licensure);
+        }
+        return licensure.licensed;
+    }
+
+    /**
+     * Forget all the cached license checks, so that they are done again on the next access.
+     */
+    public void invalidate()
+    {
+        this.licensures.clear();
+    }
+
+    private static final class Licensure
+    {
+        private final boolean licensed;
+
+        private final long checkTime;
+
+        Licensure(boolean licensed, long checkTime)
+        {
+            this.licensed = licensed;
+            this.checkTime = checkTime;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.macro;
+
+import org.xwiki.model.reference.AttachmentReference;
+
+/**
+ * One of the files listed in the {@code file} or {@code fileFromExternalUrl} macro parameters, along with the
+ * attachment reference it resolves to. Immutable, so that it can be shared between macro executions.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+public class PDFFileEntry
+{
+    private final String file;
+
+    private final boolean url;
+
+    private final AttachmentReference reference;
+
+    /**
+     * Default constructor.
+     *
+     * @param file the file, as specified in the macro parameter
+     * @param url {@code true} if the file is specified as an absolute URL, {@code false} otherwise
+     * @param reference the attachment reference resolved from the file
+     */
+    public PDFFileEntry(String file, boolean url, AttachmentReference reference)
+    {
+        this.file = file;
+        this.url = url;
+        this.reference = reference;
+    }
+
+    /**
+     * @return the file, as specified in the macro parameter
+     */
+    public String getFile()
+    {
+        return this.file;
+    }
+
+    /**
+     * @return {@code true} if the file is specified as an absolute URL, {@code false} otherwise
+     */
+    public boolean isURL()
+    {
+        return this.url;
+    }
+
+    /**
+     * @return {@code true} if the file is an URL that doesn't target an attachment of this wiki, {@code false}
+     *         otherwise
+     */
+    public boolean isExternal()
+    {
+        return this.url && this.reference.getName().equals(this.file);
+    }
+
+    /**
+     * @return the attachment reference resolved from the file: when the file is an URL that doesn't target this wiki
+     *         the name of the attachment is the URL itself
+     */
+    public AttachmentReference getReference()
+    {
+        return this.reference;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.macro;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.LRUCacheConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.AttachmentReference;
+import org.xwiki.model.reference.EntityReferenceResolver;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Splits the file macro parameters and resolves each file to an attachment reference, keeping the result in a
+ * bounded cache since the same parameters are parsed again on each view of a page. The result only depends on the
+ * parameter value and on the current document (used to resolve relative references), so it never has to be
+ * invalidated. Access rights are not part of the cached data and are still checked by the macro on each execution.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component(roles = PDFFileEntryCache.class)
+@Singleton
+public class PDFFileEntryCache implements Initializable, Disposable
+{
+    private static final Pattern PDF_SEPARATOR = Pattern.compile("(?<=\\.pdf),");
+
+    private static final int CACHE_CAPACITY = 1000;
+
+    @Inject
+    @Named("resource/standardURL")
+    private EntityReferenceResolver<String> urlEntityReferenceResolver;
+
+    @Inject
+    @Named("current")
+    private EntityReferenceResolver<String> entityReferenceResolver;
+
+    @Inject
+    private EntityReferenceSerializer<String> entityReferenceSerializer;
+
+    @Inject
+    private CacheManager cacheManager;
+
+    @Inject
+    private Provider<XWikiContext> wikiContextProvider;
+
+    private Cache<List<PDFFileEntry>> cache;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        try {
+            this.cache =
+                this.cacheManager.createNewCache(new LRUCacheConfiguration("pdfviewer.fileEntries", CACHE_CAPACITY));
+        } catch (CacheException e) {
+            throw new InitializationException("Failed to create the PDF Viewer file entries cache.", e);
+        }
+    }
+
+    @Override
+    public void dispose()
+    {
+        this.cache.dispose();
+    }
+
+    /**
+     * @param parameter the value of a file macro parameter, listing one or more comma-separated files
+     * @return the files listed in the parameter, in the order they are specified
+     */
+    public List<PDFFileEntry> getEntries(String parameter)
+    {
+        if (StringUtils.isBlank(parameter)) {
+            return Collections.emptyList();
+        }
+
+        XWikiDocument currentDocument = this.wikiContextProvider.get().getDoc();
+        String currentDocumentReference =
+            currentDocument != null ? this.entityReferenceSerializer.serialize(currentDocument.getDocumentReference())
+                : "";
+        // Prefix the document reference with its length so that the key cannot be ambiguous.
+        String key = currentDocumentReference.length() + ":" + currentDocumentReference + parameter;
+        List<PDFFileEntry> entries = this.cache.get(key);
+        if (entries == null) {
+            this.missCount.increment();
+            entries = parse(parameter);
+            this.cache.set(key, entries);
+        } else {
+            this.hitCount.increment();
+        }
+        return entries;
+    }
+
+    /**
+     * @return the number of parameters found in the cache since the component was loaded
+     */
+    public long getHitCount()
+    {
+        return this.hitCount.sum();
+    }
+
+    /**
+     * @return the number of parameters that had to be parsed since the component was loaded
+     */
+    public long getMissCount()
+    {
+        return this.missCount.sum();
+    }
+
+    private List<PDFFileEntry> parse(String parameter)
+    {
+        List<PDFFileEntry> entries = new ArrayList<>();
+        for (String file : PDF_SEPARATOR.split(parameter)) {
+            if (file.startsWith("http://") || file.startsWith("https://")) {
+                entries.add(new PDFFileEntry(file, true,
+                    new AttachmentReference(this.urlEntityReferenceResolver.resolve(file, EntityType.ATTACHMENT))));
+            } else {
+                entries.add(new PDFFileEntry(file, false,
+                    new AttachmentReference(this.entityReferenceResolver.resolve(file, EntityType.ATTACHMENT))));
+            }
+        }
+        return Collections.unmodifiableList(entries);
+    }
+}
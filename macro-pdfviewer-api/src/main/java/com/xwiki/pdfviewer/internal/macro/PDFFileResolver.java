@@ -0,0 +1,286 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.macro;
+
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.AttachmentReference;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceResolver;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiAttachment;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xwiki.pdfviewer.internal.derivative.PDFDerivativeScheduler;
+import com.xwiki.pdfviewer.internal.derivative.PDFPageRange;
+import com.xwiki.pdfviewer.internal.metrics.PDFViewerMetrics;
+import com.xwiki.pdfviewer.internal.metrics.PDFViewerMetrics.Outcome;
+import com.xwiki.pdfviewer.internal.metrics.PDFViewerMetrics.Phase;
+import com.xwiki.pdfviewer.internal.proxy.PDFProxyCache;
+import com.xwiki.pdfviewer.internal.rest.PDFViewerRestURLFactory;
+import com.xwiki.pdfviewer.macro.PDFFile;
+
+/**
+ * Resolves the files displayed by the PDF Viewer macro: checks the rights of the current user, or of the macro author
+ * when the rights are delegated, and creates the URLs loaded by the viewer.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component(roles = PDFFileResolver.class)
+@Singleton
+public class PDFFileResolver
+{
+    private static final List<String> DELEGATED_RIGHTS_VALUES = List.of("1", "true", "yes");
+
+    @Inject
+    @Named("current")
+    private EntityReferenceResolver<String> entityReferenceResolver;
+
+    @Inject
+    private PDFViewerRestURLFactory restURLFactory;
+
+    @Inject
+    private PDFDerivativeScheduler derivativeScheduler;
+
+    @Inject
+    private PDFViewerMetrics metrics;
+
+    @Inject
+    private PDFProxyCache proxyCache;
+
+    /**
+     * @param delegatedRights the value of the {@code asAuthor} macro parameter
+     * @return {@code true} if the files that the current user cannot view are displayed with the rights of the macro
+     *         author, {@code false} otherwise
+     */
+    public boolean isDelegatingRights(String delegatedRights)
+    {
+        return DELEGATED_RIGHTS_VALUES.contains(delegatedRights.toLowerCase());
+    }
+
+    /**
+     * The rights are checked right away, but the document of the file is loaded and its URLs are created only when
+     * the file is displayed, see {@link PDFFile#getURL()}.
+     *
+     * @param pdfFileEntry a file to display
+     * @param delegatedRights the value of the {@code asAuthor} macro parameter
+     * @param ownerDocumentReference the document holding the file, when the file is not a full reference
+     * @param resolutionContext the context shared by the files of the macro
+     * @return the resolved file, without URL if it cannot be displayed
+     * @throws XWikiException if the rights cannot be checked
+     */
+    public PDFFile resolve(PDFFileEntry pdfFileEntry, String delegatedRights, String ownerDocumentReference,
+        ResolutionContext resolutionContext) throws XWikiException
+    {
+        //  If the url is not directly specified, the attachment reference can be taken either directly from the file
+        //  macro parameter, since an attachment picker is used, or by using both the file and document parameters,
+        //  for macros added in xwiki versions before 11.5.
+        if (pdfFileEntry.isURL()) {
+            return handleExternalURL(pdfFileEntry, delegatedRights, resolutionContext);
+        } else {
+            return handleInternalAttachment(pdfFileEntry, delegatedRights, ownerDocumentReference, resolutionContext);
+        }
+    }
+
+    /**
+     * @param documentReference a document reference, relative to the current document
+     * @return the resolved document reference
+     */
+    public DocumentReference resolveDocument(String documentReference)
+    {
+        long start = System.nanoTime();
+        DocumentReference resolvedReference =
+            new DocumentReference(this.entityReferenceResolver.resolve(documentReference, EntityType.DOCUMENT));
+        this.metrics.record(Phase.REFERENCE_RESOLUTION, start);
+        return resolvedReference;
+    }
+
+    private boolean hasViewRights(DocumentReference documentReference, String delegatedRights, PDFFile pdfFile,
+        ResolutionContext resolutionContext) throws XWikiException
+    {
+        // The outcomes are counted only for the displayed files, which are the ones with a PDF file.
+        XWikiContext wikiContext = resolutionContext.getWikiContext();
+        if (documentReference != null && resolutionContext.exists(documentReference)) {
+            if (resolutionContext.hasViewAccess(wikiContext.getUserReference(), documentReference)) {
+                return true;
+            } else if (isDelegatingRights(delegatedRights)) {
+                XWikiDocument sdoc = (XWikiDocument) wikiContext.get(XWikiDocument.CKEY_SDOC);
+                DocumentReference currentAuthor = sdoc.getContentAuthorReference();
+                boolean hasViewRights = resolutionContext.hasViewAccess(currentAuthor, documentReference);
+                if (pdfFile != null) {
+                    pdfFile.setDelegatedViewRights(hasViewRights);
+                    this.metrics.count(hasViewRights ? Outcome.DELEGATED_RIGHTS_GRANTED : Outcome.VIEW_DENIED);
+                }
+                return hasViewRights;
+            }
+            if (pdfFile != null) {
+                this.metrics.count(Outcome.VIEW_DENIED);
+            }
+        } else if (pdfFile != null) {
+            this.metrics.count(Outcome.MISSING_ATTACHMENT);
+        }
+        return false;
+    }
+
+    private PDFFile handleExternalURL(PDFFileEntry pdfFileEntry, String delegatedRights,
+        ResolutionContext resolutionContext) throws XWikiException
+    {
+        String pdfURL = pdfFileEntry.getFile();
+        AttachmentReference attachmentReference = pdfFileEntry.getReference();
+
+        //  If the attachment reference name is the same as the given url, it means that the url directs to a file
+        //  outside of XWiki instance and there is no need to check the user view right or delegated rights. We still
+        //  send the attachment reference to be able to extract the name for it to be displayed in a tab in the case
+        //  of multiple attachments.
+        PDFFile pdfFile = new PDFFile();
+        if (pdfFileEntry.isExternal()) {
+            this.metrics.count(Outcome.EXTERNAL_URL);
+            pdfFile.setExternal(true);
+            // Load the file from the wiki origin when the proxy is enabled, but keep the original URL for downloads.
+            String proxyURL = this.proxyCache.isProxied(pdfURL) ? this.restURLFactory.getProxyURL(pdfURL) : null;
+            if (proxyURL != null) {
+                pdfFile.setUrl(proxyURL);
+                pdfFile.setDownloadURL(pdfURL);
+            } else {
+                pdfFile.setUrl(pdfURL);
+            }
+            pdfFile.setAttachmentReference(attachmentReference);
+            return pdfFile;
+        } else if (hasViewRights(attachmentReference.getDocumentReference(), delegatedRights, pdfFile,
+            resolutionContext))
+        {
+            // If the user has the rights to view the attachment parent document, but the attachment is not found, an
+            // empty URL is returned. The document is loaded only if the file is actually displayed.
+            pdfFile.setAttachmentReference(attachmentReference);
+            pdfFile.setURLSupplier(() -> {
+                XWikiDocument doc = loadDocument(attachmentReference.getDocumentReference(), resolutionContext);
+                XWikiAttachment attachment = doc.getAttachment(attachmentReference.getName());
+                if (attachment == null) {
+                    this.metrics.count(Outcome.MISSING_ATTACHMENT);
+                    return null;
+                }
+                return getViewerURL(pdfFile, attachment, pdfURL, resolutionContext);
+            });
+            return pdfFile;
+        }
+        return pdfFile;
+    }
+
+    private PDFFile handleInternalAttachment(PDFFileEntry pdfFileEntry, String delegatedRights,
+        String ownerDocumentReference, ResolutionContext resolutionContext) throws XWikiException
+    {
+        XWikiDocument ownerDocument =
+            getOwnerDocumentFromParameters(ownerDocumentReference, delegatedRights, resolutionContext);
+        XWikiAttachment attachment = ownerDocument.getAttachment(pdfFileEntry.getFile());
+
+        // If the attachment is not in the current or given document, the file parameter is used as a full reference.
+        if (attachment == null) {
+            AttachmentReference attachmentReference = pdfFileEntry.getReference();
+            DocumentReference parentDocRef = attachmentReference.getDocumentReference();
+            return getPDFFile(attachmentReference, parentDocRef, delegatedRights, resolutionContext);
+        } else {
+            PDFFile pdfFile = new PDFFile();
+            pdfFile.setAttachmentReference(attachment.getReference());
+            pdfFile.setURLSupplier(() -> getViewerURL(pdfFile, attachment,
+                ownerDocument.getAttachmentURL(attachment.getFilename(), resolutionContext.getWikiContext()),
+                resolutionContext));
+            return pdfFile;
+        }
+    }
+
+    private PDFFile getPDFFile(AttachmentReference attachmentReference, DocumentReference parentDocRef,
+        String delegatedRights, ResolutionContext resolutionContext) throws XWikiException
+    {
+        PDFFile pdfFile = new PDFFile();
+        if (hasViewRights(parentDocRef, delegatedRights, pdfFile, resolutionContext)) {
+            // If the attachment does not exist, an empty URL is returned, alongside with the attachment reference. The
+            // attachment document is loaded only if the file is actually displayed.
+            pdfFile.setAttachmentReference(attachmentReference);
+            pdfFile.setURLSupplier(() -> {
+                String attachName = attachmentReference.getName();
+                XWikiDocument attachmentDocument = loadDocument(parentDocRef, resolutionContext);
+                XWikiAttachment attachment = attachmentDocument.getAttachment(attachName);
+                if (attachment != null) {
+                    return getViewerURL(pdfFile, attachment,
+                        attachmentDocument.getAttachmentURL(attachName, resolutionContext.getWikiContext()),
+                        resolutionContext);
+                }
+                this.metrics.count(Outcome.MISSING_ATTACHMENT);
+                return null;
+            });
+            return pdfFile;
+        }
+        return pdfFile;
+    }
+
+    private String getViewerURL(PDFFile pdfFile, XWikiAttachment attachment, String downloadURL,
+        ResolutionContext resolutionContext)
+    {
+        // The REST resources check the rights of the current user, so files viewed with delegated rights are still
+        // loaded through the download action, and have no poster. They are also displayed whole.
+        if (pdfFile.areViewRightsDelegated()) {
+            return downloadURL;
+        }
+        // Prefer a derivative optimized for the viewer (e.g. linearized) when it has been created already.
+        PDFPageRange pageRange = resolutionContext.getPageRange();
+        String viewerURL = this.restURLFactory.getFileURL(attachment, pageRange,
+            this.derivativeScheduler.getDisplayableVariant(attachment));
+        if (viewerURL == null) {
+            return downloadURL;
+        }
+        pdfFile.setPosterURL(this.restURLFactory.getPosterURL(attachment, pageRange));
+        pdfFile.setDownloadURL(downloadURL);
+        return viewerURL;
+    }
+
+    private XWikiDocument loadDocument(DocumentReference documentReference, ResolutionContext resolutionContext)
+    {
+        try {
+            return resolutionContext.getDocument(documentReference);
+        } catch (XWikiException e) {
+            // Thrown while the template is rendered, so it ends up wrapped in the macro execution exception.
+            throw new RuntimeException(String.format("Failed to load the document [%s].", documentReference), e);
+        }
+    }
+
+    private XWikiDocument getOwnerDocumentFromParameters(String ownerDocumentReference, String delegatedRights,
+        ResolutionContext resolutionContext) throws XWikiException
+    {
+        // For backwards compatibility with the macros added in older versions, first it is checked if the file name
+        // specified exists on the defined document or on the current one before considering the file parameter as the
+        // full reference.
+        XWikiDocument attachmentDocument = resolutionContext.getWikiContext().getDoc();
+        if (ownerDocumentReference != null && !ownerDocumentReference.isEmpty()) {
+            DocumentReference givenDocumentReference = resolveDocument(ownerDocumentReference);
+            if (hasViewRights(givenDocumentReference, delegatedRights, null, resolutionContext)) {
+                attachmentDocument = resolutionContext.getDocument(givenDocumentReference);
+            }
+        }
+        return attachmentDocument;
+    }
+}
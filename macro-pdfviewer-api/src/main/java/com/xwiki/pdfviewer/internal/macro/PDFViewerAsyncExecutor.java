@@ -0,0 +1,120 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.macro;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.rendering.async.internal.AsyncRendererConfiguration;
+import org.xwiki.rendering.async.internal.block.BlockAsyncRendererExecutor;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.macro.MacroExecutionException;
+import org.xwiki.rendering.transformation.MacroTransformationContext;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xwiki.pdfviewer.internal.configuration.PDFViewerConfiguration;
+import com.xwiki.pdfviewer.macro.PDFViewerMacroParameters;
+
+/**
+ * Renders the PDF Viewer macro through the asynchronous rendering framework, see {@link PDFViewerBlockAsyncRenderer}.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component(roles = PDFViewerAsyncExecutor.class)
+@Singleton
+public class PDFViewerAsyncExecutor
+{
+    private static final Set<String> ASYNC_CONTEXT_ENTRIES = Set.of("author", "doc.reference", "locale",
+        "request.base", "request.parameters", "request.url", "secureDocument", "user", "wiki");
+
+    @Inject
+    private BlockAsyncRendererExecutor asyncRendererExecutor;
+
+    @Inject
+    private Provider<PDFViewerBlockAsyncRenderer> asyncRendererProvider;
+
+    @Inject
+    private Provider<XWikiContext> wikiContextProvider;
+
+    /**
+     * @param macro the macro to render
+     * @param parameters the macro parameters
+     * @param allFiles the files to display
+     * @param context the macro transformation context
+     * @return the result of the macro, or a placeholder replaced by the result once rendered
+     * @throws MacroExecutionException if the macro cannot be rendered
+     */
+    public Block execute(PDFViewerMacro macro, PDFViewerMacroParameters parameters, List<PDFFileEntry> allFiles,
+        MacroTransformationContext context) throws MacroExecutionException
+    {
+        PDFViewerBlockAsyncRenderer renderer = this.asyncRendererProvider.get();
+        renderer.initialize(macro, parameters, allFiles, context, getAsyncId(parameters, allFiles));
+        AsyncRendererConfiguration asyncConfiguration = new AsyncRendererConfiguration();
+        asyncConfiguration.setContextEntries(ASYNC_CONTEXT_ENTRIES);
+        // Declare the documents the result depends on.
+        XWikiContext wikiContext = this.wikiContextProvider.get();
+        asyncConfiguration.useEntity(
+            new DocumentReference(PDFViewerConfiguration.CONFIGURATION_REFERENCE, wikiContext.getWikiReference()));
+        for (PDFFileEntry file : allFiles) {
+            if (file.getReference() != null) {
+                asyncConfiguration.useEntity(file.getReference().getDocumentReference());
+            }
+        }
+
+        try {
+            return this.asyncRendererExecutor.execute(renderer, asyncConfiguration);
+        } catch (Exception e) {
+            throw new MacroExecutionException("Failed to render the PDF Viewer macro.", e);
+        }
+    }
+
+    /**
+     * @param parameters the macro parameters
+     * @param allFiles the files displayed by the macro
+     * @return the identifier of the asynchronous rendering of the macro
+     */
+    List<String> getAsyncId(PDFViewerMacroParameters parameters, List<PDFFileEntry> allFiles)
+    {
+        // Macros with the same parameters in the same document render the same result.
+        XWikiContext wikiContext = this.wikiContextProvider.get();
+        List<Object> key = new ArrayList<>();
+        for (PDFFileEntry file : allFiles) {
+            key.add(file.getFile());
+        }
+        Collections.addAll(key, parameters.getDocument(), parameters.getWidth(), parameters.getHeight(),
+            parameters.getAsAuthor(), parameters.getLazyLoading(), parameters.getViewerMode(), parameters.getPages());
+        DocumentReference currentDocumentReference =
+            wikiContext.getDoc() != null ? wikiContext.getDoc().getDocumentReference() : null;
+        // Hash the unambiguous serialization of the parameters, rather than using their hash code, so that macros
+        // with different parameters cannot share the same id.
+        return List.of("rendering", "macro", "pdfviewer", String.valueOf(currentDocumentReference),
+            DigestUtils.sha256Hex(PDFViewerRenderingCache.createKey(key)));
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.macro;
+
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.annotation.InstantiationStrategy;
+import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.rendering.RenderingException;
+import org.xwiki.rendering.async.internal.block.AbstractBlockAsyncRenderer;
+import org.xwiki.rendering.async.internal.block.BlockAsyncRendererResult;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.CompositeBlock;
+import org.xwiki.rendering.macro.MacroExecutionException;
+import org.xwiki.rendering.renderer.BlockRenderer;
+import org.xwiki.rendering.renderer.printer.DefaultWikiPrinter;
+import org.xwiki.rendering.renderer.printer.WikiPrinter;
+import org.xwiki.rendering.syntax.Syntax;
+import org.xwiki.rendering.transformation.MacroTransformationContext;
+
+import com.xwiki.pdfviewer.macro.PDFViewerMacroParameters;
+
+/**
+ * Renders a PDF Viewer macro through the asynchronous rendering framework, so that the rights checks, the document
+ * loads and the template execution don't block the rendering of the rest of the page.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component(roles = PDFViewerBlockAsyncRenderer.class)
+@InstantiationStrategy(ComponentInstantiationStrategy.PER_LOOKUP)
+public class PDFViewerBlockAsyncRenderer extends AbstractBlockAsyncRenderer
+{
+    @Inject
+    @Named("context")
+    private Provider<ComponentManager> componentManagerProvider;
+
+    private PDFViewerMacro macro;
+
+    private PDFViewerMacroParameters parameters;
+
+    private List<PDFFileEntry> fileEntries;
+
+    private MacroTransformationContext context;
+
+    private List<String> id;
+
+    /**
+     * @param macro the macro to render
+     * @param parameters the macro parameters
+     * @param fileEntries the files to display
+     * @param context the macro transformation context
+     * @param id the identifier of the rendering, which has to be the same for the macros rendering the same result
+     */
+    void initialize(PDFViewerMacro macro, PDFViewerMacroParameters parameters, List<PDFFileEntry> fileEntries,
+        MacroTransformationContext context, List<String> id)
+    {
+        this.macro = macro;
+        this.parameters = parameters;
+        this.fileEntries = fileEntries;
+        this.context = context;
+        this.id = id;
+    }
+
+    @Override
+    public List<String> getId()
+    {
+        return this.id;
+    }
+
+    @Override
+    public boolean isAsyncAllowed()
+    {
+        return true;
+    }
+
+    @Override
+    public boolean isCacheAllowed()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean isInline()
+    {
+        return this.context.isInline();
+    }
+
+    @Override
+    public Syntax getTargetSyntax()
+    {
+        Syntax targetSyntax = this.context.getTransformationContext().getTargetSyntax();
+        return targetSyntax != null ? targetSyntax : Syntax.HTML_5_0;
+    }
+
+    @Override
+    public BlockAsyncRendererResult render(boolean async, boolean cached) throws RenderingException
+    {
+        Block block;
+        try {
+            block = new CompositeBlock(this.macro.render(this.parameters, this.fileEntries, this.context));
+        } catch (MacroExecutionException e) {
+            throw new RenderingException("Failed to render the PDF Viewer macro.", e);
+        }
+
+        // The result is injected in the page as a string when it is rendered asynchronously.
+        String result = null;
+        if (async || cached) {
+            try {
+                BlockRenderer renderer = this.componentManagerProvider.get().getInstance(BlockRenderer.class,
+                    getTargetSyntax().toIdString());
+                WikiPrinter printer = new DefaultWikiPrinter();
+                renderer.render(block, printer);
+                result = printer.toString();
+            } catch (ComponentLookupException e) {
+                throw new RenderingException("Failed to lookup the renderer for the target syntax.", e);
+            }
+        }
+        return new BlockAsyncRendererResult(result, block);
+    }
+}
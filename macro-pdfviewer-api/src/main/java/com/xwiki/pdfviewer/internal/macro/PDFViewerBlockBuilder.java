@@ -0,0 +1,395 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.macro;
+
+import java.io.StringReader;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.localization.ContextualLocalizationManager;
+import org.xwiki.model.reference.AttachmentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.BulletedListBlock;
+import org.xwiki.rendering.block.GroupBlock;
+import org.xwiki.rendering.block.ListItemBlock;
+import org.xwiki.rendering.block.RawBlock;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.parser.ParseException;
+import org.xwiki.rendering.parser.Parser;
+import org.xwiki.rendering.syntax.Syntax;
+import org.xwiki.script.service.ScriptService;
+import org.xwiki.skinx.SkinExtension;
+import org.xwiki.webjars.script.WebJarsScriptService;
+import org.xwiki.xml.XMLUtils;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.web.XWikiRequest;
+import com.xwiki.pdfviewer.internal.configuration.PDFViewerConfigurationSnapshot;
+import com.xwiki.pdfviewer.internal.derivative.PDFPageRange;
+import com.xwiki.pdfviewer.internal.metrics.PDFViewerTelemetryConfiguration;
+import com.xwiki.pdfviewer.internal.rest.PDFViewerRestURLFactory;
+import com.xwiki.pdfviewer.macro.PDFFile;
+import com.xwiki.pdfviewer.macro.PDFViewerMacroParameters;
+import com.xwiki.pdfviewer.macro.PDFViewerMode;
+
+/**
+ * Builds the blocks displaying the PDF viewers, without going through the {@code pdfviewer/pdfviewer.vm} template,
+ * which is still used when {@code pdfviewer.rendering.template} is set in {@code xwiki.properties}.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component(roles = PDFViewerBlockBuilder.class)
+@Singleton
+public class PDFViewerBlockBuilder
+{
+    private static final String WEBJAR_ID = "com.xwiki.pdfviewer:macro-pdfviewer-webjar";
+
+    private static final String VIEWER_PATH = "web/viewer.html";
+
+    private static final String EMBEDDED_MODULE_PATH = "pdfviewer-embedded.mjs";
+
+    private static final String JAVASCRIPT_EXTENSION = "XWiki.PDFViewerMacro";
+
+    private static final String CLASS = "class";
+
+    private static final String STYLE = "style";
+
+    private static final String ATTRIBUTE_END = "\" ";
+
+    private static final String PIXELS = "px";
+
+    private static final String VIEWER_BACKGROUND = " background-color: #525659;";
+
+    @Inject
+    private Provider<XWikiContext> wikiContextProvider;
+
+    @Inject
+    private ContextualLocalizationManager localizationManager;
+
+    @Inject
+    private EntityReferenceSerializer<String> entityReferenceSerializer;
+
+    @Inject
+    @Named("plain/1.0")
+    private Parser plainTextParser;
+
+    @Inject
+    @Named("webjars")
+    private Provider<ScriptService> webJarsScriptServiceProvider;
+
+    @Inject
+    @Named("jsx")
+    private SkinExtension javaScriptExtension;
+
+    @Inject
+    private PDFViewerTelemetryConfiguration telemetryConfiguration;
+
+    @Inject
+    private PDFViewerRestURLFactory restURLFactory;
+
+    /**
+     * @param parameters the macro parameters
+     * @param files the files to display
+     * @param configuration the configuration of the current wiki
+     * @return the blocks displaying the given files
+     */
+    public List<Block> build(PDFViewerMacroParameters parameters, List<PDFFile> files,
+        PDFViewerConfigurationSnapshot configuration)
+    {
+        if (files.isEmpty()) {
+            return Collections.singletonList(createError(translate("pdfviewer.error.nofile")));
+        }
+
+        Options options = new Options(parameters, configuration, this.telemetryConfiguration.isEnabled());
+        if (files.size() == 1) {
+            return createFile(files.get(0), options);
+        }
+
+        // Display each PDF file in its own tab, only the selected one being loaded.
+        XWikiContext wikiContext = this.wikiContextProvider.get();
+        XWikiRequest request = wikiContext.getRequest();
+        String selectedFile = request != null ? request.getParameter("file") : null;
+        List<Block> tabs = new ArrayList<>();
+        PDFFile activeFile = null;
+        for (PDFFile file : files) {
+            if (file.getAttachmentReference().isPresent()) {
+                String name = file.getAttachmentReference().get().getName();
+                boolean active = (selectedFile == null || selectedFile.isEmpty()) ? tabs.isEmpty()
+                    : selectedFile.equals(name);
+                if (active && activeFile == null) {
+                    activeFile = file;
+                }
+                tabs.add(createTab(name, active, file, options, wikiContext));
+            }
+        }
+
+        List<Block> result = new ArrayList<>();
+        result.add(new GroupBlock(Collections.singletonList(
+            new BulletedListBlock(tabs, Collections.singletonMap(CLASS, "xwikitabbar"))),
+            Collections.singletonMap(CLASS, "floatcontainer pdfviewer-tabs")));
+        result.add(new GroupBlock(activeFile != null ? createFile(activeFile, options) : Collections.emptyList(),
+            Collections.singletonMap(CLASS, "xwikitabpanescontainer")));
+        return result;
+    }
+
+    /**
+     * The poster is shown until the first page is rendered, so hinting it in the macro output lets the browser fetch it
+     * along with the page. The viewer code is not hinted: the viewer frame has its own module map, and the preloads of
+     * the page would not be reused by it.
+     *
+     * @param file a displayed file
+     * @return the HTML link element asking the browser to preload the poster of the given file, or an empty string if
+     *         the file has no poster
+     */
+    public String getPreloadHTML(PDFFile file)
+    {
+        // The file itself is not preloaded: the viewer fetches only the byte ranges it displays, which a full preload
+        // would defeat.
+        String posterURL = file.getPosterURL();
+        if (posterURL == null || posterURL.isEmpty()) {
+            return "";
+        }
+        return "<link rel=\"preload\" href=\"" + XMLUtils.escape(posterURL) + "\" as=\"image\"/>";
+    }
+
+    /**
+     * The files of the inactive tabs are not resolved, so that their documents are not loaded when the page is
+     * rendered. The JavaScript extension gets their URLs from the returned URL when their tab is activated.
+     *
+     * @param file a file displayed in a tab
+     * @param pages the pages displayed by the macro (e.g. {@code 1-5}), if not the whole files
+     * @return the URL of the resource returning the URLs needed by the viewer to display the given file, or
+     *         {@code null} if the file is not an attachment of this wiki
+     */
+    public String getTabURLsURL(PDFFile file, String pages)
+    {
+        return getTabURLsURL(file, PDFPageRange.parse(pages));
+    }
+
+    private String getTabURLsURL(PDFFile file, PDFPageRange pageRange)
+    {
+        return !file.isExternal() && file.getAttachmentReference().isPresent()
+            ? this.restURLFactory.getURLsURL(file.getAttachmentReference().get(), pageRange) : null;
+    }
+
+    private Block createTab(String name, boolean active, PDFFile file, Options options, XWikiContext wikiContext)
+    {
+        XWikiDocument currentDocument = wikiContext.getDoc();
+        String url = currentDocument.getURL("view", "file=" + encode(name), wikiContext);
+        StringBuilder html = new StringBuilder("<a href=\"").append(XMLUtils.escape(url)).append(ATTRIBUTE_END);
+        // Lets the JavaScript extension switch the tabs without reloading the page, the viewer URLs of the attachments
+        // being resolved only when the tabs are activated. The URLs of the external files are known already. The link
+        // still works as a deep link to the file.
+        if (options.viewerMode != PDFViewerMode.EMBEDDED && file.isExternal()) {
+            html.append("data-viewer-file=\"").append(XMLUtils.escape(file.getURL())).append(ATTRIBUTE_END)
+                .append("data-viewer-download=\"").append(XMLUtils.escape(file.getDownloadURL()))
+                .append(ATTRIBUTE_END);
+        } else if (options.viewerMode != PDFViewerMode.EMBEDDED) {
+            String urlsURL = getTabURLsURL(file, options.pageRange);
+            if (urlsURL != null) {
+                html.append("data-viewer-urls=\"").append(XMLUtils.escape(urlsURL)).append(ATTRIBUTE_END);
+            }
+        }
+        html.append('>').append(XMLUtils.escape(name)).append("</a>");
+        Block link = createHTML(html.toString());
+        return new ListItemBlock(Collections.singletonList(link),
+            active ? Collections.singletonMap(CLASS, "active") : Collections.emptyMap());
+    }
+
+    private List<Block> createFile(PDFFile file, Options options)
+    {
+        String url = file.getURL();
+        if (url != null && !url.isEmpty()) {
+            this.javaScriptExtension.use(JAVASCRIPT_EXTENSION);
+            List<Block> blocks = new ArrayList<>();
+            // Lazy viewers are not loaded with the page, so their poster is not needed right away.
+            if (!options.lazyLoading) {
+                blocks.add(createHTML(getPreloadHTML(file)));
+            }
+            blocks.add(options.viewerMode == PDFViewerMode.EMBEDDED ? createEmbeddedViewer(file, options)
+                : createViewerFrame(file, options));
+            return blocks;
+        } else if (file.getAttachmentReference().isEmpty()) {
+            return Collections.singletonList(createError(translate("pdfviewer.error.nodocument")));
+        } else {
+            AttachmentReference reference = file.getAttachmentReference().get();
+            return Collections.singletonList(createError(translate("pdfviewer.error.noattachment",
+                reference.getName(), this.entityReferenceSerializer.serialize(reference.getDocumentReference()))));
+        }
+    }
+
+    private String getViewerSrc(PDFFile file, Options options)
+    {
+        Map<String, String> queryParameters = new LinkedHashMap<>();
+        queryParameters.put("file", file.getURL());
+        queryParameters.put("permalink", file.getDownloadURL());
+        queryParameters.put("trustedOrigins", options.trustedOrigins);
+        queryParameters.put("withCredentials", options.withCredentialsParameter);
+        queryParameters.put("delegatedView", String.valueOf(file.areViewRightsDelegated()));
+        if (options.telemetry) {
+            queryParameters.put("telemetry", "1");
+        }
+        StringBuilder src = new StringBuilder(getWebJarURL(VIEWER_PATH));
+        // The query string of the webjar URL is kept since it versions the viewer, so that it can be cached for good.
+        char separator = src.indexOf("?") < 0 ? '?' : '&';
+        for (Map.Entry<String, String> parameter : queryParameters.entrySet()) {
+            src.append(separator).append(parameter.getKey()).append('=').append(encode(parameter.getValue()));
+            separator = '&';
+        }
+        src.append("#locale=").append(this.wikiContextProvider.get().getLocale());
+        return src.toString();
+    }
+
+    private Block createViewerFrame(PDFFile file, Options options)
+    {
+        // Lazy viewers are created by the JavaScript extension when they are scrolled into view.
+        StringBuilder html = new StringBuilder("<iframe class=\"pdfviewer\" ");
+        html.append(options.lazyLoading ? "data-src=\"" : "src=\"")
+            .append(XMLUtils.escape(getViewerSrc(file, options))).append(ATTRIBUTE_END)
+            .append("width=\"").append(XMLUtils.escape(options.width)).append(ATTRIBUTE_END)
+            .append("height=\"").append(options.height).append("\"></iframe>");
+        appendPoster(html, file, options);
+        return new GroupBlock(Collections.singletonList(createHTML(html.toString())),
+            Collections.singletonMap(STYLE, "position: relative;"));
+    }
+
+    private Block createEmbeddedViewer(PDFFile file, Options options)
+    {
+        // The pages are rendered by a JavaScript module shared by all the embedded viewers of the page.
+        Map<String, String> attributes = new LinkedHashMap<>();
+        attributes.put(CLASS, "pdfviewer-embedded");
+        attributes.put("data-file", file.getURL());
+        attributes.put("data-with-credentials", options.withCredentialsParameter);
+        attributes.put("data-lazy", String.valueOf(options.lazyLoading));
+        attributes.put("data-module", getWebJarURL(EMBEDDED_MODULE_PATH));
+        attributes.put("data-error-message", translate("pdfviewer.error.load"));
+        attributes.put(STYLE, "position: relative; overflow: auto; width: " + options.cssWidth + "; height: "
+            + options.height + PIXELS + "; padding-top: 10px; box-sizing: border-box;" + VIEWER_BACKGROUND);
+        StringBuilder html = new StringBuilder();
+        appendPoster(html, file, options);
+        List<Block> children =
+            html.length() > 0 ? Collections.singletonList(createHTML(html.toString())) : Collections.emptyList();
+        return new GroupBlock(children, attributes);
+    }
+
+    private void appendPoster(StringBuilder html, PDFFile file, Options options)
+    {
+        String posterURL = file.getPosterURL();
+        if (posterURL != null && !posterURL.isEmpty()) {
+            // Image of the first page, displayed over the viewer until it renders the PDF file.
+            html.append("<img class=\"pdfviewer-poster\" src=\"").append(XMLUtils.escape(posterURL))
+                .append("\" alt=\"\" onerror=\"this.remove()\" ").append(options.lazyLoading ? "loading=\"lazy\" " : "")
+                .append("style=\"position: absolute; top: 0; left: 0; width: ")
+                .append(XMLUtils.escape(options.cssWidth)).append("; height: ").append(options.height).append(PIXELS)
+                .append("; object-fit: contain;").append(VIEWER_BACKGROUND).append("\"/>");
+        }
+    }
+
+    private String translate(String key, Object... parameters)
+    {
+        // Same as the localization script service, which displays the key of the missing translations.
+        String translation = this.localizationManager.getTranslationPlain(key, parameters);
+        return translation != null ? translation : key;
+    }
+
+    private Block createError(String message)
+    {
+        List<Block> content;
+        try {
+            // Parse the message as plain text so that it is properly escaped by the renderer.
+            XDOM xdom = this.plainTextParser.parse(new StringReader(message));
+            content = xdom.getChildren().isEmpty() ? Collections.emptyList()
+                : xdom.getChildren().get(0).getChildren();
+        } catch (ParseException e) {
+            content = Collections.emptyList();
+        }
+        return new GroupBlock(content, Collections.singletonMap(CLASS, "box errormessage"));
+    }
+
+    private Block createHTML(String html)
+    {
+        return new RawBlock(html, Syntax.HTML_5_0);
+    }
+
+    private String getWebJarURL(String path)
+    {
+        // Not cached since the URL depends on the URL factory of the request (e.g. exports) and on the installed
+        // version of the webjar.
+        return ((WebJarsScriptService) this.webJarsScriptServiceProvider.get()).url(WEBJAR_ID, path);
+    }
+
+    private String encode(String value)
+    {
+        return value == null ? "" : URLEncoder.encode(value, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    /**
+     * The display options shared by all the files of a macro.
+     */
+    private static final class Options
+    {
+        private final String width;
+
+        private final String cssWidth;
+
+        private final int height;
+
+        private final boolean lazyLoading;
+
+        private final String withCredentialsParameter;
+
+        private final String trustedOrigins;
+
+        private final PDFViewerMode viewerMode;
+
+        private final boolean telemetry;
+
+        private final PDFPageRange pageRange;
+
+        Options(PDFViewerMacroParameters parameters, PDFViewerConfigurationSnapshot configuration, boolean telemetry)
+        {
+            this.width = parameters.getWidth();
+            this.cssWidth = this.width.matches("\\d+") ? this.width + PIXELS : this.width;
+            this.height = parameters.getHeight();
+            this.lazyLoading = parameters.getLazyLoading() != null ? parameters.getLazyLoading()
+                : configuration.isLazyLoading();
+            this.withCredentialsParameter = configuration.isWithCredentials() ? "1" : "0";
+            this.trustedOrigins = configuration.getTrustedOriginsParameter();
+            this.viewerMode = parameters.getViewerMode();
+            this.telemetry = telemetry;
+            // Already validated by the macro.
+            this.pageRange = PDFPageRange.parse(parameters.getPages());
+        }
+    }
+}
@@ -22,8 +22,10 @@ package com.xwiki.pdfviewer.internal.macro;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -31,12 +33,8 @@ import javax.inject.Provider;
 import javax.inject.Singleton;
 import javax.script.ScriptContext;
 
-import org.apache.commons.lang.StringUtils;
 import org.xwiki.component.annotation.Component;
-import org.xwiki.model.EntityType;
-import org.xwiki.model.reference.AttachmentReference;
 import org.xwiki.model.reference.DocumentReference;
-import org.xwiki.model.reference.EntityReferenceResolver;
 import org.xwiki.rendering.block.Block;
 import org.xwiki.rendering.block.MacroBlock;
 import org.xwiki.rendering.macro.AbstractMacro;
@@ -44,17 +42,20 @@ import org.xwiki.rendering.macro.MacroExecutionException;
 import org.xwiki.rendering.transformation.MacroTransformationContext;
 import org.xwiki.script.ScriptContextManager;
 import org.xwiki.security.authorization.AuthorizationManager;
-import org.xwiki.security.authorization.Right;
+import org.xwiki.skinx.SkinExtension;
 import org.xwiki.template.Template;
 import org.xwiki.template.TemplateManager;
 
-import com.xpn.xwiki.XWiki;
 import com.xpn.xwiki.XWikiContext;
-import com.xpn.xwiki.XWikiException;
-import com.xpn.xwiki.doc.XWikiAttachment;
-import com.xpn.xwiki.doc.XWikiDocument;
-import com.xwiki.licensing.Licensor;
 import com.xwiki.pdfviewer.internal.MJSMimeTypeRegistrar;
+import com.xwiki.pdfviewer.internal.configuration.PDFViewerConfiguration;
+import com.xwiki.pdfviewer.internal.configuration.PDFViewerConfigurationSnapshot;
+import com.xwiki.pdfviewer.internal.configuration.PDFViewerRenderingConfiguration;
+import com.xwiki.pdfviewer.internal.derivative.PDFPageRange;
+import com.xwiki.pdfviewer.internal.license.PDFViewerLicensureCache;
+import com.xwiki.pdfviewer.internal.metrics.PDFViewerMetrics;
+import com.xwiki.pdfviewer.internal.metrics.PDFViewerMetrics.Phase;
+import com.xwiki.pdfviewer.internal.metrics.PDFViewerTelemetryConfiguration;
 import com.xwiki.pdfviewer.macro.PDFFile;
 import com.xwiki.pdfviewer.macro.PDFViewerMacroParameters;
 
@@ -69,9 +70,7 @@ import com.xwiki.pdfviewer.macro.PDFViewerMacroParameters;
 @Singleton
 public class PDFViewerMacro extends AbstractMacro<PDFViewerMacroParameters>
 {
-    private static final String PDF_SEPARATOR = "(?<=\\.pdf),";
-
-    private final List<String> delegatedRightsValues = List.of("1", "true", "yes");
+    private static final String JAVASCRIPT_EXTENSION = "XWiki.PDFViewerMacro";
 
     @Inject
     private AuthorizationManager authorizationManager;
@@ -80,18 +79,13 @@ public class PDFViewerMacro extends AbstractMacro<PDFViewerMacroParameters>
     private TemplateManager templateManager;
 
     @Inject
-    @Named("resource/standardURL")
-    private EntityReferenceResolver<String> urlEntityReferenceResolver;
-
-    @Inject
-    @Named("current")
-    private EntityReferenceResolver<String> entityReferenceResolver;
+    private ScriptContextManager scriptContextManager;
 
     @Inject
-    private ScriptContextManager scriptContextManager;
+    private PDFFileEntryCache fileEntryCache;
 
     @Inject
-    private Licensor licensor;
+    private PDFViewerLicensureCache licensureCache;
 
     @Inject
     private Provider<XWikiContext> wikiContextProvider;
@@ -99,6 +93,37 @@ public class PDFViewerMacro extends AbstractMacro<PDFViewerMacroParameters>
     @Inject
     private MJSMimeTypeRegistrar mjsMimeTypeRegistrar;
 
+    @Inject
+    private PDFViewerConfiguration configuration;
+
+    @Inject
+    private PDFViewerRenderingCache renderingCache;
+
+    @Inject
+    @Named("jsx")
+    private SkinExtension javaScriptExtension;
+
+    @Inject
+    private PDFViewerMetrics metrics;
+
+    @Inject
+    private PDFViewerRenderingConfiguration renderingConfiguration;
+
+    @Inject
+    private PDFViewerBlockBuilder blockBuilder;
+
+    @Inject
+    private PDFViewerTelemetryConfiguration telemetryConfiguration;
+
+    @Inject
+    private PDFFileResolver fileResolver;
+
+    @Inject
+    private PDFViewerRenderingKeys renderingKeys;
+
+    @Inject
+    private PDFViewerAsyncExecutor asyncExecutor;
+
     /**
      * Create and initialize the descriptor of the macro.
      */
@@ -113,31 +138,81 @@ public class PDFViewerMacro extends AbstractMacro<PDFViewerMacroParameters>
     public List<Block> execute(PDFViewerMacroParameters parameters, String content, MacroTransformationContext context)
         throws MacroExecutionException
     {
-        DocumentReference licenseDoc =
-            new DocumentReference(wikiContextProvider.get().getWikiId(), List.of("PDFViewer", "Code"), "WebHome");
-        if (!licensor.hasLicensure(licenseDoc)) {
-            licenceError(context);
+        // The licence is checked before the rendering is delegated, so that the message is displayed synchronously and
+        // the viewer is never rendered, nor cached, for an unlicensed wiki.
+        long start = System.nanoTime();
+        boolean hasLicensure = this.licensureCache.hasLicensure();
+        this.metrics.record(Phase.LICENSE_CHECK, start);
+        if (!hasLicensure) {
+            return licenceError(context);
+        }
+
+        start = System.nanoTime();
+        List<PDFFileEntry> allFiles = new ArrayList<>(this.fileEntryCache.getEntries(parameters.getFile()));
+        allFiles.addAll(this.fileEntryCache.getEntries(parameters.getFileFromExternalUrl()));
+        this.metrics.record(Phase.REFERENCE_RESOLUTION, start);
+
+        return Collections.singletonList(this.asyncExecutor.execute(this, parameters, allFiles, context));
+    }
+
+    /**
+     * Render the macro, possibly outside of the page rendering thread. See {@link PDFViewerBlockAsyncRenderer}.
+     *
+     * @param parameters the macro parameters
+     * @param allFiles the files to display
+     * @param context the macro transformation context
+     * @return the result of the macro
+     * @throws MacroExecutionException if the macro cannot be rendered
+     */
+    List<Block> render(PDFViewerMacroParameters parameters, List<PDFFileEntry> allFiles,
+        MacroTransformationContext context) throws MacroExecutionException
+    {
+        long renderingStart = System.nanoTime();
+        PDFPageRange pageRange;
+        try {
+            pageRange = PDFPageRange.parse(parameters.getPages());
+        } catch (IllegalArgumentException e) {
+            throw new MacroExecutionException(e.getMessage(), e);
         }
 
         try {
+            long start = System.nanoTime();
             mjsMimeTypeRegistrar.maybeRegisterMJSMimeType();
-            Template customTemplate = this.templateManager.getTemplate("pdfviewer/pdfviewer.vm");
-            List<String> allFiles = new ArrayList<>();
-            if (StringUtils.isNotBlank(parameters.getFile())) {
-                String[] files = parameters.getFile().split(PDF_SEPARATOR);
-                Collections.addAll(allFiles, files);
-            }
-            if (StringUtils.isNotBlank(parameters.getFileFromExternalUrl())) {
-                String[] filesFromExternalUrl = parameters.getFileFromExternalUrl().split(PDF_SEPARATOR);
-                Collections.addAll(allFiles, filesFromExternalUrl);
+            this.metrics.record(Phase.MIME_REGISTRATION, start);
+            ResolutionContext resolutionContext =
+                new ResolutionContext(wikiContextProvider.get(), this.authorizationManager, this.metrics, pageRange);
+            Set<DocumentReference> documentReferences = this.renderingKeys.getDocumentReferences(parameters, allFiles);
+            String cacheKey = this.renderingKeys.getCacheKey(parameters, documentReferences, resolutionContext);
+            List<Block> result = this.renderingCache.get(cacheKey);
+            if (result != null) {
+                // The JavaScript extension is used by the template, which is not executed when the result is cached.
+                this.javaScriptExtension.use(JAVASCRIPT_EXTENSION);
+                return result;
             }
+
             List<PDFFile> resourcesList = new ArrayList<>();
-            for (String file : allFiles) {
-                resourcesList.add(getPDFFile(file, parameters.getAsAuthor(), parameters.getDocument()));
+            for (PDFFileEntry file : allFiles) {
+                resourcesList.add(this.fileResolver.resolve(file, parameters.getAsAuthor(), parameters.getDocument(),
+                    resolutionContext));
             }
-            this.bindValues(parameters, resourcesList);
 
-            return this.templateManager.execute(customTemplate).getChildren();
+            // The documents of the displayed files are loaded while the blocks are created.
+            start = System.nanoTime();
+            if (this.renderingConfiguration.isTemplateEnabled()) {
+                Template customTemplate = this.templateManager.getTemplate("pdfviewer/pdfviewer.vm");
+                this.bindValues(parameters, resourcesList, this.configuration.getConfiguration());
+                result = this.templateManager.execute(customTemplate).getChildren();
+            } else {
+                result = this.blockBuilder.build(parameters, resourcesList, this.configuration.getConfiguration());
+            }
+            this.metrics.record(Phase.TEMPLATE, start);
+            // The result also depends on the configuration of the current wiki.
+            Set<DocumentReference> dependencies = new LinkedHashSet<>(documentReferences);
+            dependencies.add(new DocumentReference(PDFViewerConfiguration.CONFIGURATION_REFERENCE,
+                resolutionContext.getWikiContext().getWikiReference()));
+            this.renderingCache.set(cacheKey, result, dependencies);
+            this.metrics.record(Phase.RENDERING, renderingStart);
+            return result;
         } catch (Exception e) {
             throw new MacroExecutionException("Failed to render the PDF Viewer template.", e);
         }
@@ -155,141 +230,29 @@ public class PDFViewerMacro extends AbstractMacro<PDFViewerMacroParameters>
             Collections.singletonMap("extensionName", "proMacros.extension.name"), null, context.isInline()));
     }
 
-    private void bindValues(PDFViewerMacroParameters parameters, List<PDFFile> resourcesList)
+    private void bindValues(PDFViewerMacroParameters parameters, List<PDFFile> resourcesList,
+        PDFViewerConfigurationSnapshot configurationSnapshot)
     {
         ScriptContext scriptContext = scriptContextManager.getScriptContext();
 
         scriptContext.setAttribute("params", getTemplateParameters(parameters), ScriptContext.ENGINE_SCOPE);
         scriptContext.setAttribute("files", resourcesList, ScriptContext.ENGINE_SCOPE);
+        scriptContext.setAttribute("pdfViewerConfiguration", configurationSnapshot, ScriptContext.ENGINE_SCOPE);
+        scriptContext.setAttribute("pdfViewerBlockBuilder", this.blockBuilder, ScriptContext.ENGINE_SCOPE);
+        scriptContext.setAttribute("pdfViewerTelemetry", this.telemetryConfiguration.isEnabled(),
+            ScriptContext.ENGINE_SCOPE);
     }
 
-    private boolean hasViewRights(DocumentReference documentReference, String delegatedRights, PDFFile pdfFile)
-        throws XWikiException
-    {
-        XWikiContext wikiContext = wikiContextProvider.get();
-        XWiki wiki = wikiContext.getWiki();
-        if (documentReference != null && wiki.exists(documentReference, wikiContext)) {
-            if (this.authorizationManager.hasAccess(Right.VIEW, wikiContext.getUserReference(), documentReference)) {
-                return true;
-            } else if (delegatedRightsValues.contains(delegatedRights.toLowerCase())) {
-                XWikiDocument sdoc = (XWikiDocument) wikiContext.get(XWikiDocument.CKEY_SDOC);
-                DocumentReference currentAuthor = sdoc.getContentAuthorReference();
-                boolean hasViewRights = authorizationManager.hasAccess(Right.VIEW, currentAuthor, documentReference);
-                if (pdfFile != null) {
-                    pdfFile.setDelegatedViewRights(hasViewRights);
-                }
-                return hasViewRights;
-            }
-        }
-        return false;
-    }
-
-    private PDFFile getPDFFile(String pdfFileReference, String delegatedRights, String ownerDocumentReference)
-        throws XWikiException
-    {
-        //  If the url is not directly specified, the attachment reference can be taken either directly from the file
-        //  macro parameter, since an attachment picker is used, or by using both the file and document parameters,
-        //  for macros added in xwiki versions before 11.5.
-        if (pdfFileReference.startsWith("http://") || pdfFileReference.startsWith("https://")) {
-            return handleExternalURL(pdfFileReference, delegatedRights);
-        } else {
-            return handleInternalAttachment(pdfFileReference, delegatedRights, ownerDocumentReference);
-        }
-    }
-
-    private PDFFile handleExternalURL(String pdfURL, String delegatedRights) throws XWikiException
-    {
-        AttachmentReference attachmentReference =
-            new AttachmentReference(urlEntityReferenceResolver.resolve(pdfURL, EntityType.ATTACHMENT));
-
-        //  If the attachment reference name is the same as the given url, it means that the url directs to a file
-        //  outside of XWiki instance and there is no need to check the user view right or delegated rights. We still
-        //  send the attachment reference to be able to extract the name for it to be displayed in a tab in the case
-        //  of multiple attachments.
-        PDFFile pdfFile = new PDFFile();
-        if (attachmentReference.getName().equals(pdfURL)) {
-            pdfFile.setUrl(pdfURL);
-            pdfFile.setAttachmentReference(attachmentReference);
-            return pdfFile;
-        } else if (hasViewRights(attachmentReference.getDocumentReference(), delegatedRights, pdfFile)) {
-            DocumentReference docRef = attachmentReference.getDocumentReference();
-            XWikiContext wikiContext = wikiContextProvider.get();
-            XWikiDocument doc = wikiContext.getWiki().getDocument(docRef, wikiContext);
-            // If the user has the rights to view the attachment parent document, but the attachment is not found, an
-            // empty URL is returned.
-            pdfFile.setAttachmentReference(attachmentReference);
-            if (doc.getAttachment(attachmentReference.getName()) != null) {
-                pdfFile.setUrl(pdfURL);
-            }
-            return pdfFile;
-        }
-        return pdfFile;
-    }
-
-    private PDFFile handleInternalAttachment(String pdfFileReference, String delegatedRights,
-        String ownerDocumentReference) throws XWikiException
-    {
-        XWikiContext wikiContext = wikiContextProvider.get();
-        XWikiDocument ownerDocument = getOwnerDocumentFromParameters(ownerDocumentReference, delegatedRights);
-        XWikiAttachment attachment = ownerDocument.getAttachment(pdfFileReference);
-
-        // If the attachment is not in the current or given document, the file parameter is used as a full reference.
-        if (attachment == null) {
-            AttachmentReference attachmentReference =
-                new AttachmentReference(this.entityReferenceResolver.resolve(pdfFileReference, EntityType.ATTACHMENT));
-            DocumentReference parentDocRef = new DocumentReference(attachmentReference.getParent());
-            return getPDFFile(attachmentReference, parentDocRef, delegatedRights);
-        } else {
-            String url = ownerDocument.getAttachmentURL(attachment.getFilename(), wikiContext);
-            return new PDFFile(attachment.getReference(), url);
-        }
-    }
-
-    private PDFFile getPDFFile(AttachmentReference attachmentReference, DocumentReference parentDocRef,
-        String delegatedRights) throws XWikiException
-    {
-        PDFFile pdfFile = new PDFFile();
-        if (hasViewRights(parentDocRef, delegatedRights, pdfFile)) {
-            XWikiContext wikiContext = this.wikiContextProvider.get();
-            String attachName = attachmentReference.getName();
-            XWikiDocument attachmentDocument = wikiContext.getWiki().getDocument(parentDocRef, wikiContext);
-            XWikiAttachment attachment = attachmentDocument.getAttachment(attachName);
-            // If the attachment does not exist, an empty URL is returned, alongside with the attachment reference.
-            pdfFile.setAttachmentReference(attachmentReference);
-            if (attachment != null) {
-                String url = attachmentDocument.getAttachmentURL(attachName, wikiContext);
-                pdfFile.setUrl(url);
-            }
-            return pdfFile;
-        }
-        return pdfFile;
-    }
-
-    private XWikiDocument getOwnerDocumentFromParameters(String ownerDocumentReference, String delegatedRights)
-        throws XWikiException
-    {
-        // For backwards compatibility with the macros added in older versions, first it is checked if the file name
-        // specified exists on the defined document or on the current one before considering the file parameter as the
-        // full reference.
-        XWikiContext wikiContext = wikiContextProvider.get();
-        XWikiDocument attachmentDocument = wikiContext.getDoc();
-        if (ownerDocumentReference != null && !ownerDocumentReference.isEmpty()) {
-            DocumentReference givenDocumentReference =
-                new DocumentReference(entityReferenceResolver.resolve(ownerDocumentReference, EntityType.DOCUMENT));
-            if (hasViewRights(givenDocumentReference, delegatedRights, null)) {
-                attachmentDocument = wikiContext.getWiki().getDocument(givenDocumentReference, wikiContext);
-            }
-        }
-        return attachmentDocument;
-    }
-
-    private Map<String, String> getTemplateParameters(PDFViewerMacroParameters parameters)
+    private Map<String, Object> getTemplateParameters(PDFViewerMacroParameters parameters)
     {
         // Height and width are handled differently, as the height value can only be represented in pixels (as an
         // int), while the width value can be represented either in pixels or as a percentage (as a String).
-        Map<String, String> parametersMap = new HashMap<>();
+        Map<String, Object> parametersMap = new HashMap<>();
         parametersMap.put("width", parameters.getWidth());
         parametersMap.put("height", String.valueOf(parameters.getHeight()));
+        parametersMap.put("lazyLoading", parameters.getLazyLoading());
+        parametersMap.put("viewerMode", parameters.getViewerMode());
+        parametersMap.put("pages", parameters.getPages());
         return parametersMap;
     }
 }
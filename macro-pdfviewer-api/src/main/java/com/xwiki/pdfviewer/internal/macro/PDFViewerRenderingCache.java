@@ -0,0 +1,232 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.macro;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.LRUCacheConfiguration;
+import org.xwiki.cache.event.CacheEntryEvent;
+import org.xwiki.cache.event.CacheEntryListener;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.rendering.block.Block;
+
+/**
+ * Keeps the blocks rendered by the PDF Viewer macro, so that the template is not executed again for the same
+ * parameters, context and rights. The key is computed by the macro. Each entry is indexed by the documents it depends
+ * on (the documents holding the displayed files and the configuration page), so that only the entries of a modified
+ * document are invalidated, see {@link PDFViewerRenderingCacheListener}. The other entries are aged out by the LRU.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component(roles = PDFViewerRenderingCache.class)
+@Singleton
+public class PDFViewerRenderingCache implements Initializable, Disposable
+{
+    private static final int CACHE_CAPACITY = 500;
+
+    @Inject
+    private CacheManager cacheManager;
+
+    private Cache<CachedBlocks> cache;
+
+    /**
+     * The keys of the cache entries depending on each document.
+     */
+    private final Map<DocumentReference, Set<String>> keysByDocument = new ConcurrentHashMap<>();
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        try {
+            this.cache =
+                this.cacheManager.createNewCache(new LRUCacheConfiguration("pdfviewer.rendering", CACHE_CAPACITY));
+            this.cache.addCacheEntryListener(new IndexCleaner());
+        } catch (CacheException e) {
+            throw new InitializationException("Failed to create the PDF Viewer rendering cache.", e);
+        }
+    }
+
+    @Override
+    public void dispose()
+    {
+        this.cache.dispose();
+    }
+
+    /**
+     * @param keyParts the values the rendering depends on, in a fixed order
+     * @return the cache key corresponding to the given values
+     */
+    public static String createKey(List<?> keyParts)
+    {
+        // Prefix each value with its length so that the key cannot be ambiguous.
+        StringBuilder key = new StringBuilder();
+        for (Object keyPart : keyParts) {
+            String value = String.valueOf(keyPart);
+            key.append(value.length()).append(':').append(value);
+        }
+        return key.toString();
+    }
+
+    /**
+     * @param key the cache key, see {@link #createKey(List)}
+     * @return a copy of the cached blocks, or {@code null} if they are not cached
+     */
+    public List<Block> get(String key)
+    {
+        CachedBlocks cachedBlocks = this.cache.get(key);
+        if (cachedBlocks == null) {
+            this.missCount.increment();
+            return null;
+        }
+        this.hitCount.increment();
+        return copy(cachedBlocks.blocks);
+    }
+
+    /**
+     * @param key the cache key, see {@link #createKey(List)}
+     * @param blocks the rendered blocks, copied before being cached since the caller keeps modifying them
+     * @param dependencies the documents the rendered blocks depend on, see {@link #invalidate(DocumentReference)}
+     */
+    public void set(String key, List<Block> blocks, Collection<DocumentReference> dependencies)
+    {
+        for (DocumentReference dependency : dependencies) {
+            this.keysByDocument.computeIfAbsent(dependency, document -> ConcurrentHashMap.newKeySet()).add(key);
+        }
+        this.cache.set(key, new CachedBlocks(Collections.unmodifiableList(copy(blocks)), dependencies));
+    }
+
+    /**
+     * Forget the rendered blocks depending on the given document.
+     *
+     * @param documentReference a document that has been modified
+     */
+    public void invalidate(DocumentReference documentReference)
+    {
+        Set<String> keys = this.keysByDocument.remove(documentReference);
+        if (keys != null) {
+            for (String key : keys) {
+                this.cache.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Forget all the rendered blocks.
+     */
+    public void invalidate()
+    {
+        this.cache.removeAll();
+        this.keysByDocument.clear();
+    }
+
+    /**
+     * @return the number of macro executions served from the cache since the component was loaded
+     */
+    public long getHitCount()
+    {
+        return this.hitCount.sum();
+    }
+
+    /**
+     * @return the number of macro executions that had to render the template since the component was loaded
+     */
+    public long getMissCount()
+    {
+        return this.missCount.sum();
+    }
+
+    private List<Block> copy(List<Block> blocks)
+    {
+        List<Block> copy = new ArrayList<>(blocks.size());
+        for (Block block : blocks) {
+            copy.add(block.clone());
+        }
+        return copy;
+    }
+
+    private static final class CachedBlocks
+    {
+        private final List<Block> blocks;
+
+        private final Collection<DocumentReference> dependencies;
+
+        CachedBlocks(List<Block> blocks, Collection<DocumentReference> dependencies)
+        {
+            this.blocks = blocks;
+            this.dependencies = List.copyOf(dependencies);
+        }
+    }
+
+    /**
+     * Removes the entries evicted by the LRU from the index, so that it doesn't grow beyond the cache.
+     */
+    private final class IndexCleaner implements CacheEntryListener<CachedBlocks>
+    {
+        @Override
+        public void cacheEntryAdded(CacheEntryEvent<CachedBlocks> event)
+        {
+            // Indexed when the entry is set.
+        }
+
+        @Override
+        public void cacheEntryRemoved(CacheEntryEvent<CachedBlocks> event)
+        {
+            String key = event.getEntry().getKey();
+            CachedBlocks cachedBlocks = event.getEntry().getValue();
+            if (cachedBlocks == null) {
+                return;
+            }
+            for (DocumentReference dependency : cachedBlocks.dependencies) {
+                keysByDocument.computeIfPresent(dependency, (document, keys) -> {
+                    keys.remove(key);
+                    return keys.isEmpty() ? null : keys;
+                });
+            }
+        }
+
+        @Override
+        public void cacheEntryModified(CacheEntryEvent<CachedBlocks> event)
+        {
+            // The same key always has the same dependencies.
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.macro;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.internal.event.AbstractAttachmentEvent;
+import com.xpn.xwiki.internal.event.AttachmentAddedEvent;
+import com.xpn.xwiki.internal.event.AttachmentDeletedEvent;
+import com.xpn.xwiki.internal.event.AttachmentUpdatedEvent;
+import com.xwiki.pdfviewer.internal.configuration.PDFViewerConfiguration;
+
+/**
+ * Invalidates the entries of the {@link PDFViewerRenderingCache} depending on a document when one of its PDF
+ * attachments is modified, when it is deleted or, for the PDF Viewer configuration page, when it is modified. The
+ * rights changes don't need to be handled since the outcome of the rights checks is part of the cache key.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component
+@Named(PDFViewerRenderingCacheListener.NAME)
+@Singleton
+public class PDFViewerRenderingCacheListener extends AbstractEventListener
+{
+    /**
+     * The name of the listener.
+     */
+    public static final String NAME = "com.xwiki.pdfviewer.internal.macro.PDFViewerRenderingCacheListener";
+
+    @Inject
+    private PDFViewerRenderingCache renderingCache;
+
+    /**
+     * Default constructor.
+     */
+    public PDFViewerRenderingCacheListener()
+    {
+        super(NAME, new AttachmentAddedEvent(), new AttachmentUpdatedEvent(), new AttachmentDeletedEvent(),
+            new DocumentDeletedEvent(), new DocumentUpdatedEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        DocumentReference documentReference = ((XWikiDocument) source).getDocumentReference();
+        if (event instanceof AbstractAttachmentEvent) {
+            if (StringUtils.endsWithIgnoreCase(((AbstractAttachmentEvent) event).getName(), ".pdf")) {
+                this.renderingCache.invalidate(documentReference);
+            }
+        } else if (event instanceof DocumentDeletedEvent || PDFViewerConfiguration.CONFIGURATION_REFERENCE
+            .equals(documentReference.getLocalDocumentReference()))
+        {
+            this.renderingCache.invalidate(documentReference);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.macro;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.DocumentReference;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.web.XWikiRequest;
+import com.xwiki.pdfviewer.macro.PDFViewerMacroParameters;
+
+/**
+ * Creates the keys identifying the results of the PDF Viewer macro in the {@link PDFViewerRenderingCache}.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component(roles = PDFViewerRenderingKeys.class)
+@Singleton
+public class PDFViewerRenderingKeys
+{
+    @Inject
+    private PDFFileResolver fileResolver;
+
+    /**
+     * @param parameters the macro parameters
+     * @param allFiles the files displayed by the macro
+     * @return the documents holding the displayed files, and the document given by the macro parameters
+     */
+    public Set<DocumentReference> getDocumentReferences(PDFViewerMacroParameters parameters,
+        List<PDFFileEntry> allFiles)
+    {
+        Set<DocumentReference> documentReferences = new LinkedHashSet<>();
+        if (StringUtils.isNotEmpty(parameters.getDocument())) {
+            documentReferences.add(this.fileResolver.resolveDocument(parameters.getDocument()));
+        }
+        // The URLs targeting attachments of this wiki are displayed like the other attachments.
+        for (PDFFileEntry file : allFiles) {
+            if (!file.isExternal()) {
+                documentReferences.add(file.getReference().getDocumentReference());
+            }
+        }
+        return documentReferences;
+    }
+
+    /**
+     * @param parameters the macro parameters
+     * @param documentReferences the documents returned by {@link #getDocumentReferences(PDFViewerMacroParameters,
+     *            List)}
+     * @param resolutionContext the context shared by the files of the macro
+     * @return the key of the blocks rendered by the macro in the {@link PDFViewerRenderingCache}
+     * @throws XWikiException if the rights cannot be checked
+     */
+    public String getCacheKey(PDFViewerMacroParameters parameters, Set<DocumentReference> documentReferences,
+        ResolutionContext resolutionContext) throws XWikiException
+    {
+        XWikiContext wikiContext = resolutionContext.getWikiContext();
+        DocumentReference userReference = wikiContext.getUserReference();
+        boolean delegatedRights = this.fileResolver.isDelegatingRights(parameters.getAsAuthor());
+        XWikiDocument secureDocument = (XWikiDocument) wikiContext.get(XWikiDocument.CKEY_SDOC);
+        DocumentReference authorReference =
+            delegatedRights && secureDocument != null ? secureDocument.getContentAuthorReference() : null;
+        XWikiRequest request = wikiContext.getRequest();
+        List<Object> keyParts = new ArrayList<>(Arrays.asList(wikiContext.getWikiId(), String.valueOf(userReference),
+            String.valueOf(authorReference), String.valueOf(wikiContext.getLocale()),
+            String.valueOf(request != null ? request.getParameter("file") : null),
+            String.valueOf(parameters.getFile()), String.valueOf(parameters.getFileFromExternalUrl()),
+            String.valueOf(parameters.getDocument()), parameters.getWidth(), parameters.getHeight(),
+            parameters.getAsAuthor(), String.valueOf(parameters.getLazyLoading()), parameters.getViewerMode(),
+            String.valueOf(parameters.getPages()),
+            String.valueOf(wikiContext.getDoc() != null ? wikiContext.getDoc().getDocumentReference() : null)));
+        // The outcome of the rights checks, so that a rights change leads to a different key.
+        for (DocumentReference documentReference : documentReferences) {
+            boolean exists = resolutionContext.exists(documentReference);
+            keyParts.add(documentReference);
+            keyParts.add(exists && resolutionContext.hasViewAccess(userReference, documentReference));
+            keyParts.add(exists && authorReference != null
+                && resolutionContext.hasViewAccess(authorReference, documentReference));
+        }
+        return PDFViewerRenderingCache.createKey(keyParts);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.macro;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.security.authorization.AuthorizationManager;
+import org.xwiki.security.authorization.Right;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xwiki.pdfviewer.internal.derivative.PDFPageRange;
+import com.xwiki.pdfviewer.internal.metrics.PDFViewerMetrics;
+import com.xwiki.pdfviewer.internal.metrics.PDFViewerMetrics.Phase;
+
+/**
+ * Remembers the documents loaded, and the rights checked, while resolving the files of a single macro execution, so
+ * that files attached to the same document don't load it or check its rights again. Not thread safe: a new instance
+ * is created for each macro execution.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+class ResolutionContext
+{
+    private final XWikiContext wikiContext;
+
+    private final AuthorizationManager authorizationManager;
+
+    private final PDFViewerMetrics metrics;
+
+    private final PDFPageRange pageRange;
+
+    private final Map<DocumentReference, Boolean> existingDocuments = new HashMap<>();
+
+    private final Map<Pair<DocumentReference, DocumentReference>, Boolean> viewRights = new HashMap<>();
+
+    private final Map<DocumentReference, XWikiDocument> documents = new HashMap<>();
+
+    /**
+     * @param wikiContext the context of the macro execution
+     * @param authorizationManager used to check the view right of the users on the documents
+     * @param metrics records the duration of the rights checks and of the document loads
+     * @param pageRange the pages displayed by the macro, for all its files, or {@code null} to display whole files
+     */
+    ResolutionContext(XWikiContext wikiContext, AuthorizationManager authorizationManager, PDFViewerMetrics metrics,
+        PDFPageRange pageRange)
+    {
+        this.wikiContext = wikiContext;
+        this.authorizationManager = authorizationManager;
+        this.metrics = metrics;
+        this.pageRange = pageRange;
+    }
+
+    /**
+     * @return the context of the macro execution
+     */
+    XWikiContext getWikiContext()
+    {
+        return this.wikiContext;
+    }
+
+    /**
+     * @return the pages displayed by the macro, for all its files, or {@code null} to display whole files
+     */
+    PDFPageRange getPageRange()
+    {
+        return this.pageRange;
+    }
+
+    /**
+     * @param documentReference a document reference
+     * @return {@code true} if the document exists, {@code false} otherwise
+     * @throws XWikiException if the existence of the document cannot be checked
+     */
+    boolean exists(DocumentReference documentReference) throws XWikiException
+    {
+        Boolean exists = this.existingDocuments.get(documentReference);
+        if (exists == null) {
+            XWikiDocument document = this.documents.get(documentReference);
+            if (document != null) {
+                exists = !document.isNew();
+            } else {
+                long start = System.nanoTime();
+                exists = this.wikiContext.getWiki().exists(documentReference, this.wikiContext);
+                this.metrics.record(Phase.DOCUMENT_LOAD, start);
+            }
+            this.existingDocuments.put(documentReference, exists);
+        }
+        return exists;
+    }
+
+    /**
+     * @param userReference the user (or author) whose right is checked
+     * @param documentReference the document to view
+     * @return {@code true} if the user has view right on the document, {@code false} otherwise
+     */
+    boolean hasViewAccess(DocumentReference userReference, DocumentReference documentReference)
+    {
+        return this.viewRights.computeIfAbsent(Pair.of(userReference, documentReference), key -> {
+            long start = System.nanoTime();
+            boolean hasAccess = this.authorizationManager.hasAccess(Right.VIEW, userReference, documentReference);
+            this.metrics.record(Phase.VIEW_RIGHTS, start);
+            return hasAccess;
+        });
+    }
+
+    /**
+     * @param documentReference a document reference
+     * @return the document, loaded only once per macro execution
+     * @throws XWikiException if the document cannot be loaded
+     */
+    XWikiDocument getDocument(DocumentReference documentReference) throws XWikiException
+    {
+        XWikiDocument document = this.documents.get(documentReference);
+        if (document == null) {
+            long start = System.nanoTime();
+            document = this.wikiContext.getWiki().getDocument(documentReference, this.wikiContext);
+            this.metrics.record(Phase.DOCUMENT_LOAD, start);
+            this.documents.put(documentReference, document);
+        }
+        return document;
+    }
+}
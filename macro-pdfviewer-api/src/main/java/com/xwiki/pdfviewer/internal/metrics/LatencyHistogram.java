@@ -0,0 +1,122 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records durations in fixed buckets, without locking, so that it can be updated by concurrent page renderings.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+public class LatencyHistogram
+{
+    /**
+     * The upper bounds of the buckets, in milliseconds. The last bucket holds the longer durations.
+     */
+    private static final long[] BUCKET_BOUNDS = { 1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000 };
+
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final double[] PERCENTILES = { 0.5, 0.95, 0.99 };
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS.length + 1];
+
+    private final LongAdder totalNanos = new LongAdder();
+
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Create an empty histogram.
+     */
+    public LatencyHistogram()
+    {
+        for (int i = 0; i < this.buckets.length; i++) {
+            this.buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param nanos the duration to record, in nanoseconds
+     */
+    public void record(long nanos)
+    {
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS.length && millis >= BUCKET_BOUNDS[bucket]) {
+            bucket++;
+        }
+        this.buckets[bucket].increment();
+        this.totalNanos.add(nanos);
+        this.maxNanos.accumulate(nanos);
+    }
+
+    /**
+     * Forget the recorded durations.
+     */
+    public void reset()
+    {
+        for (LongAdder bucket : this.buckets) {
+            bucket.reset();
+        }
+        this.totalNanos.reset();
+        this.maxNanos.reset();
+    }
+
+    /**
+     * @return the statistics of the recorded durations; the percentiles are approximated by the upper bound of the
+     *         bucket holding them
+     */
+    public LatencyStatistics getStatistics()
+    {
+        long[] counts = new long[this.buckets.length];
+        long count = 0;
+        Map<String, Long> bucketCounts = new LinkedHashMap<>();
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = this.buckets[i].sum();
+            count += counts[i];
+            bucketCounts.put(i < BUCKET_BOUNDS.length ? "<" + BUCKET_BOUNDS[i] + "ms"
+                : ">=" + BUCKET_BOUNDS[BUCKET_BOUNDS.length - 1] + "ms", counts[i]);
+        }
+
+        double[] percentiles = new double[PERCENTILES.length];
+        double maxMillis = this.maxNanos.get() / NANOS_PER_MILLI;
+        for (int p = 0; p < PERCENTILES.length; p++) {
+            long rank = (long) Math.ceil(PERCENTILES[p] * count);
+            long seen = 0;
+            int bucket = 0;
+            while (bucket < counts.length - 1 && seen + counts[bucket] < rank) {
+                seen += counts[bucket];
+                bucket++;
+            }
+            percentiles[p] = count == 0 ? 0
+                : Math.min(bucket < BUCKET_BOUNDS.length ? BUCKET_BOUNDS[bucket] : maxMillis, maxMillis);
+        }
+
+        double totalMillis = this.totalNanos.sum() / NANOS_PER_MILLI;
+        return new LatencyStatistics(count, totalMillis, maxMillis, percentiles[0], percentiles[1], percentiles[2],
+            bucketCounts);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.metrics;
+
+import java.util.Map;
+
+/**
+ * The statistics of a {@link LatencyHistogram}, exposed through JMX. The durations are in milliseconds.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+public class LatencyStatistics
+{
+    private final long count;
+
+    private final double totalMillis;
+
+    private final double maxMillis;
+
+    private final double p50Millis;
+
+    private final double p95Millis;
+
+    private final double p99Millis;
+
+    private final Map<String, Long> buckets;
+
+    /**
+     * @param count the number of recorded durations
+     * @param totalMillis the sum of the recorded durations
+     * @param maxMillis the longest recorded duration
+     * @param p50Millis the median duration
+     * @param p95Millis the 95th percentile
+     * @param p99Millis the 99th percentile
+     * @param buckets the number of durations in each bucket, by bucket label
+     */
+    public LatencyStatistics(long count, double totalMillis, double maxMillis, double p50Millis, double p95Millis,
+        double p99Millis, Map<String, Long> buckets)
+    {
+        this.count = count;
+        this.totalMillis = totalMillis;
+        this.maxMillis = maxMillis;
+        this.p50Millis = p50Millis;
+        this.p95Millis = p95Millis;
+        this.p99Millis = p99Millis;
+        this.buckets = buckets;
+    }
+
+    /**
+     * @return the number of recorded durations
+     */
+    public long getCount()
+    {
+        return this.count;
+    }
+
+    /**
+     * @return the sum of the recorded durations
+     */
+    public double getTotalMillis()
+    {
+        return this.totalMillis;
+    }
+
+    /**
+     * @return the mean duration, or {@code 0} if no duration has been recorded
+     */
+    public double getMeanMillis()
+    {
+        return this.count > 0 ? this.totalMillis / this.count : 0;
+    }
+
+    /**
+     * @return the longest recorded duration
+     */
+    public double getMaxMillis()
+    {
+        return this.maxMillis;
+    }
+
+    /**
+     * @return the median duration
+     */
+    public double getP50Millis()
+    {
+        return this.p50Millis;
+    }
+
+    /**
+     * @return the 95th percentile
+     */
+    public double getP95Millis()
+    {
+        return this.p95Millis;
+    }
+
+    /**
+     * @return the 99th percentile
+     */
+    public double getP99Millis()
+    {
+        return this.p99Millis;
+    }
+
+    /**
+     * @return the number of durations in each bucket, by bucket label (e.g. {@code <10ms})
+     */
+    public Map<String, Long> getBuckets()
+    {
+        return this.buckets;
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.metrics;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.management.JMXBeanRegistration;
+
+import com.xwiki.pdfviewer.internal.macro.PDFFileEntryCache;
+import com.xwiki.pdfviewer.internal.macro.PDFViewerRenderingCache;
+
+/**
+ * Records how long each phase of the PDF Viewer macro rendering takes and how the files are resolved, so that a slow
+ * page can be diagnosed. The metrics are exposed through JMX, see {@link PDFViewerMetricsMXBean}.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component(roles = PDFViewerMetrics.class)
+@Singleton
+public class PDFViewerMetrics implements PDFViewerMetricsMXBean, Initializable, Disposable
+{
+    /**
+     * The measured phases. The phases can be nested: the documents of the displayed files are loaded while the
+     * template is executed.
+     */
+    public enum Phase
+    {
+        /**
+         * The whole rendering of the macro, excluding the cached results.
+         */
+        RENDERING,
+
+        /**
+         * The license check.
+         */
+        LICENSE_CHECK,
+
+        /**
+         * The registration of the JavaScript module media type.
+         */
+        MIME_REGISTRATION,
+
+        /**
+         * The parsing of the file parameters and the resolution of the document parameter.
+         */
+        REFERENCE_RESOLUTION,
+
+        /**
+         * The view right checks of the current user and of the content author.
+         */
+        VIEW_RIGHTS,
+
+        /**
+         * The existence checks and the loading of the documents holding the files.
+         */
+        DOCUMENT_LOAD,
+
+        /**
+         * The creation of the blocks displaying the files, by the Java implementation or by the
+         * {@code pdfviewer/pdfviewer.vm} template.
+         */
+        TEMPLATE
+    }
+
+    /**
+     * The outcomes of the resolution of a file, counted only when the macro is rendered (i.e. not when its result is
+     * taken from the rendering cache).
+     */
+    public enum Outcome
+    {
+        /**
+         * The file is an attachment that doesn't exist, or is attached to a document that doesn't exist.
+         */
+        MISSING_ATTACHMENT,
+
+        /**
+         * The file is outside of the wiki.
+         */
+        EXTERNAL_URL,
+
+        /**
+         * The current user cannot view the file but the content author can, and the view right is delegated.
+         */
+        DELEGATED_RIGHTS_GRANTED,
+
+        /**
+         * Neither the current user nor (when the view right is delegated) the content author can view the file.
+         */
+        VIEW_DENIED
+    }
+
+    private static final String MBEAN_NAME = "type=PDFViewer,name=metrics";
+
+    @Inject
+    private JMXBeanRegistration jmxRegistration;
+
+    @Inject
+    private Provider<PDFFileEntryCache> fileEntryCacheProvider;
+
+    @Inject
+    private Provider<PDFViewerRenderingCache> renderingCacheProvider;
+
+    private final Map<Phase, LatencyHistogram> phases = new EnumMap<>(Phase.class);
+
+    private final Map<Outcome, LongAdder> outcomes = new EnumMap<>(Outcome.class);
+
+    /**
+     * Create the metrics, filled by {@link #record(Phase, long)} and {@link #count(Outcome)}.
+     */
+    public PDFViewerMetrics()
+    {
+        for (Phase phase : Phase.values()) {
+            this.phases.put(phase, new LatencyHistogram());
+        }
+        for (Outcome outcome : Outcome.values()) {
+            this.outcomes.put(outcome, new LongAdder());
+        }
+    }
+
+    @Override
+    public void initialize()
+    {
+        this.jmxRegistration.registerMBean(this, MBEAN_NAME);
+    }
+
+    @Override
+    public void dispose()
+    {
+        this.jmxRegistration.unregisterMBean(MBEAN_NAME);
+    }
+
+    /**
+     * Record the duration of a phase.
+     *
+     * @param phase the measured phase
+     * @param start the value of {@link System#nanoTime()} when the phase started
+     */
+    public void record(Phase phase, long start)
+    {
+        this.phases.get(phase).record(System.nanoTime() - start);
+    }
+
+    /**
+     * @param outcome the outcome to count
+     */
+    public void count(Outcome outcome)
+    {
+        this.outcomes.get(outcome).increment();
+    }
+
+    @Override
+    public Map<String, LatencyStatistics> getPhases()
+    {
+        Map<String, LatencyStatistics> statistics = new LinkedHashMap<>();
+        this.phases.forEach((phase, histogram) -> statistics.put(getName(phase), histogram.getStatistics()));
+        return statistics;
+    }
+
+    @Override
+    public Map<String, Long> getOutcomes()
+    {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        this.outcomes.forEach((outcome, count) -> counts.put(getName(outcome), count.sum()));
+        return counts;
+    }
+
+    @Override
+    public long getFileEntryCacheHitCount()
+    {
+        return this.fileEntryCacheProvider.get().getHitCount();
+    }
+
+    @Override
+    public long getFileEntryCacheMissCount()
+    {
+        return this.fileEntryCacheProvider.get().getMissCount();
+    }
+
+    @Override
+    public long getRenderingCacheHitCount()
+    {
+        return this.renderingCacheProvider.get().getHitCount();
+    }
+
+    @Override
+    public long getRenderingCacheMissCount()
+    {
+        return this.renderingCacheProvider.get().getMissCount();
+    }
+
+    @Override
+    public void reset()
+    {
+        this.phases.values().forEach(LatencyHistogram::reset);
+        this.outcomes.values().forEach(LongAdder::reset);
+    }
+
+    private String getName(Enum<?> value)
+    {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+}
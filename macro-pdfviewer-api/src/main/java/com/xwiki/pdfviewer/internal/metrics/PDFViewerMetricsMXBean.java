@@ -0,0 +1,66 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.metrics;
+
+import java.util.Map;
+
+/**
+ * The PDF Viewer metrics exposed through JMX, under {@code org.xwiki:type=PDFViewer,name=metrics}.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+public interface PDFViewerMetricsMXBean
+{
+    /**
+     * @return the latency statistics of each phase of the macro rendering, by phase name
+     */
+    Map<String, LatencyStatistics> getPhases();
+
+    /**
+     * @return the number of times each outcome occurred while resolving the files, by outcome name
+     */
+    Map<String, Long> getOutcomes();
+
+    /**
+     * @return the number of file parameters found in the cache
+     */
+    long getFileEntryCacheHitCount();
+
+    /**
+     * @return the number of file parameters that had to be parsed
+     */
+    long getFileEntryCacheMissCount();
+
+    /**
+     * @return the number of macros whose rendered blocks were found in the cache
+     */
+    long getRenderingCacheHitCount();
+
+    /**
+     * @return the number of macros that had to be rendered
+     */
+    long getRenderingCacheMissCount();
+
+    /**
+     * Forget the recorded latencies and outcomes. The cache counters are not reset.
+     */
+    void reset();
+}
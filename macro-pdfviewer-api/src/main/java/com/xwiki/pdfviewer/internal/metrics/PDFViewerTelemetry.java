@@ -0,0 +1,281 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.metrics;
+
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.management.JMXBeanRegistration;
+
+/**
+ * Aggregates in memory the telemetry sent by the viewers, globally and for each attachment, so that the PDF files that
+ * take long to display or fail can be found and optimized. The aggregates are exposed through JMX, see
+ * {@link PDFViewerTelemetryMXBean}.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component(roles = PDFViewerTelemetry.class)
+@Singleton
+public class PDFViewerTelemetry implements PDFViewerTelemetryMXBean, Initializable, Disposable
+{
+    /**
+     * The durations measured by the viewers.
+     */
+    public enum Measure
+    {
+        /**
+         * The time to the first rendered page.
+         */
+        FIRST_PAGE,
+
+        /**
+         * The time to the loaded document.
+         */
+        DOCUMENT_LOAD,
+
+        /**
+         * The time the code of the PDF worker took to be fetched.
+         */
+        WORKER_START
+    }
+
+    private static final String MBEAN_NAME = "type=PDFViewer,name=telemetry";
+
+    /**
+     * The upper bounds of the file size ranges, in megabytes. The last range holds the larger files.
+     */
+    private static final long[] SIZE_BOUNDS = { 1, 10, 100 };
+
+    private static final long MEGABYTE = 1024L * 1024L;
+
+    private static final String UNKNOWN_SIZE = "unknown";
+
+    private static final int TOP_SIZE = 20;
+
+    @Inject
+    private JMXBeanRegistration jmxRegistration;
+
+    @Inject
+    private PDFViewerTelemetryConfiguration configuration;
+
+    private final Map<Measure, LatencyHistogram> measures = new EnumMap<>(Measure.class);
+
+    private final LongAdder[] loadsBySize = new LongAdder[SIZE_BOUNDS.length + 2];
+
+    private final LongAdder[] failuresBySize = new LongAdder[SIZE_BOUNDS.length + 2];
+
+    private final LongAdder downloadedBytes = new LongAdder();
+
+    private final Map<String, AttachmentTelemetry> attachments = new ConcurrentHashMap<>();
+
+    /**
+     * The telemetry of a single attachment.
+     */
+    private static final class AttachmentTelemetry
+    {
+        private final LatencyHistogram firstPage = new LatencyHistogram();
+
+        private final LongAdder failures = new LongAdder();
+    }
+
+    /**
+     * Create the empty aggregates, filled by {@link #record(String, PDFViewerTelemetrySample)}.
+     */
+    public PDFViewerTelemetry()
+    {
+        for (Measure measure : Measure.values()) {
+            this.measures.put(measure, new LatencyHistogram());
+        }
+        for (int i = 0; i < this.loadsBySize.length; i++) {
+            this.loadsBySize[i] = new LongAdder();
+            this.failuresBySize[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public void initialize()
+    {
+        this.jmxRegistration.registerMBean(this, MBEAN_NAME);
+    }
+
+    @Override
+    public void dispose()
+    {
+        this.jmxRegistration.unregisterMBean(MBEAN_NAME);
+    }
+
+    /**
+     * Record what a viewer experienced while displaying a file.
+     *
+     * @param attachment the serialized reference of the displayed attachment, or {@code null} if the file is not an
+     *            attachment
+     * @param sample the telemetry sent by the viewer
+     */
+    public void record(String attachment, PDFViewerTelemetrySample sample)
+    {
+        record(Measure.FIRST_PAGE, sample.getFirstPage());
+        record(Measure.DOCUMENT_LOAD, sample.getDocumentLoad());
+        record(Measure.WORKER_START, sample.getWorkerStart());
+        int sizeRange = getSizeRange(sample.getFileSize());
+        this.loadsBySize[sizeRange].increment();
+        if (sample.isError()) {
+            this.failuresBySize[sizeRange].increment();
+        }
+        if (sample.getDownloadedBytes() != null && sample.getDownloadedBytes() > 0) {
+            this.downloadedBytes.add(sample.getDownloadedBytes());
+        }
+
+        AttachmentTelemetry attachmentTelemetry = attachment != null ? getAttachmentTelemetry(attachment) : null;
+        if (attachmentTelemetry != null) {
+            if (sample.isError()) {
+                attachmentTelemetry.failures.increment();
+            } else if (isValid(sample.getFirstPage())) {
+                attachmentTelemetry.firstPage.record(toNanos(sample.getFirstPage()));
+            }
+        }
+    }
+
+    @Override
+    public Map<String, LatencyStatistics> getMeasures()
+    {
+        Map<String, LatencyStatistics> statistics = new LinkedHashMap<>();
+        this.measures.forEach((measure, histogram) -> statistics.put(measure.name().toLowerCase(Locale.ROOT),
+            histogram.getStatistics()));
+        return statistics;
+    }
+
+    @Override
+    public Map<String, Long> getLoadsBySize()
+    {
+        return getCountsBySize(this.loadsBySize);
+    }
+
+    @Override
+    public Map<String, Long> getFailuresBySize()
+    {
+        return getCountsBySize(this.failuresBySize);
+    }
+
+    @Override
+    public long getDownloadedBytes()
+    {
+        return this.downloadedBytes.sum();
+    }
+
+    @Override
+    public Map<String, LatencyStatistics> getSlowestAttachments()
+    {
+        Map<String, LatencyStatistics> statistics = new LinkedHashMap<>();
+        this.attachments.forEach((attachment, telemetry) -> statistics.put(attachment,
+            telemetry.firstPage.getStatistics()));
+        Map<String, LatencyStatistics> slowest = new LinkedHashMap<>();
+        statistics.entrySet().stream().filter(entry -> entry.getValue().getCount() > 0)
+            .sorted(Comparator.comparingDouble((Map.Entry<String, LatencyStatistics> entry) -> entry.getValue()
+                .getP95Millis()).thenComparingDouble(entry -> entry.getValue().getMeanMillis()).reversed())
+            .limit(TOP_SIZE).forEach(entry -> slowest.put(entry.getKey(), entry.getValue()));
+        return slowest;
+    }
+
+    @Override
+    public Map<String, Long> getFailingAttachments()
+    {
+        Map<String, Long> failing = new LinkedHashMap<>();
+        this.attachments.entrySet().stream().filter(entry -> entry.getValue().failures.sum() > 0)
+            .sorted(Comparator.comparingLong(
+                (Map.Entry<String, AttachmentTelemetry> entry) -> entry.getValue().failures.sum()).reversed())
+            .limit(TOP_SIZE).forEach(entry -> failing.put(entry.getKey(), entry.getValue().failures.sum()));
+        return failing;
+    }
+
+    @Override
+    public void reset()
+    {
+        this.measures.values().forEach(LatencyHistogram::reset);
+        for (int i = 0; i < this.loadsBySize.length; i++) {
+            this.loadsBySize[i].reset();
+            this.failuresBySize[i].reset();
+        }
+        this.downloadedBytes.reset();
+        this.attachments.clear();
+    }
+
+    private void record(Measure measure, Double millis)
+    {
+        if (isValid(millis)) {
+            this.measures.get(measure).record(toNanos(millis));
+        }
+    }
+
+    private AttachmentTelemetry getAttachmentTelemetry(String attachment)
+    {
+        AttachmentTelemetry attachmentTelemetry = this.attachments.get(attachment);
+        // The number of attachments is bounded so that the memory used doesn't grow with the number of files viewed.
+        if (attachmentTelemetry == null && this.attachments.size() < this.configuration.getMaxAttachments()) {
+            attachmentTelemetry = this.attachments.computeIfAbsent(attachment, key -> new AttachmentTelemetry());
+        }
+        return attachmentTelemetry;
+    }
+
+    private int getSizeRange(Long size)
+    {
+        if (size == null || size < 0) {
+            return SIZE_BOUNDS.length + 1;
+        }
+        int range = 0;
+        while (range < SIZE_BOUNDS.length && size >= SIZE_BOUNDS[range] * MEGABYTE) {
+            range++;
+        }
+        return range;
+    }
+
+    private Map<String, Long> getCountsBySize(LongAdder[] counts)
+    {
+        Map<String, Long> countsBySize = new LinkedHashMap<>();
+        for (int i = 0; i < SIZE_BOUNDS.length; i++) {
+            countsBySize.put("<" + SIZE_BOUNDS[i] + "MB", counts[i].sum());
+        }
+        countsBySize.put(">=" + SIZE_BOUNDS[SIZE_BOUNDS.length - 1] + "MB", counts[SIZE_BOUNDS.length].sum());
+        countsBySize.put(UNKNOWN_SIZE, counts[SIZE_BOUNDS.length + 1].sum());
+        return countsBySize;
+    }
+
+    private boolean isValid(Double millis)
+    {
+        return millis != null && millis >= 0 && !millis.isInfinite();
+    }
+
+    private long toNanos(double millis)
+    {
+        return (long) (millis * TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.metrics;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.configuration.ConfigurationSource;
+
+/**
+ * Server level configuration of the client telemetry, read from {@code xwiki.properties}.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component(roles = PDFViewerTelemetryConfiguration.class)
+@Singleton
+public class PDFViewerTelemetryConfiguration
+{
+    private static final String PREFIX = "pdfviewer.telemetry.";
+
+    private static final int DEFAULT_MAX_ATTACHMENTS = 1000;
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configurationSource;
+
+    /**
+     * @return {@code true} if the viewers should report how long they take to display the PDF files, {@code false}
+     *         otherwise
+     */
+    public boolean isEnabled()
+    {
+        return this.configurationSource.getProperty(PREFIX + "enabled", false);
+    }
+
+    /**
+     * @return the maximum number of attachments whose telemetry is aggregated separately, the other attachments being
+     *         only part of the global statistics
+     */
+    public int getMaxAttachments()
+    {
+        return Math.max(0, this.configurationSource.getProperty(PREFIX + "maxAttachments", DEFAULT_MAX_ATTACHMENTS));
+    }
+}
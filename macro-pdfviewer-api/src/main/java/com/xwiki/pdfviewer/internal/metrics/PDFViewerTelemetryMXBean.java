@@ -0,0 +1,68 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.metrics;
+
+import java.util.Map;
+
+/**
+ * The client telemetry of the PDF viewers exposed through JMX, under {@code org.xwiki:type=PDFViewer,name=telemetry}.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+public interface PDFViewerTelemetryMXBean
+{
+    /**
+     * @return the statistics of each measured duration (time to the first page, to the loaded document and to the
+     *         fetched worker) of all the displayed files, by measure name
+     */
+    Map<String, LatencyStatistics> getMeasures();
+
+    /**
+     * @return the number of displayed files, by file size range
+     */
+    Map<String, Long> getLoadsBySize();
+
+    /**
+     * @return the number of files that could not be displayed, by file size range
+     */
+    Map<String, Long> getFailuresBySize();
+
+    /**
+     * @return the number of bytes of the displayed files transferred over the network
+     */
+    long getDownloadedBytes();
+
+    /**
+     * @return the statistics of the time to the first page of the attachments that take the longest to display, by
+     *         attachment reference
+     */
+    Map<String, LatencyStatistics> getSlowestAttachments();
+
+    /**
+     * @return the number of failures of the attachments that failed the most to be displayed, by attachment reference
+     */
+    Map<String, Long> getFailingAttachments();
+
+    /**
+     * Forget the recorded telemetry.
+     */
+    void reset();
+}
@@ -0,0 +1,158 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.metrics;
+
+/**
+ * What a viewer experienced while displaying a PDF file, as reported by the browser. The durations are in
+ * milliseconds, measured from the moment the viewer started opening the file; the values the browser could not
+ * measure are {@code null}.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+public class PDFViewerTelemetrySample
+{
+    private String file;
+
+    private Double firstPage;
+
+    private Double documentLoad;
+
+    private Double workerStart;
+
+    private Long downloadedBytes;
+
+    private Long fileSize;
+
+    private boolean error;
+
+    /**
+     * @return the URL of the displayed file
+     */
+    public String getFile()
+    {
+        return this.file;
+    }
+
+    /**
+     * @param file the URL of the displayed file
+     */
+    public void setFile(String file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * @return the time to the first rendered page
+     */
+    public Double getFirstPage()
+    {
+        return this.firstPage;
+    }
+
+    /**
+     * @param firstPage the time to the first rendered page
+     */
+    public void setFirstPage(Double firstPage)
+    {
+        this.firstPage = firstPage;
+    }
+
+    /**
+     * @return the time to the loaded document, i.e. when the viewer knows all the pages
+     */
+    public Double getDocumentLoad()
+    {
+        return this.documentLoad;
+    }
+
+    /**
+     * @param documentLoad the time to the loaded document
+     */
+    public void setDocumentLoad(Double documentLoad)
+    {
+        this.documentLoad = documentLoad;
+    }
+
+    /**
+     * @return the time the code of the PDF worker took to be fetched
+     */
+    public Double getWorkerStart()
+    {
+        return this.workerStart;
+    }
+
+    /**
+     * @param workerStart the time the code of the PDF worker took to be fetched
+     */
+    public void setWorkerStart(Double workerStart)
+    {
+        this.workerStart = workerStart;
+    }
+
+    /**
+     * @return the number of bytes of the file transferred over the network, which is lower than the size of the file
+     *         when only some ranges were needed or when the file was cached
+     */
+    public Long getDownloadedBytes()
+    {
+        return this.downloadedBytes;
+    }
+
+    /**
+     * @param downloadedBytes the number of bytes of the file transferred over the network
+     */
+    public void setDownloadedBytes(Long downloadedBytes)
+    {
+        this.downloadedBytes = downloadedBytes;
+    }
+
+    /**
+     * @return the size of the file, in bytes
+     */
+    public Long getFileSize()
+    {
+        return this.fileSize;
+    }
+
+    /**
+     * @param fileSize the size of the file, in bytes
+     */
+    public void setFileSize(Long fileSize)
+    {
+        this.fileSize = fileSize;
+    }
+
+    /**
+     * @return {@code true} if the file could not be displayed, {@code false} otherwise
+     */
+    public boolean isError()
+    {
+        return this.error;
+    }
+
+    /**
+     * @param error {@code true} if the file could not be displayed, {@code false} otherwise
+     */
+    public void setError(boolean error)
+    {
+        this.error = error;
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.proxy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+
+import com.xwiki.pdfviewer.internal.proxy.PDFProxyClient.RemoteFile;
+
+/**
+ * Fetches the external PDF files and keeps them on disk, so that they are downloaded from the remote server only once
+ * and then served from the wiki origin. The files are revalidated with the remote server (using its entity tag or last
+ * modification date) once they are older than {@link PDFProxyConfiguration#getRevalidateAfter()}, and the least
+ * recently used files are removed when the cache exceeds {@link PDFProxyConfiguration#getCacheSize()}. Only the
+ * {@link PDFProxyConfiguration#getAllowedHosts() allowed hosts} having public addresses can be fetched.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component(roles = PDFProxyCache.class)
+@Singleton
+public class PDFProxyCache
+{
+    private static final long MILLIS_PER_SECOND = 1000L;
+
+    /**
+     * A file kept by the proxy.
+     *
+     * @version $Id$
+     */
+    public static final class Entry
+    {
+        private static final String URL = "url";
+
+        private static final String REMOTE_ENTITY_TAG = "remoteETag";
+
+        private static final String REMOTE_LAST_MODIFIED = "remoteLastModified";
+
+        private static final String FETCHED = "fetched";
+
+        private static final String ENTITY_TAG = "etag";
+
+        private final String url;
+
+        private final File file;
+
+        private final long length;
+
+        private final String entityTag;
+
+        private final String remoteEntityTag;
+
+        private final String remoteLastModified;
+
+        private final long fetched;
+
+        Entry(String url, File file, String entityTag, String remoteEntityTag, String remoteLastModified,
+            long fetched)
+        {
+            this.url = url;
+            this.file = file;
+            this.length = file.length();
+            this.entityTag = entityTag;
+            this.remoteEntityTag = remoteEntityTag;
+            this.remoteLastModified = remoteLastModified;
+            this.fetched = fetched;
+        }
+
+        /**
+         * @return the file holding the content
+         */
+        public File getFile()
+        {
+            return this.file;
+        }
+
+        /**
+         * @return the size of the content, in bytes
+         */
+        public long getLength()
+        {
+            return this.length;
+        }
+
+        /**
+         * @return the strong entity tag of the content, computed from the content itself
+         */
+        public String getEntityTag()
+        {
+            return this.entityTag;
+        }
+
+        long getFetched()
+        {
+            return this.fetched;
+        }
+
+        Entry revalidated(long time)
+        {
+            return new Entry(this.url, this.file, this.entityTag, this.remoteEntityTag, this.remoteLastModified,
+                time);
+        }
+
+        static Entry readMetadata(File file, File metadataFile) throws IOException
+        {
+            Properties metadata = new Properties();
+            try (Reader reader = Files.newBufferedReader(metadataFile.toPath(), StandardCharsets.UTF_8)) {
+                metadata.load(reader);
+            }
+            return new Entry(metadata.getProperty(URL), file, metadata.getProperty(ENTITY_TAG),
+                metadata.getProperty(REMOTE_ENTITY_TAG), metadata.getProperty(REMOTE_LAST_MODIFIED),
+                Long.parseLong(metadata.getProperty(FETCHED)));
+        }
+
+        void writeMetadata(File metadataFile) throws IOException
+        {
+            Properties metadata = new Properties();
+            metadata.setProperty(URL, this.url);
+            metadata.setProperty(ENTITY_TAG, this.entityTag);
+            metadata.setProperty(FETCHED, String.valueOf(this.fetched));
+            if (this.remoteEntityTag != null) {
+                metadata.setProperty(REMOTE_ENTITY_TAG, this.remoteEntityTag);
+            }
+            if (this.remoteLastModified != null) {
+                metadata.setProperty(REMOTE_LAST_MODIFIED, this.remoteLastModified);
+            }
+            try (Writer writer = Files.newBufferedWriter(metadataFile.toPath(), StandardCharsets.UTF_8)) {
+                metadata.store(writer, null);
+            }
+        }
+    }
+
+    @Inject
+    private PDFProxyConfiguration configuration;
+
+    @Inject
+    private PDFProxyClient client;
+
+    @Inject
+    private PDFProxyStore store;
+
+    @Inject
+    private Logger logger;
+
+    private final Map<String, CompletableFuture<Entry>> pendingFetches = new ConcurrentHashMap<>();
+
+    /**
+     * @param url the URL of an external file
+     * @return {@code true} if the file should be loaded through the proxy, {@code false} if it should be loaded
+     *         directly by the browser
+     */
+    public boolean isProxied(String url)
+    {
+        return this.configuration.isEnabled() && this.client.isAllowed(url);
+    }
+
+    /**
+     * Get an external file, fetching it if it is not cached yet, or revalidating it if it is outdated. Concurrent
+     * calls for the same file wait for a single fetch. The cached file is served if the remote server cannot be
+     * reached while revalidating it.
+     *
+     * @param url the URL of an external file
+     * @return the cached file
+     * @throws IOException if the file cannot be fetched
+     */
+    public Entry get(String url) throws IOException
+    {
+        String hash = DigestUtils.sha256Hex(url);
+        Entry entry = this.store.get(hash);
+        long revalidateAfter = this.configuration.getRevalidateAfter() * MILLIS_PER_SECOND;
+        if (entry != null && System.currentTimeMillis() - entry.fetched < revalidateAfter) {
+            return entry;
+        }
+
+        CompletableFuture<Entry> fetch = new CompletableFuture<>();
+        CompletableFuture<Entry> pendingFetch = this.pendingFetches.putIfAbsent(hash, fetch);
+        if (pendingFetch != null) {
+            return waitFor(pendingFetch, url);
+        }
+
+        try {
+            Entry result;
+            try {
+                result = fetch(url, hash, entry);
+            } catch (IOException e) {
+                if (entry == null) {
+                    throw e;
+                }
+                this.logger.warn("Failed to revalidate [{}], serving the cached file. Root cause: [{}]", url,
+                    e.getMessage());
+                result = entry;
+            }
+            fetch.complete(result);
+            return result;
+        } catch (IOException e) {
+            fetch.completeExceptionally(e);
+            throw e;
+        } finally {
+            this.pendingFetches.remove(hash);
+        }
+    }
+
+    private Entry fetch(String url, String hash, Entry cachedEntry) throws IOException
+    {
+        String remoteEntityTag = cachedEntry != null ? cachedEntry.remoteEntityTag : null;
+        String remoteLastModified = cachedEntry != null ? cachedEntry.remoteLastModified : null;
+        try (RemoteFile remoteFile = this.client.fetch(url, remoteEntityTag, remoteLastModified)) {
+            if (!remoteFile.isModified()) {
+                return this.store.put(hash, cachedEntry.revalidated(System.currentTimeMillis()));
+            }
+            return this.store.store(url, hash, remoteFile);
+        }
+    }
+
+    private Entry waitFor(CompletableFuture<Entry> pendingFetch, String url) throws IOException
+    {
+        try {
+            return pendingFetch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(String.format("Interrupted while waiting for [%s].", url), e);
+        } catch (ExecutionException e) {
+            throw new IOException(String.format("Failed to fetch [%s].", url), e.getCause());
+        }
+    }
+}
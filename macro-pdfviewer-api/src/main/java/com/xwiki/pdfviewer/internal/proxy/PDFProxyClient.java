@@ -0,0 +1,263 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.proxy;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+
+/**
+ * Fetches the external PDF files for the {@link PDFProxyCache}. Only the {@link PDFProxyConfiguration#getAllowedHosts()
+ * allowed hosts} having public addresses can be fetched, including when following redirects.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component(roles = PDFProxyClient.class)
+@Singleton
+public class PDFProxyClient implements Initializable, Disposable
+{
+    private static final Set<Integer> REDIRECT_STATUSES = Set.of(301, 302, 303, 307, 308);
+
+    private static final int MAX_REDIRECTS = 5;
+
+    private static final int STATUS_OK = 200;
+
+    private static final int STATUS_NOT_MODIFIED = 304;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The response of the remote server for a file, to close once read.
+     *
+     * @version $Id$
+     */
+    public static final class RemoteFile implements Closeable
+    {
+        private static final String TOO_LARGE = "The file [%s] is too large.";
+
+        private final String url;
+
+        private final CloseableHttpResponse response;
+
+        private final boolean modified;
+
+        RemoteFile(String url, CloseableHttpResponse response, boolean modified)
+        {
+            this.url = url;
+            this.response = response;
+            this.modified = modified;
+        }
+
+        /**
+         * @return {@code false} if the remote file didn't change since the given revalidation headers, in which case
+         *         it has no content, {@code true} otherwise
+         */
+        public boolean isModified()
+        {
+            return this.modified;
+        }
+
+        /**
+         * @return the entity tag of the remote file, if any
+         */
+        public String getEntityTag()
+        {
+            return getHeader(this.response, "ETag");
+        }
+
+        /**
+         * @return the last modification date of the remote file, if any
+         */
+        public String getLastModified()
+        {
+            return getHeader(this.response, "Last-Modified");
+        }
+
+        /**
+         * @param target the file to write the content to
+         * @param maxFileSize the maximum size of the content, in bytes
+         * @return the SHA-256 hash of the content, in hexadecimal
+         * @throws IOException if the content cannot be copied, or is larger than the given size
+         */
+        public String copyTo(File target, long maxFileSize) throws IOException
+        {
+            HttpEntity entity = this.response.getEntity();
+            if (entity.getContentLength() > maxFileSize) {
+                throw new IOException(String.format(TOO_LARGE, this.url));
+            }
+            MessageDigest digest = DigestUtils.getSha256Digest();
+            try (InputStream content = new DigestInputStream(entity.getContent(), digest);
+                OutputStream output = Files.newOutputStream(target.toPath()))
+            {
+                copy(content, output, maxFileSize);
+            }
+            return Hex.encodeHexString(digest.digest());
+        }
+
+        private void copy(InputStream input, OutputStream output, long maxFileSize) throws IOException
+        {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long size = 0;
+            int read = input.read(buffer);
+            while (read >= 0) {
+                size += read;
+                if (size > maxFileSize) {
+                    throw new IOException(String.format(TOO_LARGE, this.url));
+                }
+                output.write(buffer, 0, read);
+                read = input.read(buffer);
+            }
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            this.response.close();
+        }
+    }
+
+    @Inject
+    private PDFProxyConfiguration configuration;
+
+    @Inject
+    private Logger logger;
+
+    private CloseableHttpClient httpClient;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        // Redirects are followed manually so that the target hosts are checked too. The addresses are checked when
+        // they are resolved to connect, so they cannot change between the check and the connection.
+        int timeout = (int) TimeUnit.SECONDS.toMillis(this.configuration.getTimeout());
+        this.httpClient = HttpClients.custom().setDnsResolver(new PDFProxyDnsResolver()).disableRedirectHandling()
+            .disableCookieManagement().setDefaultRequestConfig(RequestConfig.custom().setConnectTimeout(timeout)
+                .setConnectionRequestTimeout(timeout).setSocketTimeout(timeout).build())
+            .build();
+    }
+
+    @Override
+    public void dispose()
+    {
+        try {
+            this.httpClient.close();
+        } catch (IOException e) {
+            this.logger.debug("Failed to close the PDF proxy HTTP client.", e);
+        }
+    }
+
+    /**
+     * @param url the URL of an external file
+     * @return {@code true} if the host of the given URL is allowed, {@code false} otherwise
+     */
+    public boolean isAllowed(String url)
+    {
+        try {
+            return isAllowed(URI.create(url));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Fetch an external file, revalidating the cached file if the given entity tag or modification date are known.
+     *
+     * @param url the URL of an external file
+     * @param entityTag the entity tag of the cached file, if any
+     * @param lastModified the last modification date of the cached file, if any
+     * @return the response of the remote server, to close once read
+     * @throws IOException if the file cannot be fetched
+     */
+    public RemoteFile fetch(String url, String entityTag, String lastModified) throws IOException
+    {
+        boolean revalidating = entityTag != null || lastModified != null;
+        URI uri = URI.create(url);
+        for (int redirects = 0;; redirects++) {
+            // The proxy cannot be used to reach arbitrary hosts, such as the internal network of the wiki.
+            if (!isAllowed(uri)) {
+                throw new IOException(String.format("The host of [%s] is not allowed.", uri));
+            }
+            HttpGet request = new HttpGet(uri);
+            if (entityTag != null) {
+                request.setHeader("If-None-Match", entityTag);
+            }
+            if (lastModified != null) {
+                request.setHeader("If-Modified-Since", lastModified);
+            }
+            CloseableHttpResponse response = this.httpClient.execute(request);
+            int status = response.getStatusLine().getStatusCode();
+            if ((status == STATUS_OK && response.getEntity() != null)
+                || (status == STATUS_NOT_MODIFIED && revalidating))
+            {
+                return new RemoteFile(url, response, status == STATUS_OK);
+            }
+            String location = getHeader(response, "Location");
+            response.close();
+            if (REDIRECT_STATUSES.contains(status) && location != null && redirects < MAX_REDIRECTS) {
+                uri = uri.resolve(location);
+            } else {
+                throw new IOException(String.format("Unexpected status [%d] when fetching [%s].", status, uri));
+            }
+        }
+    }
+
+    private boolean isAllowed(URI uri)
+    {
+        // No host is allowed until the administrator lists them. Their addresses are checked when connecting, see
+        // PDFProxyDnsResolver.
+        String host = uri.getHost();
+        return ("http".equalsIgnoreCase(uri.getScheme()) || "https".equalsIgnoreCase(uri.getScheme()))
+            && host != null && this.configuration.getAllowedHosts().contains(host.toLowerCase(Locale.ROOT));
+    }
+
+    private static String getHeader(CloseableHttpResponse response, String name)
+    {
+        Header header = response.getFirstHeader(name);
+        return header != null ? header.getValue() : null;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.proxy;
+
+import java.util.Collections;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.configuration.ConfigurationSource;
+
+/**
+ * Server level configuration of the proxy serving the external PDF files, read from {@code xwiki.properties}.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component(roles = PDFProxyConfiguration.class)
+@Singleton
+public class PDFProxyConfiguration
+{
+    private static final String PREFIX = "pdfviewer.proxy.";
+
+    private static final long MEGABYTE = 1024L * 1024L;
+
+    private static final int DEFAULT_CACHE_SIZE = 1024;
+
+    private static final int DEFAULT_MAX_FILE_SIZE = 100;
+
+    private static final int DEFAULT_REVALIDATE_AFTER = 300;
+
+    private static final int DEFAULT_TIMEOUT = 30;
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configurationSource;
+
+    /**
+     * @return {@code true} if the external PDF files should be loaded through the proxy, {@code false} if they should
+     *         be loaded directly by the browser
+     */
+    public boolean isEnabled()
+    {
+        return this.configurationSource.getProperty(PREFIX + "enabled", false);
+    }
+
+    /**
+     * @return the maximum size, in bytes, of the files kept by the proxy; the least recently used files are removed
+     *         first
+     */
+    public long getCacheSize()
+    {
+        return this.configurationSource.getProperty(PREFIX + "cacheSize", DEFAULT_CACHE_SIZE) * MEGABYTE;
+    }
+
+    /**
+     * @return the maximum size, in bytes, of a file fetched by the proxy
+     */
+    public long getMaxFileSize()
+    {
+        return this.configurationSource.getProperty(PREFIX + "maxFileSize", DEFAULT_MAX_FILE_SIZE) * MEGABYTE;
+    }
+
+    /**
+     * @return the time, in seconds, a fetched file is served without checking whether it changed on the remote server
+     */
+    public int getRevalidateAfter()
+    {
+        return this.configurationSource.getProperty(PREFIX + "revalidateAfter", DEFAULT_REVALIDATE_AFTER);
+    }
+
+    /**
+     * @return the maximum time, in seconds, to connect to the remote server and to wait for its response
+     */
+    public int getTimeout()
+    {
+        return this.configurationSource.getProperty(PREFIX + "timeout", DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * @return the hosts the proxy can fetch files from, provided they have public addresses; when empty, no file is
+     *         fetched by the proxy
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> getAllowedHosts()
+    {
+        return this.configurationSource.getProperty(PREFIX + "allowedHosts", List.class, Collections.emptyList());
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.proxy;
+
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+
+/**
+ * Resolves the hosts fetched by the proxy, failing if any of their addresses is not public. The HTTP client connects
+ * to the addresses returned here, so a host cannot be resolved to a public address when checked and to an internal one
+ * when connecting (DNS rebinding).
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+class PDFProxyDnsResolver implements DnsResolver
+{
+    private static final int BYTE_MASK = 0xFF;
+
+    private static final int IPV4_LENGTH = 4;
+
+    private static final int IPV6_LENGTH = 16;
+
+    /**
+     * The prefix of the IPv4-mapped IPv6 addresses ({@code ::ffff:0:0/96}).
+     */
+    private static final byte[] IPV4_MAPPED_PREFIX = {0, 0, 0, 0, 0, 0, 0, 0, 0, 0, (byte) BYTE_MASK, (byte) BYTE_MASK};
+
+    /**
+     * The prefix of the IPv4-compatible IPv6 addresses ({@code ::/96}).
+     */
+    private static final byte[] IPV4_COMPATIBLE_PREFIX = {0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+
+    /**
+     * The prefix of the NAT64 IPv6 addresses ({@code 64:ff9b::/96}).
+     */
+    private static final byte[] NAT64_PREFIX = {0, 0x64, (byte) 0xFF, (byte) 0x9B, 0, 0, 0, 0, 0, 0, 0, 0};
+
+    private static final int UNIQUE_LOCAL_MASK = 0xFE;
+
+    private static final int UNIQUE_LOCAL_PREFIX = 0xFC;
+
+    private static final int SHARED_FIRST_BYTE = 100;
+
+    private static final int SHARED_MASK = 0xC0;
+
+    private static final int SHARED_PREFIX = 64;
+
+    private static final int IETF_FIRST_BYTE = 192;
+
+    private static final int BENCHMARK_FIRST_BYTE = 198;
+
+    private static final int BENCHMARK_MASK = 0xFE;
+
+    private static final int BENCHMARK_PREFIX = 18;
+
+    private static final int RESERVED_FIRST_BYTE = 240;
+
+    private final DnsResolver dnsResolver = SystemDefaultDnsResolver.INSTANCE;
+
+    @Override
+    public InetAddress[] resolve(String host) throws UnknownHostException
+    {
+        InetAddress[] addresses = this.dnsResolver.resolve(host);
+        for (InetAddress address : addresses) {
+            if (!isPublic(address)) {
+                throw new UnknownHostException(String.format("The host [%s] is not public.", host));
+            }
+        }
+        return addresses;
+    }
+
+    /**
+     * @param address an IP address
+     * @return {@code true} if the address can be reached from the internet, {@code false} if it belongs to a private,
+     *         local or reserved range
+     */
+    static boolean isPublic(InetAddress address)
+    {
+        if (address.isLoopbackAddress() || address.isSiteLocalAddress() || address.isLinkLocalAddress()
+            || address.isAnyLocalAddress() || address.isMulticastAddress())
+        {
+            return false;
+        }
+        byte[] bytes = address.getAddress();
+        if (address instanceof Inet4Address && bytes.length == IPV4_LENGTH) {
+            return isPublicIPv4(bytes);
+        } else if (address instanceof Inet6Address && bytes.length == IPV6_LENGTH) {
+            return isPublicIPv6(bytes);
+        }
+        return false;
+    }
+
+    private static boolean isPublicIPv4(byte[] bytes)
+    {
+        int first = bytes[0] & BYTE_MASK;
+        int second = bytes[1] & BYTE_MASK;
+        // This network (0.0.0.0/8), shared address space (100.64.0.0/10), IETF protocol assignments (192.0.0.0/24),
+        // benchmarking (198.18.0.0/15) and reserved addresses (240.0.0.0/4, including the broadcast address).
+        return first != 0 && !(first == SHARED_FIRST_BYTE && (second & SHARED_MASK) == SHARED_PREFIX)
+            && !(first == IETF_FIRST_BYTE && second == 0 && bytes[2] == 0)
+            && !(first == BENCHMARK_FIRST_BYTE && (second & BENCHMARK_MASK) == BENCHMARK_PREFIX)
+            && first < RESERVED_FIRST_BYTE;
+    }
+
+    private static boolean isPublicIPv6(byte[] bytes)
+    {
+        // Unique local addresses (fc00::/7).
+        if (((bytes[0] & BYTE_MASK) & UNIQUE_LOCAL_MASK) == UNIQUE_LOCAL_PREFIX) {
+            return false;
+        }
+        // The IPv6 addresses embedding an IPv4 address reach that address.
+        byte[] prefix = Arrays.copyOf(bytes, IPV6_LENGTH - IPV4_LENGTH);
+        if (Arrays.equals(prefix, IPV4_MAPPED_PREFIX) || Arrays.equals(prefix, IPV4_COMPATIBLE_PREFIX)
+            || Arrays.equals(prefix, NAT64_PREFIX))
+        {
+            try {
+                return isPublic(InetAddress.getByAddress(Arrays.copyOfRange(bytes, prefix.length, IPV6_LENGTH)));
+            } catch (UnknownHostException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
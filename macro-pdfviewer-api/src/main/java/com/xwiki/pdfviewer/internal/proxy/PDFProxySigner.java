@@ -0,0 +1,107 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.proxy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.environment.Environment;
+
+/**
+ * Signs the URLs of the external files displayed by the macro, so that the proxy only fetches the files referenced by
+ * the wiki pages and cannot be used to fetch arbitrary URLs. The page ranges displayed by the macro are signed the
+ * same way, see {@code PDFViewerRestURLFactory}. The key is generated on first use and kept in the permanent
+ * directory.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component(roles = PDFProxySigner.class)
+@Singleton
+public class PDFProxySigner implements Initializable
+{
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final int KEY_SIZE = 32;
+
+    @Inject
+    private Environment environment;
+
+    private SecretKeySpec key;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        File keyFile = new File(this.environment.getPermanentDirectory(), "pdfviewer/proxy/key");
+        try {
+            if (!keyFile.isFile()) {
+                byte[] keyBytes = new byte[KEY_SIZE];
+                new SecureRandom().nextBytes(keyBytes);
+                Files.createDirectories(keyFile.getParentFile().toPath());
+                Files.write(keyFile.toPath(), keyBytes);
+            }
+            this.key = new SecretKeySpec(Files.readAllBytes(keyFile.toPath()), ALGORITHM);
+        } catch (IOException e) {
+            throw new InitializationException("Failed to load the key signing the PDF proxy URLs.", e);
+        }
+    }
+
+    /**
+     * @param url the URL of an external file, or another value to sign
+     * @return the signature of the URL
+     */
+    public String sign(String url)
+    {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(this.key);
+            return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(mac.doFinal(url.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            // HmacSHA256 is supported by all Java platforms.
+            throw new IllegalStateException("Failed to sign the PDF proxy URL.", e);
+        }
+    }
+
+    /**
+     * @param url the URL of an external file
+     * @param signature the signature to check
+     * @return {@code true} if the signature was created by {@link #sign(String)} for the given URL
+     */
+    public boolean verify(String url, String signature)
+    {
+        return url != null && signature != null && MessageDigest.isEqual(sign(url).getBytes(StandardCharsets.UTF_8),
+            signature.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.proxy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.environment.Environment;
+
+import com.xwiki.pdfviewer.internal.proxy.PDFProxyCache.Entry;
+import com.xwiki.pdfviewer.internal.proxy.PDFProxyClient.RemoteFile;
+
+/**
+ * Keeps the files fetched by the {@link PDFProxyCache} on disk, along with the metadata needed to revalidate them, so
+ * that they survive restarts. The least recently used files are removed when the store exceeds
+ * {@link PDFProxyConfiguration#getCacheSize()}.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component(roles = PDFProxyStore.class)
+@Singleton
+public class PDFProxyStore implements Initializable
+{
+    private static final String CONTENT_EXTENSION = ".pdf";
+
+    private static final String METADATA_EXTENSION = ".properties";
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    @Inject
+    private Environment environment;
+
+    @Inject
+    private PDFProxyConfiguration configuration;
+
+    private File directory;
+
+    /**
+     * The stored files, by URL hash, from the least to the most recently used. Guarded by itself.
+     */
+    private final Map<String, Entry> entries = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+
+    private long totalSize;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.directory = new File(this.environment.getPermanentDirectory(), "pdfviewer/proxy/cache");
+        try {
+            Files.createDirectories(this.directory.toPath());
+        } catch (IOException e) {
+            throw new InitializationException("Failed to create the PDF proxy cache directory.", e);
+        }
+        loadEntries();
+    }
+
+    /**
+     * @param hash the hash of the URL of an external file
+     * @return the stored file, or {@code null} if the file is not stored
+     */
+    public Entry get(String hash)
+    {
+        synchronized (this.entries) {
+            return this.entries.get(hash);
+        }
+    }
+
+    /**
+     * @param url the URL of an external file
+     * @param hash the hash of the URL
+     * @param remoteFile the response of the remote server
+     * @return the stored file
+     * @throws IOException if the file cannot be stored
+     */
+    public Entry store(String url, String hash, RemoteFile remoteFile) throws IOException
+    {
+        File file = new File(this.directory, hash + CONTENT_EXTENSION);
+        File temporaryFile = File.createTempFile(hash, ".tmp", this.directory);
+        String entityTag;
+        try {
+            entityTag = remoteFile.copyTo(temporaryFile, this.configuration.getMaxFileSize());
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile.toPath());
+        }
+
+        return put(hash, new Entry(url, file, entityTag, remoteFile.getEntityTag(), remoteFile.getLastModified(),
+            System.currentTimeMillis()));
+    }
+
+    /**
+     * Store a file, or its new metadata, removing the least recently used files if the store is too large.
+     *
+     * @param hash the hash of the URL of the file
+     * @param entry the file to store
+     * @return the stored file
+     * @throws IOException if the metadata of the file cannot be written
+     */
+    public Entry put(String hash, Entry entry) throws IOException
+    {
+        entry.writeMetadata(getMetadataFile(entry.getFile()));
+        List<Entry> evictedEntries = new ArrayList<>();
+        synchronized (this.entries) {
+            Entry previousEntry = this.entries.put(hash, entry);
+            if (previousEntry != null) {
+                this.totalSize -= previousEntry.getLength();
+            }
+            this.totalSize += entry.getLength();
+            long cacheSize = this.configuration.getCacheSize();
+            Iterator<Map.Entry<String, Entry>> iterator = this.entries.entrySet().iterator();
+            // The entry that was just added is never removed, even if it is larger than the cache.
+            while (this.totalSize > cacheSize && this.entries.size() > 1) {
+                Map.Entry<String, Entry> eldest = iterator.next();
+                iterator.remove();
+                this.totalSize -= eldest.getValue().getLength();
+                evictedEntries.add(eldest.getValue());
+            }
+        }
+        for (Entry evictedEntry : evictedEntries) {
+            // The files being streamed are still readable once deleted, at least on POSIX file systems.
+            FileUtils.deleteQuietly(evictedEntry.getFile());
+            FileUtils.deleteQuietly(getMetadataFile(evictedEntry.getFile()));
+        }
+        return entry;
+    }
+
+    private File getMetadataFile(File file)
+    {
+        return new File(file.getParentFile(),
+            StringUtils.removeEnd(file.getName(), CONTENT_EXTENSION) + METADATA_EXTENSION);
+    }
+
+    private void loadEntries()
+    {
+        // Restore the files fetched before the restart, the least recently fetched first.
+        File[] files = this.directory.listFiles((dir, name) -> name.endsWith(CONTENT_EXTENSION));
+        if (files == null) {
+            return;
+        }
+        List<Entry> loadedEntries = new ArrayList<>();
+        for (File file : files) {
+            File metadataFile = getMetadataFile(file);
+            try {
+                loadedEntries.add(Entry.readMetadata(file, metadataFile));
+            } catch (IOException | RuntimeException e) {
+                // Incomplete entries are fetched again when needed.
+                FileUtils.deleteQuietly(file);
+                FileUtils.deleteQuietly(metadataFile);
+            }
+        }
+        loadedEntries.sort(Comparator.comparingLong(Entry::getFetched));
+        synchronized (this.entries) {
+            for (Entry entry : loadedEntries) {
+                this.entries.put(StringUtils.removeEnd(entry.getFile().getName(), CONTENT_EXTENSION), entry);
+                this.totalSize += entry.getLength();
+            }
+        }
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.rest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.rest.XWikiResource;
+import org.xwiki.rest.XWikiRestException;
+import org.xwiki.security.authorization.AuthorizationManager;
+import org.xwiki.security.authorization.Right;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiAttachment;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xwiki.pdfviewer.internal.derivative.PDFAttachmentRevisions;
+import com.xwiki.pdfviewer.internal.derivative.PDFDerivativeScheduler;
+import com.xwiki.pdfviewer.internal.derivative.PDFDerivativeStore;
+import com.xwiki.pdfviewer.internal.derivative.PDFPageExtractor;
+import com.xwiki.pdfviewer.internal.derivative.PDFPageRange;
+import com.xwiki.pdfviewer.internal.derivative.PDFPosterRenderer;
+import com.xwiki.pdfviewer.internal.derivative.PDFTextIndex;
+import com.xwiki.pdfviewer.rest.PDFViewerAttachmentResource;
+
+/**
+ * Default implementation of {@link PDFViewerAttachmentResource}.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component
+@Named("com.xwiki.pdfviewer.internal.rest.DefaultPDFViewerAttachmentResource")
+public class DefaultPDFViewerAttachmentResource extends XWikiResource implements PDFViewerAttachmentResource
+{
+    private static final String PDF_MEDIA_TYPE = "application/pdf";
+
+    private static final String REVALIDATE = "private, no-cache";
+
+    private static final String IMMUTABLE = ", max-age=31536000, immutable";
+
+    private static final String VARIANT_SEPARATOR = "-";
+
+    private static final int MAX_SEARCH_LIMIT = 1000;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Inject
+    private AuthorizationManager authorizationManager;
+
+    @Inject
+    private PDFPosterRenderer posterRenderer;
+
+    @Inject
+    private PDFDerivativeScheduler derivativeScheduler;
+
+    @Inject
+    private PDFDerivativeStore derivativeStore;
+
+    @Inject
+    private PDFTextIndex textIndex;
+
+    @Inject
+    private PDFPageExtractor pageExtractor;
+
+    @Inject
+    private PDFViewerRestURLFactory restURLFactory;
+
+    @Override
+    public Response getPoster(String wikiName, String spaceName, String pageName, String attachmentName,
+        String version, String pages, String signature, String ifNoneMatch) throws XWikiRestException
+    {
+        XWikiAttachment attachment = getPDFAttachment(wikiName, spaceName, pageName, attachmentName);
+        PDFPageRange pageRange = getSignedPageRange(attachment, pages, signature);
+        int page = pageRange != null ? pageRange.getFirstPage() : 1;
+        String revision = PDFAttachmentRevisions.getRevision(attachment);
+        EntityTag entityTag = new EntityTag(page == 1 ? revision : revision + VARIANT_SEPARATOR + page);
+        String cacheControl = getCacheControl(attachment, revision, version, true);
+        if (EntityTags.matches(ifNoneMatch, entityTag)) {
+            return Response.notModified(entityTag).header(HttpHeaders.CACHE_CONTROL, cacheControl).build();
+        }
+
+        try {
+            File poster = this.posterRenderer.getPoster(attachment, page);
+            return Response.ok(poster, PDFPosterRenderer.MEDIA_TYPE).tag(entityTag)
+                .header(HttpHeaders.CACHE_CONTROL, cacheControl).build();
+        } catch (IOException e) {
+            // Encrypted or broken PDF files cannot be rendered, in which case the viewer is displayed without poster.
+            this.logger.warn("Failed to render the poster of [{}]. Root cause: [{}]", attachment.getReference(),
+                ExceptionUtils.getRootCauseMessage(e));
+            throw new WebApplicationException(Status.NOT_FOUND);
+        }
+    }
+
+    @Override
+    public Response getFile(String wikiName, String spaceName, String pageName, String attachmentName,
+        String version, String variant, String pages, String signature, String ifNoneMatch, String range,
+        String ifRange) throws XWikiRestException
+    {
+        XWikiAttachment attachment = getPDFAttachment(wikiName, spaceName, pageName, attachmentName);
+        String revision = PDFAttachmentRevisions.getRevision(attachment);
+        PDFPageRange pageRange = getSignedPageRange(attachment, pages, signature);
+        File derivative;
+        String derivativeName;
+        if (pageRange != null) {
+            derivative = getPages(attachment, pageRange);
+            derivativeName = pageRange.getVariant();
+        } else {
+            derivative = getDerivative(attachment, revision, variant);
+            derivativeName = variant;
+        }
+        // The derivative and the attachment have different content so they need different entity tags.
+        EntityTag entityTag =
+            new EntityTag(derivative != null ? revision + VARIANT_SEPARATOR + derivativeName : revision);
+        // The whole attachment is streamed when the requested derivative is not available (not created yet, evicted
+        // or failed), in which case the response must not be kept since the derivative may be available later.
+        boolean isRequestedContent = derivative != null || (pageRange == null && StringUtils.isEmpty(variant));
+        String cacheControl = getCacheControl(attachment, revision, version, isRequestedContent);
+        if (EntityTags.matches(ifNoneMatch, entityTag)) {
+            return Response.notModified(entityTag).header(HttpHeaders.CACHE_CONTROL, cacheControl).build();
+        }
+
+        RangeResponses.Content content = derivative != null ? new FileContent(derivative)
+            : new AttachmentContent(attachment, getXWikiContext());
+        return RangeResponses.create(content, PDF_MEDIA_TYPE, attachment.getFilename(), entityTag, range, ifRange)
+            .header(HttpHeaders.CACHE_CONTROL, cacheControl).build();
+    }
+
+    private String getCacheControl(XWikiAttachment attachment, String revision, String version,
+        boolean isRequestedContent)
+    {
+        // A URL holding the current attachment revision always gets the same content, since any change of the
+        // attachment content (new version, or attachment deleted and uploaded again) gets a new URL. Other URLs, and
+        // the responses that don't hold the requested content, have to be revalidated.
+        if (!isRequestedContent || !revision.equals(version)) {
+            return REVALIDATE;
+        }
+        // Shared caches can keep the responses only if the guest users can view them.
+        boolean isPublic =
+            this.authorizationManager.hasAccess(Right.VIEW, null, attachment.getReference().getDocumentReference());
+        return (isPublic ? "public" : "private") + IMMUTABLE;
+    }
+
+    @Override
+    public Response getURLs(String wikiName, String spaceName, String pageName, String attachmentName, String pages,
+        String signature) throws XWikiRestException
+    {
+        // The files viewed with delegated rights are not resolved, since the rights are checked for the current user.
+        XWikiAttachment attachment = getPDFAttachment(wikiName, spaceName, pageName, attachmentName);
+        PDFPageRange pageRange = getSignedPageRange(attachment, pages, signature);
+        XWikiContext wikiContext = getXWikiContext();
+        Map<String, String> urls = new LinkedHashMap<>();
+        urls.put("file", this.restURLFactory.getFileURL(attachment, pageRange,
+            this.derivativeScheduler.getDisplayableVariant(attachment)));
+        urls.put("poster", this.restURLFactory.getPosterURL(attachment, pageRange));
+        urls.put("download", attachment.getDoc().getAttachmentURL(attachment.getFilename(), wikiContext));
+        return toJSON(urls);
+    }
+
+    @Override
+    public Response search(String wikiName, String spaceName, String pageName, String attachmentName, String query,
+        String pages, int limit) throws XWikiRestException
+    {
+        if (!this.textIndex.isEnabled()) {
+            throw new WebApplicationException(Status.NOT_FOUND);
+        }
+        if (StringUtils.isBlank(query) || limit < 1) {
+            throw new WebApplicationException(Status.BAD_REQUEST);
+        }
+
+        XWikiAttachment attachment = getPDFAttachment(wikiName, spaceName, pageName, attachmentName);
+        PDFPageRange pageRange = getPageRange(pages);
+        try {
+            List<PDFTextIndex.Hit> hits =
+                this.textIndex.search(attachment, query.trim(), pageRange, Math.min(limit, MAX_SEARCH_LIMIT));
+            return toJSON(Collections.singletonMap("hits", hits));
+        } catch (IOException e) {
+            throw new XWikiRestException(e);
+        }
+    }
+
+    private Response toJSON(Object value) throws XWikiRestException
+    {
+        try {
+            String json = OBJECT_MAPPER.writeValueAsString(value);
+            return Response.ok(json, MediaType.APPLICATION_JSON_TYPE.withCharset(StandardCharsets.UTF_8.name()))
+                .header(HttpHeaders.CACHE_CONTROL, REVALIDATE).build();
+        } catch (JsonProcessingException e) {
+            throw new XWikiRestException(e);
+        }
+    }
+
+    private PDFPageRange getSignedPageRange(XWikiAttachment attachment, String pages, String signature)
+    {
+        // The page ranges are stored as derivatives, so only the ones displayed by the macros are accepted.
+        PDFPageRange pageRange = getPageRange(pages);
+        if (pageRange != null && !this.restURLFactory.verifyPages(attachment.getReference(), pageRange, signature)) {
+            throw new WebApplicationException(Status.FORBIDDEN);
+        }
+        return pageRange;
+    }
+
+    private PDFPageRange getPageRange(String pages)
+    {
+        try {
+            return PDFPageRange.parse(pages);
+        } catch (IllegalArgumentException e) {
+            throw new WebApplicationException(Status.BAD_REQUEST);
+        }
+    }
+
+    private File getPages(XWikiAttachment attachment, PDFPageRange pageRange)
+    {
+        try {
+            return this.pageExtractor.getPages(attachment, pageRange);
+        } catch (IOException e) {
+            // The whole file is served when the pages cannot be extracted (e.g. encrypted PDF files).
+            this.logger.warn("Failed to extract the pages [{}] of [{}]. Root cause: [{}]", pageRange,
+                attachment.getReference(), ExceptionUtils.getRootCauseMessage(e));
+            return null;
+        }
+    }
+
+    private File getDerivative(XWikiAttachment attachment, String revision, String variant)
+    {
+        // Only the known variants are accepted since the variant is used as file name.
+        if (StringUtils.isEmpty(variant) || !this.derivativeScheduler.isDisplayableVariant(variant)) {
+            return null;
+        }
+        File derivative = this.derivativeStore.getFile(attachment.getReference(), revision, variant);
+        return derivative.isFile() ? derivative : null;
+    }
+
+    private XWikiAttachment getPDFAttachment(String wikiName, String spaceName, String pageName,
+        String attachmentName) throws XWikiRestException
+    {
+        DocumentReference documentReference = new DocumentReference(wikiName, parseSpaceSegments(spaceName), pageName);
+        XWikiContext wikiContext = getXWikiContext();
+        if (!this.authorizationManager.hasAccess(Right.VIEW, wikiContext.getUserReference(), documentReference)) {
+            throw new WebApplicationException(Status.UNAUTHORIZED);
+        }
+
+        XWikiAttachment attachment;
+        try {
+            XWikiDocument document = wikiContext.getWiki().getDocument(documentReference, wikiContext);
+            attachment = document.getAttachment(attachmentName);
+        } catch (XWikiException e) {
+            throw new XWikiRestException(e);
+        }
+        if (attachment == null || !PDF_MEDIA_TYPE.equals(attachment.getMimeType(wikiContext))) {
+            throw new WebApplicationException(Status.NOT_FOUND);
+        }
+        return attachment;
+    }
+
+    private static final class AttachmentContent implements RangeResponses.Content
+    {
+        private final XWikiAttachment attachment;
+
+        private final XWikiContext wikiContext;
+
+        AttachmentContent(XWikiAttachment attachment, XWikiContext wikiContext)
+        {
+            this.attachment = attachment;
+            this.wikiContext = wikiContext;
+        }
+
+        @Override
+        public long getLength()
+        {
+            return this.attachment.getLongSize();
+        }
+
+        @Override
+        public InputStream open() throws IOException
+        {
+            try {
+                return this.attachment.getContentInputStream(this.wikiContext);
+            } catch (XWikiException e) {
+                throw new IOException(String.format("Failed to read the content of [%s].",
+                    this.attachment.getReference()), e);
+            }
+        }
+    }
+}
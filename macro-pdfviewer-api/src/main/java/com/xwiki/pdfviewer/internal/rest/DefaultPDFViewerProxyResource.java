@@ -0,0 +1,96 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.rest;
+
+import java.io.IOException;
+import java.net.URI;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.rest.XWikiResource;
+
+import com.xwiki.pdfviewer.internal.proxy.PDFProxyCache;
+import com.xwiki.pdfviewer.internal.proxy.PDFProxySigner;
+import com.xwiki.pdfviewer.rest.PDFViewerProxyResource;
+
+/**
+ * Default implementation of {@link PDFViewerProxyResource}.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component
+@Named("com.xwiki.pdfviewer.internal.rest.DefaultPDFViewerProxyResource")
+public class DefaultPDFViewerProxyResource extends XWikiResource implements PDFViewerProxyResource
+{
+    private static final String DEFAULT_FILE_NAME = "document.pdf";
+
+    // The proxy revalidates the file with the remote server, so the browser has to revalidate it with the proxy.
+    private static final String REVALIDATE = "private, no-cache";
+
+    @Inject
+    private PDFProxyCache proxyCache;
+
+    @Inject
+    private PDFProxySigner signer;
+
+    @Override
+    public Response getFile(String url, String signature, String ifNoneMatch, String range, String ifRange)
+    {
+        if (url == null || !this.proxyCache.isProxied(url)) {
+            throw new WebApplicationException(Status.NOT_FOUND);
+        }
+        if (!this.signer.verify(url, signature)) {
+            throw new WebApplicationException(Status.FORBIDDEN);
+        }
+
+        PDFProxyCache.Entry entry;
+        try {
+            entry = this.proxyCache.get(url);
+        } catch (IOException e) {
+            this.logger.warn("Failed to fetch [{}] through the PDF proxy. Root cause: [{}]", url,
+                ExceptionUtils.getRootCauseMessage(e));
+            throw new WebApplicationException(Status.BAD_GATEWAY);
+        }
+
+        EntityTag entityTag = new EntityTag(entry.getEntityTag());
+        if (EntityTags.matches(ifNoneMatch, entityTag)) {
+            return Response.notModified(entityTag).header(HttpHeaders.CACHE_CONTROL, REVALIDATE).build();
+        }
+        return RangeResponses.create(new FileContent(entry.getFile(), entry.getLength()), "application/pdf",
+            getFileName(url), entityTag, range, ifRange).header(HttpHeaders.CACHE_CONTROL, REVALIDATE).build();
+    }
+
+    private String getFileName(String url)
+    {
+        String path = URI.create(url).getPath();
+        String fileName = StringUtils.substringAfterLast(StringUtils.defaultString(path), "/");
+        return StringUtils.isEmpty(fileName) ? DEFAULT_FILE_NAME : fileName;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.rest;
+
+import java.io.IOException;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.AttachmentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.rest.XWikiResource;
+import org.xwiki.security.authorization.AuthorizationManager;
+import org.xwiki.security.authorization.Right;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xwiki.pdfviewer.internal.metrics.PDFViewerTelemetry;
+import com.xwiki.pdfviewer.internal.metrics.PDFViewerTelemetryConfiguration;
+import com.xwiki.pdfviewer.internal.metrics.PDFViewerTelemetrySample;
+import com.xwiki.pdfviewer.rest.PDFViewerTelemetryResource;
+
+/**
+ * Default implementation of {@link PDFViewerTelemetryResource}.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component
+@Named("com.xwiki.pdfviewer.internal.rest.DefaultPDFViewerTelemetryResource")
+public class DefaultPDFViewerTelemetryResource extends XWikiResource implements PDFViewerTelemetryResource
+{
+    /**
+     * The viewers send a few samples at once, so larger requests are rejected to bound the work they cause.
+     */
+    private static final int MAX_LENGTH = 64 * 1024;
+
+    private static final int MAX_SAMPLES = 50;
+
+    private static final ObjectMapper OBJECT_MAPPER =
+        new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    @Inject
+    private PDFViewerTelemetryConfiguration configuration;
+
+    @Inject
+    private PDFViewerTelemetry telemetry;
+
+    @Inject
+    private PDFViewerRestURLFactory restURLFactory;
+
+    @Inject
+    private AuthorizationManager authorizationManager;
+
+    @Inject
+    private EntityReferenceSerializer<String> entityReferenceSerializer;
+
+    @Override
+    public Response record(String samples)
+    {
+        if (!this.configuration.isEnabled()) {
+            throw new WebApplicationException(Status.NOT_FOUND);
+        }
+        if (samples == null || samples.length() > MAX_LENGTH) {
+            throw new WebApplicationException(Status.BAD_REQUEST);
+        }
+
+        PDFViewerTelemetrySample[] parsedSamples;
+        try {
+            parsedSamples = OBJECT_MAPPER.readValue(samples, PDFViewerTelemetrySample[].class);
+        } catch (IOException e) {
+            throw new WebApplicationException(Status.BAD_REQUEST);
+        }
+        if (parsedSamples == null || parsedSamples.length > MAX_SAMPLES) {
+            throw new WebApplicationException(Status.BAD_REQUEST);
+        }
+
+        for (PDFViewerTelemetrySample sample : parsedSamples) {
+            if (sample != null) {
+                this.telemetry.record(getAttachment(sample.getFile()), sample);
+            }
+        }
+        return Response.noContent().build();
+    }
+
+    private String getAttachment(String fileURL)
+    {
+        // The samples are aggregated by attachment only for the attachments the current user can view, so that the
+        // aggregates cannot be filled with arbitrary references.
+        AttachmentReference attachmentReference = this.restURLFactory.getAttachmentReference(fileURL);
+        if (attachmentReference == null || !this.authorizationManager.hasAccess(Right.VIEW,
+            getXWikiContext().getUserReference(), attachmentReference.getDocumentReference()))
+        {
+            return null;
+        }
+        return this.entityReferenceSerializer.serialize(attachmentReference);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.rest;
+
+import javax.ws.rs.core.EntityTag;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Helpers for the conditional requests handled by the PDF Viewer REST resources.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+public final class EntityTags
+{
+    private static final String WEAK_PREFIX = "W/";
+
+    private static final String QUOTE = "\"";
+
+    private EntityTags()
+    {
+    }
+
+    /**
+     * @param ifNoneMatch the value of the {@code If-None-Match} request header, possibly {@code null}
+     * @param entityTag the current entity tag of the requested resource
+     * @return {@code true} if the client already has the current representation of the resource, in which case a
+     *         {@code 304 Not Modified} response should be sent, {@code false} otherwise
+     */
+    public static boolean matches(String ifNoneMatch, EntityTag entityTag)
+    {
+        if (StringUtils.isBlank(ifNoneMatch)) {
+            return false;
+        }
+        String expected = QUOTE + entityTag.getValue() + QUOTE;
+        for (String candidate : StringUtils.split(ifNoneMatch, ',')) {
+            String tag = StringUtils.removeStart(candidate.trim(), WEAK_PREFIX);
+            if ("*".equals(tag) || expected.equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
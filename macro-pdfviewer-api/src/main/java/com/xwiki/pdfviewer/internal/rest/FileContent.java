@@ -0,0 +1,68 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.rest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The content of a file, streamed by {@link RangeResponses}.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+final class FileContent implements RangeResponses.Content
+{
+    private final File file;
+
+    private final long length;
+
+    /**
+     * @param file the file to stream
+     */
+    FileContent(File file)
+    {
+        this(file, file.length());
+    }
+
+    /**
+     * @param file the file to stream
+     * @param length the size of the file, when it is already known
+     */
+    FileContent(File file, long length)
+    {
+        this.file = file;
+        this.length = length;
+    }
+
+    @Override
+    public long getLength()
+    {
+        return this.length;
+    }
+
+    @Override
+    public InputStream open() throws IOException
+    {
+        return new FileInputStream(this.file);
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.rest;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.AttachmentReference;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiAttachment;
+import com.xpn.xwiki.web.XWikiRequest;
+import com.xwiki.pdfviewer.internal.derivative.PDFAttachmentRevisions;
+import com.xwiki.pdfviewer.internal.derivative.PDFPageRange;
+import com.xwiki.pdfviewer.internal.proxy.PDFProxySigner;
+import com.xwiki.pdfviewer.rest.PDFViewerAttachmentResource;
+import com.xwiki.pdfviewer.rest.PDFViewerProxyResource;
+
+/**
+ * Creates the URLs of the PDF Viewer REST resources.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component(roles = PDFViewerRestURLFactory.class)
+@Singleton
+public class PDFViewerRestURLFactory
+{
+    private static final String PATH_SEPARATOR = "/";
+
+    private static final String REST_PATH = "/rest/pdfviewer";
+
+    private static final String SPACE_PREFIX = "/spaces/";
+
+    private static final Pattern ATTACHMENT_RESOURCE_PATH =
+        Pattern.compile("/wikis/([^/]+)((?:/spaces/[^/]+)+)/pages/([^/]+)/attachments/([^/]+)/[^/]+");
+
+    private static final int WIKI_GROUP = 1;
+
+    private static final int SPACES_GROUP = 2;
+
+    private static final int PAGE_GROUP = 3;
+
+    private static final int ATTACHMENT_GROUP = 4;
+
+
+    @Inject
+    private Provider<XWikiContext> wikiContextProvider;
+
+    @Inject
+    private PDFProxySigner proxySigner;
+
+    @Inject
+    private EntityReferenceSerializer<String> entityReferenceSerializer;
+
+    /**
+     * @param attachmentReference a PDF attachment
+     * @param resource the resource of the attachment, as defined by {@link PDFViewerAttachmentResource} (e.g.
+     *            {@code poster})
+     * @param queryParameters the query string parameters of the resource; the parameters with a {@code null} value
+     *            are skipped
+     * @return the URL of the resource, relative to the server, or {@code null} if the current request is unknown
+     */
+    public String getAttachmentResourceURL(AttachmentReference attachmentReference, String resource,
+        Map<String, String> queryParameters)
+    {
+        XWikiRequest request = this.wikiContextProvider.get().getRequest();
+        if (request == null) {
+            return null;
+        }
+
+        DocumentReference documentReference = attachmentReference.getDocumentReference();
+        StringBuilder url = new StringBuilder(request.getContextPath()).append(REST_PATH).append("/wikis/")
+            .append(encode(documentReference.getWikiReference().getName()));
+        for (EntityReference spaceReference : documentReference.getSpaceReferences()) {
+            url.append(SPACE_PREFIX).append(encode(spaceReference.getName()));
+        }
+        url.append("/pages/").append(encode(documentReference.getName()));
+        url.append("/attachments/").append(encode(attachmentReference.getName()));
+        url.append(PATH_SEPARATOR).append(resource);
+        char separator = '?';
+        for (Map.Entry<String, String> parameter : queryParameters.entrySet()) {
+            if (parameter.getValue() != null) {
+                url.append(separator).append(encode(parameter.getKey())).append('=')
+                    .append(encode(parameter.getValue()));
+                separator = '&';
+            }
+        }
+        return url.toString();
+    }
+
+    /**
+     * @param attachment a PDF attachment
+     * @param pageRange the displayed pages of the attachment, or {@code null} if the whole file is displayed
+     * @param variant the derivative of the attachment loaded by the viewer (e.g. {@code linearized}), if any
+     * @return the versioned URL of the file loaded by the viewer, relative to the server, or {@code null} if the
+     *         current request is unknown
+     */
+    public String getFileURL(XWikiAttachment attachment, PDFPageRange pageRange, String variant)
+    {
+        Map<String, String> parameters = getVersionedParameters(attachment, pageRange);
+        parameters.put("variant", variant);
+        return getAttachmentResourceURL(attachment.getReference(), "file", parameters);
+    }
+
+    /**
+     * @param attachment a PDF attachment
+     * @param pageRange the displayed pages of the attachment, or {@code null} if the whole file is displayed
+     * @return the versioned URL of the image of the first displayed page, relative to the server, or {@code null} if
+     *         the current request is unknown
+     */
+    public String getPosterURL(XWikiAttachment attachment, PDFPageRange pageRange)
+    {
+        return getAttachmentResourceURL(attachment.getReference(), "poster",
+            getVersionedParameters(attachment, pageRange));
+    }
+
+    /**
+     * The attachment is not loaded, so that the URLs of the files that are not displayed yet (e.g. the files of the
+     * inactive tabs) are cheap to create.
+     *
+     * @param attachmentReference a PDF attachment
+     * @param pageRange the displayed pages of the attachment, or {@code null} if the whole file is displayed
+     * @return the URL of the resource returning the URLs needed by the viewer to display the given attachment,
+     *         relative to the server, or {@code null} if the current request is unknown
+     */
+    public String getURLsURL(AttachmentReference attachmentReference, PDFPageRange pageRange)
+    {
+        return getAttachmentResourceURL(attachmentReference, "urls", getPagesParameters(attachmentReference,
+            pageRange, new LinkedHashMap<>()));
+    }
+
+    private Map<String, String> getVersionedParameters(XWikiAttachment attachment, PDFPageRange pageRange)
+    {
+        // The attachment revision makes the URLs immutable, so that the browser can cache the responses for good.
+        Map<String, String> parameters = new LinkedHashMap<>();
+        parameters.put("v", PDFAttachmentRevisions.getRevision(attachment));
+        return getPagesParameters(attachment.getReference(), pageRange, parameters);
+    }
+
+    private Map<String, String> getPagesParameters(AttachmentReference attachmentReference, PDFPageRange pageRange,
+        Map<String, String> parameters)
+    {
+        // Only the displayed pages are downloaded by the browser, while the download button keeps the whole file.
+        parameters.put("pages", pageRange != null ? pageRange.toString() : null);
+        parameters.put("sig", pageRange != null ? signPages(attachmentReference, pageRange) : null);
+        return parameters;
+    }
+
+    /**
+     * @param fileURL the URL of an external PDF file
+     * @return the URL of the {@link PDFViewerProxyResource} serving the given file, relative to the server, or
+     *         {@code null} if the current request is unknown
+     */
+    public String getProxyURL(String fileURL)
+    {
+        XWikiRequest request = this.wikiContextProvider.get().getRequest();
+        if (request == null) {
+            return null;
+        }
+        return request.getContextPath() + REST_PATH + "/proxy?url=" + encode(fileURL) + "&sig="
+            + encode(this.proxySigner.sign(fileURL));
+    }
+
+    /**
+     * Sign the pages displayed by a macro, so that the {@link PDFViewerAttachmentResource} only stores the page
+     * ranges declared by the macros, and not any page range requested by the users.
+     *
+     * @param attachmentReference a PDF attachment
+     * @param pageRange the pages of the attachment displayed by a macro
+     * @return the signature of the page range of the given attachment
+     */
+    public String signPages(AttachmentReference attachmentReference, PDFPageRange pageRange)
+    {
+        return this.proxySigner.sign(getSignedPages(attachmentReference, pageRange));
+    }
+
+    /**
+     * @param attachmentReference a PDF attachment
+     * @param pageRange the requested pages of the attachment
+     * @param signature the signature to check
+     * @return {@code true} if the signature was created by {@link #signPages(AttachmentReference, PDFPageRange)} for
+     *         the given attachment and pages, {@code false} otherwise
+     */
+    public boolean verifyPages(AttachmentReference attachmentReference, PDFPageRange pageRange, String signature)
+    {
+        return this.proxySigner.verify(getSignedPages(attachmentReference, pageRange), signature);
+    }
+
+    private String getSignedPages(AttachmentReference attachmentReference, PDFPageRange pageRange)
+    {
+        // Prefixed so that the signatures of the page ranges cannot be used as signatures of proxy URLs.
+        return "pages:" + pageRange + '@' + this.entityReferenceSerializer.serialize(attachmentReference);
+    }
+
+    /**
+     * @param url the URL of a resource of a PDF attachment, as created by
+     *            {@link #getAttachmentResourceURL(AttachmentReference, String, Map)}
+     * @return the attachment of the resource, or {@code null} if the URL is not the URL of an attachment resource
+     */
+    public AttachmentReference getAttachmentReference(String url)
+    {
+        if (url == null) {
+            return null;
+        }
+        String path;
+        try {
+            path = new URI(url).getRawPath();
+        } catch (URISyntaxException e) {
+            return null;
+        }
+        int start = path != null ? path.indexOf(REST_PATH + "/wikis/") : -1;
+        if (start < 0) {
+            return null;
+        }
+
+        Matcher matcher = ATTACHMENT_RESOURCE_PATH.matcher(path.substring(start + REST_PATH.length()));
+        if (!matcher.matches()) {
+            return null;
+        }
+        List<String> spaces = new ArrayList<>();
+        for (String space : matcher.group(SPACES_GROUP).substring(SPACE_PREFIX.length()).split(SPACE_PREFIX)) {
+            spaces.add(decode(space));
+        }
+        return new AttachmentReference(decode(matcher.group(ATTACHMENT_GROUP)),
+            new DocumentReference(decode(matcher.group(WIKI_GROUP)), spaces, decode(matcher.group(PAGE_GROUP))));
+    }
+
+    private String decode(String segment)
+    {
+        // The encoded segments have no plus sign, see encode().
+        return URLDecoder.decode(segment, StandardCharsets.UTF_8);
+    }
+
+    private String encode(String segment)
+    {
+        return URLEncoder.encode(segment, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+}
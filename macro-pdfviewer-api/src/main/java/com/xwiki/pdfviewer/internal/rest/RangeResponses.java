@@ -0,0 +1,215 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.rest;
+
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Creates the responses of the REST resources streaming PDF files, supporting single byte range requests so that the
+ * PDF viewer can load the pages it displays without downloading the whole file first. The content is streamed through
+ * NIO channels and is never fully loaded in memory.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+public final class RangeResponses
+{
+    /**
+     * The content to stream.
+     *
+     * @version $Id$
+     */
+    public interface Content
+    {
+        /**
+         * @return the size of the content, in bytes
+         */
+        long getLength();
+
+        /**
+         * @return a new stream of the content, closed once the response is written
+         * @throws IOException if the content cannot be read
+         */
+        InputStream open() throws IOException;
+    }
+
+    // At most 18 digits, so that the positions can always be parsed as long values.
+    private static final Pattern BYTE_RANGE = Pattern.compile("^bytes=(\\d{0,18})-(\\d{0,18})$");
+
+    private static final String ACCEPT_RANGES = "Accept-Ranges";
+
+    private static final String CONTENT_RANGE = "Content-Range";
+
+    private static final String BYTES = "bytes";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private RangeResponses()
+    {
+    }
+
+    /**
+     * Create the response streaming the requested part of the content.
+     *
+     * @param content the content to stream
+     * @param mediaType the media type of the content
+     * @param fileName the name of the file, used when the content is saved by the client
+     * @param entityTag the strong entity tag of the content
+     * @param range the value of the {@code Range} request header, possibly {@code null}
+     * @param ifRange the value of the {@code If-Range} request header, possibly {@code null}
+     * @return a {@code 206 Partial Content} response if a single satisfiable range has been requested, a
+     *         {@code 416 Range Not Satisfiable} response if the requested range is outside the content and a
+     *         {@code 200 OK} response streaming the whole content otherwise
+     */
+    public static ResponseBuilder create(Content content, String mediaType, String fileName, EntityTag entityTag,
+        String range, String ifRange)
+    {
+        long length = content.getLength();
+        long start = 0;
+        long end = length - 1;
+        ResponseBuilder response;
+        Matcher rangeMatcher = BYTE_RANGE.matcher(StringUtils.defaultString(range).trim());
+        // Ignore the range if the client has an outdated version of the content, or if the range cannot be parsed
+        // (including multiple ranges, which are not supported).
+        if (isRangeApplicable(ifRange, entityTag) && rangeMatcher.matches()
+            && (!rangeMatcher.group(1).isEmpty() || !rangeMatcher.group(2).isEmpty()))
+        {
+            if (rangeMatcher.group(1).isEmpty()) {
+                // Suffix range: the last N bytes.
+                start = Math.max(0, length - Long.parseLong(rangeMatcher.group(2)));
+            } else {
+                start = Long.parseLong(rangeMatcher.group(1));
+                if (!rangeMatcher.group(2).isEmpty()) {
+                    end = Math.min(end, Long.parseLong(rangeMatcher.group(2)));
+                }
+            }
+            if (start >= length || start > end) {
+                return Response.status(Status.REQUESTED_RANGE_NOT_SATISFIABLE).tag(entityTag)
+                    .header(CONTENT_RANGE, String.format("%s */%d", BYTES, length));
+            }
+            response = Response.status(Status.PARTIAL_CONTENT)
+                .header(CONTENT_RANGE, String.format("%s %d-%d/%d", BYTES, start, end, length));
+        } else {
+            response = Response.ok();
+        }
+
+        long offset = start;
+        long count = end - start + 1;
+        StreamingOutput output = outputStream -> stream(content, offset, count, outputStream);
+        return response.entity(output).type(mediaType).tag(entityTag).header(ACCEPT_RANGES, BYTES)
+            .header(HttpHeaders.CONTENT_LENGTH, count).header("Content-Disposition",
+                "inline; filename*=UTF-8''" + URLEncoder.encode(fileName, StandardCharsets.UTF_8).replace("+", "%20"));
+    }
+
+    private static boolean isRangeApplicable(String ifRange, EntityTag entityTag)
+    {
+        return StringUtils.isBlank(ifRange) || ifRange.trim().equals("\"" + entityTag.getValue() + "\"");
+    }
+
+    private static void stream(Content content, long offset, long count, OutputStream outputStream)
+        throws IOException
+    {
+        // The output channel is not closed since it would close the response output stream.
+        WritableByteChannel outputChannel = Channels.newChannel(outputStream);
+        try (InputStream inputStream = content.open()) {
+            if (inputStream instanceof FileInputStream) {
+                transfer(((FileInputStream) inputStream).getChannel(), offset, count, outputChannel);
+            } else {
+                skip(inputStream, offset);
+                copy(Channels.newChannel(inputStream), count, outputChannel);
+            }
+        }
+        outputStream.flush();
+    }
+
+    private static void transfer(FileChannel fileChannel, long offset, long count, WritableByteChannel outputChannel)
+        throws IOException
+    {
+        long position = offset;
+        long remaining = count;
+        while (remaining > 0) {
+            long transferred = fileChannel.transferTo(position, remaining, outputChannel);
+            if (transferred <= 0) {
+                throw new EOFException("The file is shorter than expected.");
+            }
+            position += transferred;
+            remaining -= transferred;
+        }
+    }
+
+    private static void skip(InputStream inputStream, long offset) throws IOException
+    {
+        long remaining = offset;
+        while (remaining > 0) {
+            long skipped = inputStream.skip(remaining);
+            if (skipped <= 0) {
+                if (inputStream.read() < 0) {
+                    throw new EOFException("The content is shorter than expected.");
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private static void copy(ReadableByteChannel inputChannel, long count, WritableByteChannel outputChannel)
+        throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, Math.max(count, 1)));
+        long remaining = count;
+        while (remaining > 0) {
+            buffer.clear();
+            if (remaining < buffer.capacity()) {
+                buffer.limit((int) remaining);
+            }
+            int read = inputChannel.read(buffer);
+            if (read < 0) {
+                throw new EOFException("The content is shorter than expected.");
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                outputChannel.write(buffer);
+            }
+            remaining -= read;
+        }
+    }
+}
@@ -20,8 +20,10 @@
 package com.xwiki.pdfviewer.macro;
 
 import java.util.Optional;
+import java.util.function.Supplier;
 
 import org.xwiki.model.reference.AttachmentReference;
+import org.xwiki.stability.Unstable;
 
 /**
  * Represents the resources for a given attachment.
@@ -35,8 +37,16 @@ public class PDFFile
 
     private String url;
 
+    private Supplier<String> urlSupplier;
+
     private boolean delegatedViewRights;
 
+    private String posterURL;
+
+    private String downloadURL;
+
+    private boolean external;
+
     /**
      * Empty constructor.
      */
@@ -67,9 +77,26 @@ public class PDFFile
      */
     public String getURL()
     {
+        if (urlSupplier != null) {
+            url = urlSupplier.get();
+            urlSupplier = null;
+        }
         return url;
     }
 
+    /**
+     * Set the supplier of the file download url, called only the first time {@link #getURL()} is called. This avoids
+     * loading the documents of the files that are not displayed (e.g. the files of the inactive tabs).
+     *
+     * @param urlSupplier computes the file download url, or returns {@code null} if the file cannot be found
+     * @since 2.6.3
+     */
+    @Unstable
+    public void setURLSupplier(Supplier<String> urlSupplier)
+    {
+        this.urlSupplier = urlSupplier;
+    }
+
     /**
      * Get PDF file reference.
      *
@@ -118,5 +145,81 @@ public class PDFFile
     public void setUrl(String url)
     {
         this.url = url;
+        this.urlSupplier = null;
+    }
+
+    /**
+     * Get the url of the image of the first page, displayed while the viewer is loading. The poster url is known only
+     * once the url of the file is resolved, see {@link #getURL()}.
+     *
+     * @return the poster url, or {@code null} if the file has no poster
+     * @since 2.6.3
+     */
+    @Unstable
+    public String getPosterURL()
+    {
+        getURL();
+        return posterURL;
+    }
+
+    /**
+     * See {@link #getPosterURL()}.
+     *
+     * @param posterURL the url of the image of the first page
+     * @since 2.6.3
+     */
+    @Unstable
+    public void setPosterURL(String posterURL)
+    {
+        this.posterURL = posterURL;
+    }
+
+    /**
+     * Get the url to use when the file is downloaded or shared, which can be different from the url loaded by the
+     * viewer (see {@link #getURL()}).
+     *
+     * @return the file download url
+     * @since 2.6.3
+     */
+    @Unstable
+    public String getDownloadURL()
+    {
+        String viewerURL = getURL();
+        return downloadURL != null ? downloadURL : viewerURL;
+    }
+
+    /**
+     * See {@link #getDownloadURL()}.
+     *
+     * @param downloadURL the file download url
+     * @since 2.6.3
+     */
+    @Unstable
+    public void setDownloadURL(String downloadURL)
+    {
+        this.downloadURL = downloadURL;
+    }
+
+    /**
+     * @return {@code true} if the file is an URL that doesn't target an attachment of this wiki, in which case its URLs
+     *         are known without loading any document, {@code false} otherwise
+     * @since 2.6.3
+     */
+    @Unstable
+    public boolean isExternal()
+    {
+        return external;
+    }
+
+    /**
+     * See {@link #isExternal()}.
+     *
+     * @param external whether the file is an URL that doesn't target an attachment of this wiki
+     * @since 2.6.3
+     */
+    @Unstable
+    public void setExternal(boolean external)
+    {
+        this.external = external;
     }
 }
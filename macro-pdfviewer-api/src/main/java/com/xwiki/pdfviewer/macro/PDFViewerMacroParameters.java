@@ -74,6 +74,28 @@ public class PDFViewerMacroParameters
      */
     private String asAuthor = "0";
 
+    /**
+     * Whether to create the viewer only when it is scrolled into view. The PDF Viewer configuration is used when
+     * {@code null}.
+     *
+     * @since 2.6.3
+     */
+    private Boolean lazyLoading;
+
+    /**
+     * How the PDF file is displayed.
+     *
+     * @since 2.6.3
+     */
+    private PDFViewerMode viewerMode = PDFViewerMode.IFRAME;
+
+    /**
+     * The pages to display, when not the whole file.
+     *
+     * @since 2.6.3
+     */
+    private String pages;
+
     /**
      * @return one or a list of PDF files
      */
@@ -202,4 +224,86 @@ public class PDFViewerMacroParameters
     {
         this.asAuthor = asAuthor;
     }
+
+    /**
+     * @return {@code true} if the viewer should be created only when it is scrolled into view, {@code false} if it
+     *         should be created when the page loads, {@code null} to use the PDF Viewer configuration
+     * @since 2.6.3
+     */
+    @Unstable
+    public Boolean getLazyLoading()
+    {
+        return this.lazyLoading;
+    }
+
+    /**
+     * Set whether to create the viewer only when it is scrolled into view, which avoids loading all the PDF files
+     * of a page displaying many of them.
+     *
+     * @param lazyLoading {@code true} to create the viewer when it is scrolled into view, {@code false} to create it
+     *            when the page loads, {@code null} to use the PDF Viewer configuration
+     * @since 2.6.3
+     */
+    @Unstable
+    @PropertyAdvanced
+    @PropertyDescription("If this value is true, the viewer is created only when it is scrolled into view. If not "
+        + "defined, the value from the PDF Viewer configuration is used.")
+    public void setLazyLoading(Boolean lazyLoading)
+    {
+        this.lazyLoading = lazyLoading;
+    }
+
+    /**
+     * @return how the PDF file is displayed
+     * @since 2.6.3
+     */
+    @Unstable
+    public PDFViewerMode getViewerMode()
+    {
+        return this.viewerMode;
+    }
+
+    /**
+     * Set how the PDF file is displayed.
+     *
+     * @param viewerMode {@link PDFViewerMode#IFRAME} for the full viewer, {@link PDFViewerMode#EMBEDDED} for the
+     *            pages only, sharing the PDF library with the other embedded viewers of the page
+     * @since 2.6.3
+     */
+    @Unstable
+    @PropertyAdvanced
+    @PropertyDescription("The full viewer with its toolbar (iframe) or only the pages, rendered directly in the wiki "
+        + "page (embedded). The embedded viewers of a page share the same PDF library and worker, which uses less "
+        + "memory when a page displays many PDF files.")
+    public void setViewerMode(PDFViewerMode viewerMode)
+    {
+        this.viewerMode = viewerMode;
+    }
+
+    /**
+     * @return the pages to display (e.g. {@code 1-5,8}), or {@code null} to display the whole file
+     * @since 2.6.3
+     */
+    @Unstable
+    public String getPages()
+    {
+        return this.pages;
+    }
+
+    /**
+     * Set the pages to display, so that the browser downloads only these pages of a large attachment. The pages are
+     * extracted on the server, so they apply to the attachments viewed with the right of the current user, and not to
+     * the external files.
+     *
+     * @param pages comma separated page numbers or ranges of page numbers, starting from 1 (e.g. {@code 1-5,8})
+     * @since 2.6.3
+     */
+    @Unstable
+    @PropertyAdvanced
+    @PropertyDescription("The pages to display, as comma separated page numbers or ranges (e.g. 1-5,8). Only these "
+        + "pages of the attachment are downloaded. If not defined, the whole file is displayed.")
+    public void setPages(String pages)
+    {
+        this.pages = pages;
+    }
 }
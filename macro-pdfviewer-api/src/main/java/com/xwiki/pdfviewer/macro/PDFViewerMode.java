@@ -0,0 +1,44 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.macro;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * The ways a PDF file can be displayed by the PDF Viewer macro.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Unstable
+public enum PDFViewerMode
+{
+    /**
+     * The full pdf.js viewer, with its toolbar, loaded in an iframe. Each viewer has its own copy of the pdf.js
+     * library and its own worker.
+     */
+    IFRAME,
+
+    /**
+     * The pages rendered directly in the wiki page, without toolbar. All the embedded viewers of a page share a
+     * single pdf.js library instance and a single worker, which suits pages displaying many PDF files.
+     */
+    EMBEDDED
+}
@@ -0,0 +1,144 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.rest;
+
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.xwiki.rest.XWikiRestException;
+import org.xwiki.stability.Unstable;
+
+/**
+ * Exposes the resources needed by the PDF viewer to display a PDF attachment.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Path("/pdfviewer/wikis/{wikiName}/spaces/{spaceName: .+}/pages/{pageName}/attachments/{attachmentName}")
+@Unstable
+public interface PDFViewerAttachmentResource
+{
+    /**
+     * Get the image of the first page of a PDF attachment, displayed while the viewer is loading.
+     *
+     * @param wikiName the wiki of the document holding the attachment
+     * @param spaceName the spaces of the document holding the attachment
+     * @param pageName the name of the document holding the attachment
+     * @param attachmentName the name of the PDF attachment
+     * @param version the attachment revision the poster is requested for (the attachment version and upload date);
+     *            when it matches the current revision the response can be cached for good by the client
+     * @param pages the pages displayed by the viewer (e.g. {@code 5-10}), if not the whole file, in which case the
+     *            first of these pages is rendered
+     * @param signature the signature of the pages, created by the macro displaying them, since only the page ranges
+     *            displayed by the macros are rendered
+     * @param ifNoneMatch the entity tags of the poster already cached by the client, if any
+     * @return the PNG image of the first page
+     * @throws XWikiRestException if the attachment cannot be loaded
+     */
+    @GET
+    @Path("/poster")
+    Response getPoster(@PathParam("wikiName") String wikiName, @PathParam("spaceName") String spaceName,
+        @PathParam("pageName") String pageName, @PathParam("attachmentName") String attachmentName,
+        @QueryParam("v") String version, @QueryParam("pages") String pages, @QueryParam("sig") String signature,
+        @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch) throws XWikiRestException;
+
+    /**
+     * Get the content of a PDF attachment. Single byte ranges are supported so that the viewer can display the first
+     * pages of large files before they are fully downloaded.
+     *
+     * @param wikiName the wiki of the document holding the attachment
+     * @param spaceName the spaces of the document holding the attachment
+     * @param pageName the name of the document holding the attachment
+     * @param attachmentName the name of the PDF attachment
+     * @param version the attachment revision the file is requested for (the attachment version and upload date);
+     *            when it matches the current revision the response can be cached for good by the client
+     * @param variant the derivative of the attachment to get instead of the attachment itself (e.g.
+     *            {@code linearized}), if any; the attachment is returned if the derivative is not available
+     * @param pages the pages to get (e.g. {@code 1-5,8}), extracted in a smaller PDF file, if not the whole file; the
+     *            variant is ignored in this case
+     * @param signature the signature of the pages, created by the macro displaying them, since only the page ranges
+     *            displayed by the macros are extracted
+     * @param ifNoneMatch the entity tags of the file already cached by the client, if any
+     * @param range the byte range to get, if any
+     * @param ifRange the entity tag the byte range applies to, if any
+     * @return the content of the PDF attachment, or the requested part of it
+     * @throws XWikiRestException if the attachment cannot be loaded
+     */
+    @GET
+    @Path("/file")
+    Response getFile(@PathParam("wikiName") String wikiName, @PathParam("spaceName") String spaceName,
+        @PathParam("pageName") String pageName, @PathParam("attachmentName") String attachmentName,
+        @QueryParam("v") String version, @QueryParam("variant") String variant, @QueryParam("pages") String pages,
+        @QueryParam("sig") String signature, @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch,
+        @HeaderParam("Range") String range, @HeaderParam("If-Range") String ifRange) throws XWikiRestException;
+
+    /**
+     * Get the URLs needed by the viewer to display a PDF attachment, so that the multi-file viewers can switch to the
+     * file of another tab without rendering the page again. The result is a JSON object with the {@code file} loaded
+     * by the viewer, the {@code poster} displayed while it loads and the {@code download} URL of the attachment.
+     *
+     * @param wikiName the wiki of the document holding the attachment
+     * @param spaceName the spaces of the document holding the attachment
+     * @param pageName the name of the document holding the attachment
+     * @param attachmentName the name of the PDF attachment
+     * @param pages the pages displayed by the viewer (e.g. {@code 5-10}), if not the whole file
+     * @param signature the signature of the pages, created by the macro displaying them
+     * @return the URLs of the given attachment
+     * @throws XWikiRestException if the attachment cannot be loaded
+     */
+    @GET
+    @Path("/urls")
+    @Produces(MediaType.APPLICATION_JSON)
+    Response getURLs(@PathParam("wikiName") String wikiName, @PathParam("spaceName") String spaceName,
+        @PathParam("pageName") String pageName, @PathParam("attachmentName") String attachmentName,
+        @QueryParam("pages") String pages, @QueryParam("sig") String signature) throws XWikiRestException;
+
+    /**
+     * Search the text of a PDF attachment, so that the viewer can jump to the matching pages without downloading the
+     * whole file. The result is a JSON object with a {@code hits} array, holding the {@code page} number, the number
+     * of {@code matches} and a {@code snippet} of text for each matching page.
+     *
+     * @param wikiName the wiki of the document holding the attachment
+     * @param spaceName the spaces of the document holding the attachment
+     * @param pageName the name of the document holding the attachment
+     * @param attachmentName the name of the PDF attachment
+     * @param query the text to search, ignoring the case
+     * @param pages the pages to search (e.g. {@code 1-5,8}), if not the whole file, in which case the returned page
+     *            numbers are the ones of the file returned by {@link #getFile} for the same pages
+     * @param limit the maximum number of pages to return
+     * @return the pages matching the query, in the document order
+     * @throws XWikiRestException if the attachment cannot be loaded or searched
+     */
+    @GET
+    @Path("/search")
+    @Produces(MediaType.APPLICATION_JSON)
+    Response search(@PathParam("wikiName") String wikiName, @PathParam("spaceName") String spaceName,
+        @PathParam("pageName") String pageName, @PathParam("attachmentName") String attachmentName,
+        @QueryParam("q") String query, @QueryParam("pages") String pages,
+        @QueryParam("limit") @DefaultValue("100") int limit) throws XWikiRestException;
+}
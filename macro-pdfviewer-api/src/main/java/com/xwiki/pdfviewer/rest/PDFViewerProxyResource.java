@@ -0,0 +1,62 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.rest;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.Path;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import org.xwiki.rest.XWikiRestException;
+import org.xwiki.stability.Unstable;
+
+/**
+ * Serves the external PDF files displayed by the macro from the wiki origin, so that the browser doesn't have to fetch
+ * them from the remote server (which requires the remote server to allow cross-origin requests). The files are
+ * fetched once and then cached on the server. The proxy is disabled unless {@code pdfviewer.proxy.enabled} is set in
+ * {@code xwiki.properties}.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Path("/pdfviewer/proxy")
+@Unstable
+public interface PDFViewerProxyResource
+{
+    /**
+     * Get the content of an external PDF file. Single byte ranges are supported so that the viewer can display the
+     * first pages of large files before they are fully downloaded.
+     *
+     * @param url the URL of the external PDF file
+     * @param signature the signature of the URL, created when the macro is rendered so that only the files displayed
+     *            by the wiki pages can be fetched
+     * @param ifNoneMatch the entity tags of the file already cached by the client, if any
+     * @param range the byte range to get, if any
+     * @param ifRange the entity tag the byte range applies to, if any
+     * @return the content of the PDF file, or the requested part of it
+     * @throws XWikiRestException if the file cannot be served
+     */
+    @GET
+    Response getFile(@QueryParam("url") String url, @QueryParam("sig") String signature,
+        @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch, @HeaderParam("Range") String range,
+        @HeaderParam("If-Range") String ifRange) throws XWikiRestException;
+}
@@ -0,0 +1,50 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.rest;
+
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.core.Response;
+
+import org.xwiki.rest.XWikiRestException;
+import org.xwiki.stability.Unstable;
+
+/**
+ * Receives what the viewers experienced while displaying the PDF files (time to the first page, downloaded bytes,
+ * failures), so that the files that need to be optimized can be found. The telemetry is aggregated in memory and
+ * exposed through JMX. It is disabled unless {@code pdfviewer.telemetry.enabled} is set in {@code xwiki.properties}.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Path("/pdfviewer/telemetry")
+@Unstable
+public interface PDFViewerTelemetryResource
+{
+    /**
+     * Record a batch of telemetry samples, sent by the viewers with {@code navigator.sendBeacon}.
+     *
+     * @param samples the JSON array of the samples
+     * @return an empty response
+     * @throws XWikiRestException if the samples cannot be recorded
+     */
+    @POST
+    Response record(String samples) throws XWikiRestException;
+}
@@ -0,0 +1,124 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.script;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.job.Job;
+import org.xwiki.job.JobException;
+import org.xwiki.job.JobExecutor;
+import org.xwiki.job.event.status.CancelableJobStatus;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.script.service.ScriptService;
+import org.xwiki.security.authorization.ContextualAuthorizationManager;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.stability.Unstable;
+import org.xwiki.wiki.descriptor.WikiDescriptorManager;
+import org.xwiki.wiki.manager.WikiManagerException;
+
+import com.xwiki.pdfviewer.internal.job.PDFDerivativesJob;
+import com.xwiki.pdfviewer.internal.job.PDFDerivativesJobRequest;
+
+/**
+ * Script service of the PDF Viewer, used to create the derivatives of the existing PDF attachments from the
+ * administration.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@Component
+@Named("pdfviewer")
+@Singleton
+@Unstable
+public class PDFViewerScriptService implements ScriptService
+{
+    @Inject
+    private JobExecutor jobExecutor;
+
+    @Inject
+    private ContextualAuthorizationManager authorization;
+
+    @Inject
+    private WikiDescriptorManager wikiDescriptorManager;
+
+    @Inject
+    private Logger logger;
+
+    /**
+     * Start creating the derivatives of the PDF attachments of all the wikis, in the background. Requires the
+     * administration right on the main wiki.
+     *
+     * @return the started job, or {@code null} if the current user is not allowed to start it, if it is already
+     *         running or if it cannot be started
+     */
+    public Job startDerivativesJob()
+    {
+        if (!isAllowed() || this.jobExecutor.getJob(PDFDerivativesJobRequest.JOB_ID) != null) {
+            return null;
+        }
+
+        try {
+            PDFDerivativesJobRequest request = new PDFDerivativesJobRequest();
+            request.setWikis(new ArrayList<>(this.wikiDescriptorManager.getAllIds()));
+            return this.jobExecutor.execute(PDFDerivativesJob.JOB_TYPE, request);
+        } catch (WikiManagerException | JobException e) {
+            this.logger.warn("Failed to start the creation of the PDF derivatives.", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the identifier of the job creating the derivatives of the PDF attachments, to get its status with the
+     *         job script service
+     */
+    public List<String> getDerivativesJobId()
+    {
+        return PDFDerivativesJobRequest.JOB_ID;
+    }
+
+    /**
+     * Cancel the running job creating the derivatives of the PDF attachments. Requires the administration right on
+     * the main wiki.
+     *
+     * @return {@code true} if the job has been canceled, {@code false} otherwise
+     */
+    public boolean cancelDerivativesJob()
+    {
+        Job job = this.jobExecutor.getJob(PDFDerivativesJobRequest.JOB_ID);
+        if (job == null || !isAllowed() || !(job.getStatus() instanceof CancelableJobStatus)) {
+            return false;
+        }
+        ((CancelableJobStatus) job.getStatus()).cancel();
+        return true;
+    }
+
+    private boolean isAllowed()
+    {
+        return this.authorization.hasAccess(Right.ADMIN,
+            new WikiReference(this.wikiDescriptorManager.getMainWikiId()));
+    }
+}
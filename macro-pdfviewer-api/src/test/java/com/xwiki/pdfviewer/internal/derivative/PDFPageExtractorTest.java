@@ -0,0 +1,164 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.derivative;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.inject.Provider;
+
+import org.apache.commons.lang3.function.FailableConsumer;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.outline.PDDocumentOutline;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.outline.PDOutlineItem;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.xwiki.model.reference.AttachmentReference;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiAttachment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link PDFPageExtractor}.
+ *
+ * @version $Id$
+ */
+@ComponentTest
+class PDFPageExtractorTest
+{
+    private static final int PAGE_COUNT = 20;
+
+    @InjectMockComponents
+    private PDFPageExtractor pageExtractor;
+
+    @MockComponent
+    private PDFDerivativeStore derivativeStore;
+
+    @MockComponent
+    private Provider<XWikiContext> wikiContextProvider;
+
+    @TempDir
+    File temporaryDirectory;
+
+    private File source;
+
+    private File target;
+
+    private XWikiAttachment attachment;
+
+    @BeforeEach
+    void setUp() throws Exception
+    {
+        this.source = new File(this.temporaryDirectory, "source.pdf");
+        this.target = new File(this.temporaryDirectory, "target.pdf");
+        createSource();
+
+        this.attachment = mock(XWikiAttachment.class);
+        when(this.attachment.getReference()).thenReturn(
+            new AttachmentReference("file.pdf", new DocumentReference("wiki", "Space", "Page")));
+        when(this.attachment.getVersion()).thenReturn("1.1");
+        when(this.attachment.getContentInputStream(any())).thenAnswer(invocation -> new FileInputStream(this.source));
+
+        when(this.derivativeStore.getOrCreate(eq(this.attachment.getReference()), eq("1.1"), any(), any()))
+            .thenAnswer(invocation -> {
+                FailableConsumer<File, Exception> producer = invocation.getArgument(3);
+                producer.accept(this.target);
+                return this.target;
+            });
+    }
+
+    @Test
+    void getPages() throws Exception
+    {
+        File extractedFile = this.pageExtractor.getPages(this.attachment, PDFPageRange.parse("3-4,7"));
+
+        try (PDDocument extracted = PDDocument.load(extractedFile)) {
+            assertEquals(3, extracted.getNumberOfPages());
+            // The width of the pages identifies them.
+            assertEquals(3, getPageNumber(extracted.getPage(0)));
+            assertEquals(4, getPageNumber(extracted.getPage(1)));
+            assertEquals(7, getPageNumber(extracted.getPage(2)));
+            // The outline refers to all the pages of the original document.
+            assertNull(extracted.getDocumentCatalog().getDocumentOutline());
+        }
+        // The other pages are not kept in the file.
+        assertTrue(extractedFile.length() < this.source.length() / 4,
+            String.format("The extracted file is [%d] bytes, the original file [%d] bytes.", extractedFile.length(),
+                this.source.length()));
+    }
+
+    @Test
+    void getPagesAfterTheLastPage()
+    {
+        assertThrows(IOException.class,
+            () -> this.pageExtractor.getPages(this.attachment, PDFPageRange.parse(String.valueOf(PAGE_COUNT + 1))));
+    }
+
+    private int getPageNumber(PDPage page)
+    {
+        return Math.round(page.getMediaBox().getWidth() - PDRectangle.A4.getWidth());
+    }
+
+    private void createSource() throws Exception
+    {
+        Random random = new Random(PAGE_COUNT);
+        try (PDDocument document = new PDDocument()) {
+            PDDocumentOutline outline = new PDDocumentOutline();
+            document.getDocumentCatalog().setDocumentOutline(outline);
+            for (int pageNumber = 1; pageNumber <= PAGE_COUNT; pageNumber++) {
+                PDPage page = new PDPage(
+                    new PDRectangle(PDRectangle.A4.getWidth() + pageNumber, PDRectangle.A4.getHeight()));
+                document.addPage(page);
+                // Content that doesn't compress well, so that the size of the file depends on the number of pages.
+                try (PDPageContentStream contentStream = new PDPageContentStream(document, page)) {
+                    for (int i = 0; i < 1000; i++) {
+                        contentStream.addRect(random.nextFloat() * 500, random.nextFloat() * 800,
+                            random.nextFloat() * 50, random.nextFloat() * 50);
+                    }
+                    contentStream.stroke();
+                }
+                PDOutlineItem item = new PDOutlineItem();
+                item.setTitle("Page " + pageNumber);
+                item.setDestination(page);
+                outline.addLast(item);
+            }
+            document.save(this.source);
+        }
+    }
+}
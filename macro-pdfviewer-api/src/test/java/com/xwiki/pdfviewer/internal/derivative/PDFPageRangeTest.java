@@ -0,0 +1,97 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.derivative;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link PDFPageRange}.
+ *
+ * @version $Id$
+ */
+class PDFPageRangeTest
+{
+    @Test
+    void parseBlank()
+    {
+        assertNull(PDFPageRange.parse(null));
+        assertNull(PDFPageRange.parse(""));
+        assertNull(PDFPageRange.parse("  "));
+    }
+
+    @Test
+    void parseSortsAndMergesRanges()
+    {
+        assertEquals("8", PDFPageRange.parse("8").toString());
+        assertEquals("1-5,8", PDFPageRange.parse(" 8 , 1 - 5 ").toString());
+        // Overlapping and adjacent ranges are merged.
+        assertEquals("1-7,10", PDFPageRange.parse("10,3-7,1-4").toString());
+        assertEquals("2-4", PDFPageRange.parse("4,3,2").toString());
+        assertEquals("pages-1-5_8.pdf", PDFPageRange.parse("1-5,8").getVariant());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "0", "0-3", "5-2", ",1", "a", "1-b", "-3", "1-", "1;2", "1234567", "1.5" })
+    void parseMalformed(String value)
+    {
+        assertThrows(IllegalArgumentException.class, () -> PDFPageRange.parse(value));
+    }
+
+    @Test
+    void parseTooManyRanges()
+    {
+        StringBuilder value = new StringBuilder("1");
+        for (int page = 3; page <= 101; page += 2) {
+            value.append(',').append(page);
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> PDFPageRange.parse(value.toString()));
+    }
+
+    @Test
+    void bounds()
+    {
+        PDFPageRange range = PDFPageRange.parse("3-5,8");
+
+        assertEquals(3, range.getFirstPage());
+
+        assertEquals(-1, range.indexOf(2));
+        assertEquals(1, range.indexOf(3));
+        assertEquals(3, range.indexOf(5));
+        assertEquals(-1, range.indexOf(6));
+        assertEquals(4, range.indexOf(8));
+        assertEquals(-1, range.indexOf(9));
+
+        assertFalse(range.contains(2));
+        assertTrue(range.contains(3));
+        assertTrue(range.contains(5));
+        assertFalse(range.contains(7));
+        assertTrue(range.contains(8));
+        assertFalse(range.contains(9));
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.job;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.xwiki.environment.Environment;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link PDFDerivativesJobCheckpoint}.
+ *
+ * @version $Id$
+ */
+@ComponentTest
+class PDFDerivativesJobCheckpointTest
+{
+    private static final List<String> WIKIS = List.of("xwiki", "subwiki", "other");
+
+    @TempDir
+    File permanentDirectory;
+
+    @InjectMockComponents
+    private PDFDerivativesJobCheckpoint checkpoint;
+
+    @MockComponent
+    private Environment environment;
+
+    @BeforeEach
+    void setUp()
+    {
+        when(this.environment.getPermanentDirectory()).thenReturn(this.permanentDirectory);
+    }
+
+    @Test
+    void loadWithoutCheckpoint() throws Exception
+    {
+        assertNull(this.checkpoint.load());
+    }
+
+    @Test
+    void loadSavedPosition() throws Exception
+    {
+        this.checkpoint.save(WIKIS, "subwiki", 200);
+
+        PDFDerivativesJobCheckpoint.Position position = this.checkpoint.load();
+        assertEquals(WIKIS, position.getWikis());
+        assertEquals("subwiki", position.getWiki());
+        assertEquals(200, position.getOffset());
+        // The checkpoint is written through a temporary file, which is not left behind.
+        assertFalse(new File(getFile().getParentFile(), "job.properties.tmp").exists());
+    }
+
+    @Test
+    void loadLastSavedPosition() throws Exception
+    {
+        this.checkpoint.save(WIKIS, "xwiki", 100);
+        this.checkpoint.save(WIKIS, "xwiki", 200);
+        this.checkpoint.save(WIKIS, "other", 100);
+
+        PDFDerivativesJobCheckpoint.Position position = this.checkpoint.load();
+        assertEquals("other", position.getWiki());
+        assertEquals(100, position.getOffset());
+    }
+
+    @Test
+    void loadAfterDelete() throws Exception
+    {
+        this.checkpoint.save(WIKIS, "xwiki", 100);
+        assertTrue(getFile().isFile());
+
+        this.checkpoint.delete();
+
+        assertNull(this.checkpoint.load());
+        // Deleting a missing checkpoint doesn't fail.
+        this.checkpoint.delete();
+    }
+
+    @Test
+    void loadInvalidCheckpoint() throws Exception
+    {
+        getFile().getParentFile().mkdirs();
+
+        Files.writeString(getFile().toPath(), "wikis=xwiki\nwiki=xwiki\noffset=unknown\n", StandardCharsets.ISO_8859_1);
+        assertNull(this.checkpoint.load());
+
+        Files.writeString(getFile().toPath(), "wikis=xwiki\noffset=100\n", StandardCharsets.ISO_8859_1);
+        assertNull(this.checkpoint.load());
+
+        // The job starts again from the first attachment of the wiki when the offset is missing.
+        Files.writeString(getFile().toPath(), "wikis=xwiki\nwiki=xwiki\n", StandardCharsets.ISO_8859_1);
+        assertEquals(0, this.checkpoint.load().getOffset());
+    }
+
+    private File getFile()
+    {
+        return new File(this.permanentDirectory, "pdfviewer/derivatives/job.properties");
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.macro;
+
+import java.util.List;
+import java.util.Set;
+
+import javax.inject.Provider;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.xwiki.model.reference.AttachmentReference;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.rendering.async.internal.AsyncRendererConfiguration;
+import org.xwiki.rendering.async.internal.block.BlockAsyncRendererExecutor;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.WordBlock;
+import org.xwiki.rendering.macro.MacroExecutionException;
+import org.xwiki.rendering.transformation.MacroTransformationContext;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xwiki.pdfviewer.internal.configuration.PDFViewerConfiguration;
+import com.xwiki.pdfviewer.macro.PDFViewerMacroParameters;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link PDFViewerAsyncExecutor}.
+ *
+ * @version $Id$
+ */
+@ComponentTest
+class PDFViewerAsyncExecutorTest
+{
+    private static final DocumentReference CURRENT_DOCUMENT = new DocumentReference("wiki", "Space", "Page");
+
+    private static final DocumentReference FILE_DOCUMENT = new DocumentReference("wiki", "Space", "Files");
+
+    private static final String EXTERNAL_URL = "https://www.example.org/file.pdf";
+
+    @InjectMockComponents
+    private PDFViewerAsyncExecutor asyncExecutor;
+
+    @MockComponent
+    private BlockAsyncRendererExecutor asyncRendererExecutor;
+
+    @MockComponent
+    private Provider<PDFViewerBlockAsyncRenderer> asyncRendererProvider;
+
+    @MockComponent
+    private Provider<XWikiContext> wikiContextProvider;
+
+    private final PDFViewerBlockAsyncRenderer asyncRenderer = mock(PDFViewerBlockAsyncRenderer.class);
+
+    private final XWikiContext wikiContext = mock(XWikiContext.class);
+
+    private final XWikiDocument currentDocument = mock(XWikiDocument.class);
+
+    private final PDFViewerMacro macro = mock(PDFViewerMacro.class);
+
+    private final MacroTransformationContext context = new MacroTransformationContext();
+
+    private final PDFViewerMacroParameters parameters = new PDFViewerMacroParameters();
+
+    private final List<PDFFileEntry> files = List.of(
+        new PDFFileEntry("Space.Files@file.pdf", false, new AttachmentReference("file.pdf", FILE_DOCUMENT)),
+        new PDFFileEntry(EXTERNAL_URL, true, null));
+
+    @BeforeEach
+    void setUp()
+    {
+        when(this.asyncRendererProvider.get()).thenReturn(this.asyncRenderer);
+        when(this.wikiContextProvider.get()).thenReturn(this.wikiContext);
+        when(this.wikiContext.getWikiReference()).thenReturn(new WikiReference("wiki"));
+        when(this.wikiContext.getDoc()).thenReturn(this.currentDocument);
+        when(this.currentDocument.getDocumentReference()).thenReturn(CURRENT_DOCUMENT);
+    }
+
+    @Test
+    void execute() throws Exception
+    {
+        Block result = new WordBlock("result");
+        when(this.asyncRendererExecutor.execute(any(), any())).thenReturn(result);
+
+        assertSame(result, this.asyncExecutor.execute(this.macro, this.parameters, this.files, this.context));
+
+        List<String> id = this.asyncExecutor.getAsyncId(this.parameters, this.files);
+        verify(this.asyncRenderer).initialize(this.macro, this.parameters, this.files, this.context, id);
+        ArgumentCaptor<AsyncRendererConfiguration> configuration =
+            ArgumentCaptor.forClass(AsyncRendererConfiguration.class);
+        verify(this.asyncRendererExecutor).execute(any(), configuration.capture());
+        // The rights are checked for the current user and the author of the macro, in the current document.
+        assertEquals(Set.of("author", "doc.reference", "locale", "request.base", "request.parameters", "request.url",
+            "secureDocument", "user", "wiki"), configuration.getValue().getContextEntries());
+        // The result depends on the configuration and on the documents holding the attachments.
+        assertEquals(Set.of(new DocumentReference(PDFViewerConfiguration.CONFIGURATION_REFERENCE,
+            new WikiReference("wiki")), FILE_DOCUMENT), configuration.getValue().getReferences());
+    }
+
+    @Test
+    void executeWithFailure() throws Exception
+    {
+        when(this.asyncRendererExecutor.execute(any(), any())).thenThrow(new RuntimeException("failure"));
+
+        MacroExecutionException exception = assertThrows(MacroExecutionException.class,
+            () -> this.asyncExecutor.execute(this.macro, this.parameters, this.files, this.context));
+
+        assertEquals("Failed to render the PDF Viewer macro.", exception.getMessage());
+    }
+
+    @Test
+    void getAsyncId()
+    {
+        List<String> id = this.asyncExecutor.getAsyncId(this.parameters, this.files);
+
+        assertEquals(List.of("rendering", "macro", "pdfviewer", "wiki:Space.Page"), id.subList(0, 4));
+        assertEquals(id, this.asyncExecutor.getAsyncId(new PDFViewerMacroParameters(), List.copyOf(this.files)));
+    }
+
+    @Test
+    void getAsyncIdDependsOnTheParameters()
+    {
+        List<String> id = this.asyncExecutor.getAsyncId(this.parameters, this.files);
+
+        this.parameters.setPages("1-5");
+        assertNotEquals(id, this.asyncExecutor.getAsyncId(this.parameters, this.files));
+
+        this.parameters.setPages(null);
+        this.parameters.setLazyLoading(false);
+        assertNotEquals(id, this.asyncExecutor.getAsyncId(this.parameters, this.files));
+    }
+
+    @Test
+    void getAsyncIdDependsOnTheCurrentDocument()
+    {
+        List<String> id = this.asyncExecutor.getAsyncId(this.parameters, this.files);
+
+        when(this.currentDocument.getDocumentReference())
+            .thenReturn(new DocumentReference("wiki", "Space", "Other"));
+        assertNotEquals(id, this.asyncExecutor.getAsyncId(this.parameters, this.files));
+    }
+
+    @Test
+    void getAsyncIdIsNotAmbiguous()
+    {
+        // The values are not simply joined, so moving a separator from a value to the next one changes the id.
+        List<PDFFileEntry> joinedFiles = List.of(new PDFFileEntry("a,b", false, null));
+        List<PDFFileEntry> splitFiles =
+            List.of(new PDFFileEntry("a", false, null), new PDFFileEntry("b", false, null));
+
+        assertNotEquals(this.asyncExecutor.getAsyncId(this.parameters, joinedFiles),
+            this.asyncExecutor.getAsyncId(this.parameters, splitFiles));
+        assertTrue(this.asyncExecutor.getAsyncId(this.parameters, joinedFiles).get(4).matches("[0-9a-f]{64}"));
+    }
+}
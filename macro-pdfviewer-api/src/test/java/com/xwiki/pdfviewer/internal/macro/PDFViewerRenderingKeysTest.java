@@ -0,0 +1,167 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.macro;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xwiki.model.reference.AttachmentReference;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.security.authorization.AuthorizationManager;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xwiki.pdfviewer.internal.metrics.PDFViewerMetrics;
+import com.xwiki.pdfviewer.macro.PDFViewerMacroParameters;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link PDFViewerRenderingKeys}.
+ *
+ * @version $Id$
+ */
+@ComponentTest
+class PDFViewerRenderingKeysTest
+{
+    private static final DocumentReference USER = new DocumentReference("wiki", "XWiki", "Alice");
+
+    private static final DocumentReference AUTHOR = new DocumentReference("wiki", "XWiki", "Bob");
+
+    private static final DocumentReference FILE_DOCUMENT = new DocumentReference("wiki", "Space", "Files");
+
+    private static final DocumentReference URL_DOCUMENT = new DocumentReference("wiki", "Space", "Other");
+
+    private static final DocumentReference OWNER_DOCUMENT = new DocumentReference("wiki", "Space", "Owner");
+
+    private static final String EXTERNAL_URL = "https://www.example.org/file.pdf";
+
+    @InjectMockComponents
+    private PDFViewerRenderingKeys renderingKeys;
+
+    @MockComponent
+    private PDFFileResolver fileResolver;
+
+    private final AuthorizationManager authorizationManager = mock(AuthorizationManager.class);
+
+    private final XWikiContext wikiContext = mock(XWikiContext.class);
+
+    private final XWiki wiki = mock(XWiki.class);
+
+    private final XWikiDocument secureDocument = mock(XWikiDocument.class);
+
+    private final PDFViewerMacroParameters parameters = new PDFViewerMacroParameters();
+
+    private final List<PDFFileEntry> files = List.of(
+        new PDFFileEntry("Space.Files@file.pdf", false, new AttachmentReference("file.pdf", FILE_DOCUMENT)),
+        new PDFFileEntry("https://wiki.example.org/xwiki/bin/download/Space/Other/other.pdf", true,
+            new AttachmentReference("other.pdf", URL_DOCUMENT)),
+        new PDFFileEntry(EXTERNAL_URL, true, new AttachmentReference(EXTERNAL_URL, OWNER_DOCUMENT)));
+
+    @BeforeEach
+    void setUp() throws Exception
+    {
+        when(this.wikiContext.getWikiId()).thenReturn("wiki");
+        when(this.wikiContext.getUserReference()).thenReturn(USER);
+        when(this.wikiContext.getWiki()).thenReturn(this.wiki);
+        when(this.wikiContext.get(XWikiDocument.CKEY_SDOC)).thenReturn(this.secureDocument);
+        when(this.secureDocument.getContentAuthorReference()).thenReturn(AUTHOR);
+        when(this.wiki.exists(any(DocumentReference.class), any())).thenReturn(true);
+        when(this.authorizationManager.hasAccess(any(), any(), any())).thenReturn(true);
+        when(this.fileResolver.resolveDocument("Space.Owner")).thenReturn(OWNER_DOCUMENT);
+    }
+
+    @Test
+    void getDocumentReferences()
+    {
+        assertEquals(Set.of(FILE_DOCUMENT, URL_DOCUMENT),
+            this.renderingKeys.getDocumentReferences(this.parameters, this.files));
+
+        // The URLs targeting attachments of this wiki are included, but not the external URLs.
+        this.parameters.setDocument("Space.Owner");
+        assertEquals(List.of(OWNER_DOCUMENT, FILE_DOCUMENT, URL_DOCUMENT),
+            List.copyOf(this.renderingKeys.getDocumentReferences(this.parameters, this.files)));
+    }
+
+    @Test
+    void getCacheKeyDependsOnTheViewRights() throws Exception
+    {
+        String key = getCacheKey();
+        assertEquals(key, getCacheKey());
+
+        when(this.authorizationManager.hasAccess(Right.VIEW, USER, URL_DOCUMENT)).thenReturn(false);
+        assertNotEquals(key, getCacheKey());
+    }
+
+    @Test
+    void getCacheKeyDependsOnTheExistingDocuments() throws Exception
+    {
+        String key = getCacheKey();
+
+        when(this.wiki.exists(FILE_DOCUMENT, this.wikiContext)).thenReturn(false);
+        assertNotEquals(key, getCacheKey());
+    }
+
+    @Test
+    void getCacheKeyDependsOnTheUser() throws Exception
+    {
+        String key = getCacheKey();
+
+        when(this.wikiContext.getUserReference()).thenReturn(null);
+        assertNotEquals(key, getCacheKey());
+    }
+
+    @Test
+    void getCacheKeyWithDelegatedRights() throws Exception
+    {
+        String key = getCacheKey();
+
+        // The rights of the author are part of the key only when they are delegated.
+        when(this.authorizationManager.hasAccess(Right.VIEW, AUTHOR, FILE_DOCUMENT)).thenReturn(false);
+        assertEquals(key, getCacheKey());
+
+        this.parameters.setAsAuthor("true");
+        when(this.fileResolver.isDelegatingRights("true")).thenReturn(true);
+        String delegatedKey = getCacheKey();
+        assertNotEquals(key, delegatedKey);
+
+        when(this.authorizationManager.hasAccess(Right.VIEW, AUTHOR, FILE_DOCUMENT)).thenReturn(true);
+        assertNotEquals(delegatedKey, getCacheKey());
+    }
+
+    private String getCacheKey() throws Exception
+    {
+        ResolutionContext resolutionContext =
+            new ResolutionContext(this.wikiContext, this.authorizationManager, mock(PDFViewerMetrics.class), null);
+        return this.renderingKeys.getCacheKey(this.parameters,
+            this.renderingKeys.getDocumentReferences(this.parameters, this.files), resolutionContext);
+    }
+}
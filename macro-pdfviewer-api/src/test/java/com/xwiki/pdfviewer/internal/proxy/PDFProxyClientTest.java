@@ -0,0 +1,181 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.proxy;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.commons.lang3.reflect.FieldUtils;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicStatusLine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.xwiki.test.annotation.BeforeComponent;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link PDFProxyClient}.
+ *
+ * @version $Id$
+ */
+@ComponentTest
+class PDFProxyClientTest
+{
+    private static final String URL = "https://www.example.org/file.pdf";
+
+    private static final String LOCATION = "Location";
+
+    @InjectMockComponents
+    private PDFProxyClient client;
+
+    @MockComponent
+    private PDFProxyConfiguration configuration;
+
+    private final CloseableHttpClient httpClient = mock(CloseableHttpClient.class);
+
+    @BeforeComponent
+    void configure()
+    {
+        when(this.configuration.getTimeout()).thenReturn(10);
+        when(this.configuration.getAllowedHosts()).thenReturn(List.of("www.example.org", "cdn.example.org"));
+    }
+
+    @BeforeEach
+    void setUp() throws Exception
+    {
+        FieldUtils.writeField(this.client, "httpClient", this.httpClient, true);
+    }
+
+    @Test
+    void isAllowed()
+    {
+        assertTrue(this.client.isAllowed(URL));
+        assertTrue(this.client.isAllowed("http://CDN.example.org/file.pdf"));
+        assertFalse(this.client.isAllowed("https://internal.example.org/file.pdf"));
+        assertFalse(this.client.isAllowed("ftp://www.example.org/file.pdf"));
+        assertFalse(this.client.isAllowed("file:///etc/passwd"));
+        assertFalse(this.client.isAllowed("not a URL"));
+    }
+
+    @Test
+    void fetchFollowingRedirectToAllowedHost() throws Exception
+    {
+        CloseableHttpResponse redirect = createResponse(302, "https://cdn.example.org/files/file.pdf");
+        CloseableHttpResponse file = createResponse(200, null);
+        when(this.httpClient.execute(any(HttpGet.class))).thenReturn(redirect, file);
+
+        try (PDFProxyClient.RemoteFile remoteFile = this.client.fetch(URL, null, null)) {
+            assertTrue(remoteFile.isModified());
+        }
+
+        ArgumentCaptor<HttpGet> requests = ArgumentCaptor.forClass(HttpGet.class);
+        verify(this.httpClient, times(2)).execute(requests.capture());
+        assertEquals("https://cdn.example.org/files/file.pdf", requests.getAllValues().get(1).getURI().toString());
+        verify(redirect).close();
+    }
+
+    @Test
+    void fetchFollowingRelativeRedirect() throws Exception
+    {
+        CloseableHttpResponse redirect = createResponse(301, "/other.pdf");
+        CloseableHttpResponse file = createResponse(200, null);
+        when(this.httpClient.execute(any(HttpGet.class))).thenReturn(redirect, file);
+
+        this.client.fetch(URL, null, null).close();
+
+        ArgumentCaptor<HttpGet> requests = ArgumentCaptor.forClass(HttpGet.class);
+        verify(this.httpClient, times(2)).execute(requests.capture());
+        assertEquals("https://www.example.org/other.pdf", requests.getAllValues().get(1).getURI().toString());
+    }
+
+    @Test
+    void fetchWithRedirectToHostNotAllowed() throws Exception
+    {
+        CloseableHttpResponse redirect = createResponse(302, "http://169.254.169.254/latest/meta-data/");
+        when(this.httpClient.execute(any(HttpGet.class))).thenReturn(redirect);
+
+        IOException exception = assertThrows(IOException.class, () -> this.client.fetch(URL, null, null));
+
+        assertEquals("The host of [http://169.254.169.254/latest/meta-data/] is not allowed.", exception.getMessage());
+        verify(this.httpClient).execute(any(HttpGet.class));
+        verify(redirect).close();
+    }
+
+    @Test
+    void fetchWithRedirectToOtherScheme() throws Exception
+    {
+        when(this.httpClient.execute(any(HttpGet.class))).thenReturn(createResponse(307, "file:///etc/passwd"));
+
+        assertThrows(IOException.class, () -> this.client.fetch(URL, null, null));
+
+        verify(this.httpClient).execute(any(HttpGet.class));
+    }
+
+    @Test
+    void fetchWithTooManyRedirects() throws Exception
+    {
+        when(this.httpClient.execute(any(HttpGet.class))).thenAnswer(invocation -> createResponse(302, URL));
+
+        IOException exception = assertThrows(IOException.class, () -> this.client.fetch(URL, null, null));
+
+        assertEquals("Unexpected status [302] when fetching [" + URL + "].", exception.getMessage());
+        verify(this.httpClient, times(6)).execute(any(HttpGet.class));
+    }
+
+    @Test
+    void fetchWithHostNotAllowed() throws Exception
+    {
+        assertThrows(IOException.class, () -> this.client.fetch("https://internal.example.org/file.pdf", null, null));
+
+        verify(this.httpClient, never()).execute(any(HttpGet.class));
+    }
+
+    private CloseableHttpResponse createResponse(int status, String location) throws Exception
+    {
+        CloseableHttpResponse response = mock(CloseableHttpResponse.class);
+        when(response.getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, status, null));
+        if (location != null) {
+            when(response.getFirstHeader(LOCATION)).thenReturn(new BasicHeader(LOCATION, location));
+        }
+        if (status == 200) {
+            when(response.getEntity()).thenReturn(new StringEntity("%PDF-1.7"));
+        }
+        return response;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.proxy;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link PDFProxyDnsResolver}.
+ *
+ * @version $Id$
+ */
+class PDFProxyDnsResolverTest
+{
+    @ParameterizedTest
+    @ValueSource(strings = {"93.184.216.34", "8.8.8.8", "100.128.0.1", "198.20.0.1", "2606:2800:220:1::1",
+        "::93.184.216.34", "64:ff9b::808:808"})
+    void isPublic(String address) throws UnknownHostException
+    {
+        assertTrue(PDFProxyDnsResolver.isPublic(InetAddress.getByName(address)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        // Private, local and reserved IPv4 ranges.
+        "127.0.0.1", "10.1.2.3", "172.16.0.1", "192.168.1.1", "169.254.169.254", "0.0.0.0", "0.1.2.3",
+        "100.64.0.1", "100.127.255.254", "192.0.0.8", "198.18.0.1", "198.19.255.254", "224.0.0.1", "240.0.0.1",
+        "255.255.255.255",
+        // Local IPv6 ranges.
+        "::1", "::", "fe80::1", "fc00::1", "fd12:3456:789a::1", "ff02::1",
+        // IPv6 addresses embedding a private IPv4 address.
+        "::10.0.0.1", "::192.168.1.1", "64:ff9b::7f00:1",
+        "64:ff9b::a9fe:a9fe"})
+    void isNotPublic(String address) throws UnknownHostException
+    {
+        assertFalse(PDFProxyDnsResolver.isPublic(InetAddress.getByName(address)));
+    }
+
+    @Test
+    void isPublicWithIPv4MappedAddress() throws UnknownHostException
+    {
+        // Unlike the resolved addresses, the parsed IPv4-mapped addresses are converted to IPv4 addresses.
+        assertTrue(PDFProxyDnsResolver.isPublic(getIPv4MappedAddress(93, 184, 216, 34)));
+        assertFalse(PDFProxyDnsResolver.isPublic(getIPv4MappedAddress(127, 0, 0, 1)));
+        assertFalse(PDFProxyDnsResolver.isPublic(getIPv4MappedAddress(10, 0, 0, 1)));
+        assertFalse(PDFProxyDnsResolver.isPublic(getIPv4MappedAddress(169, 254, 169, 254)));
+    }
+
+    private InetAddress getIPv4MappedAddress(int... ipv4) throws UnknownHostException
+    {
+        byte[] bytes = new byte[16];
+        bytes[10] = (byte) 0xFF;
+        bytes[11] = (byte) 0xFF;
+        for (int i = 0; i < ipv4.length; i++) {
+            bytes[12 + i] = (byte) ipv4[i];
+        }
+        return Inet6Address.getByAddress(null, bytes, -1);
+    }
+}
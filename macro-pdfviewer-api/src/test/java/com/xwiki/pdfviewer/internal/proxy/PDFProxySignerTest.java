@@ -0,0 +1,91 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.proxy;
+
+import java.io.File;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.xwiki.environment.Environment;
+import org.xwiki.test.annotation.BeforeComponent;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link PDFProxySigner}.
+ *
+ * @version $Id$
+ */
+@ComponentTest
+class PDFProxySignerTest
+{
+    private static final String URL = "https://www.example.org/file.pdf";
+
+    @TempDir
+    static File permanentDirectory;
+
+    @InjectMockComponents
+    private PDFProxySigner signer;
+
+    @MockComponent
+    private Environment environment;
+
+    @BeforeComponent
+    void configure()
+    {
+        when(this.environment.getPermanentDirectory()).thenReturn(permanentDirectory);
+    }
+
+    @Test
+    void verify()
+    {
+        String signature = this.signer.sign(URL);
+
+        assertTrue(this.signer.verify(URL, signature));
+        assertEquals(signature, this.signer.sign(URL));
+        assertTrue(new File(permanentDirectory, "pdfviewer/proxy/key").isFile());
+    }
+
+    @Test
+    void verifyWithInvalidSignature()
+    {
+        String signature = this.signer.sign(URL);
+
+        assertFalse(this.signer.verify(URL + "?x", signature));
+        assertFalse(this.signer.verify(URL, signature.substring(1)));
+        assertFalse(this.signer.verify(URL, "invalid"));
+        assertFalse(this.signer.verify(URL, ""));
+        assertNotEquals(signature, this.signer.sign("1-5,8"));
+    }
+
+    @Test
+    void verifyWithMissingValues()
+    {
+        assertFalse(this.signer.verify(URL, null));
+        assertFalse(this.signer.verify(null, this.signer.sign(URL)));
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.rest;
+
+import java.util.Collections;
+
+import javax.inject.Provider;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.xwiki.model.reference.AttachmentReference;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.security.authorization.AuthorizationManager;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xwiki.pdfviewer.internal.metrics.PDFViewerTelemetry;
+import com.xwiki.pdfviewer.internal.metrics.PDFViewerTelemetryConfiguration;
+import com.xwiki.pdfviewer.internal.metrics.PDFViewerTelemetrySample;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link DefaultPDFViewerTelemetryResource}.
+ *
+ * @version $Id$
+ */
+@ComponentTest
+class DefaultPDFViewerTelemetryResourceTest
+{
+    private static final DocumentReference USER = new DocumentReference("wiki", "XWiki", "Alice");
+
+    private static final AttachmentReference ATTACHMENT =
+        new AttachmentReference("file.pdf", new DocumentReference("wiki", "Space", "Files"));
+
+    private static final String FILE_URL = "/xwiki/rest/pdfviewer/wikis/wiki/spaces/Space/pages/Files/file.pdf";
+
+    private static final String SAMPLE = "{\"file\":\"" + FILE_URL + "\",\"firstPage\":120.5,\"downloadedBytes\":1024}";
+
+    @InjectMockComponents
+    private DefaultPDFViewerTelemetryResource telemetryResource;
+
+    @MockComponent
+    private PDFViewerTelemetryConfiguration configuration;
+
+    @MockComponent
+    private PDFViewerTelemetry telemetry;
+
+    @MockComponent
+    private PDFViewerRestURLFactory restURLFactory;
+
+    @MockComponent
+    private AuthorizationManager authorizationManager;
+
+    @MockComponent
+    private EntityReferenceSerializer<String> entityReferenceSerializer;
+
+    @MockComponent
+    private Provider<XWikiContext> wikiContextProvider;
+
+    private final XWikiContext wikiContext = mock(XWikiContext.class);
+
+    @BeforeEach
+    void setUp()
+    {
+        when(this.configuration.isEnabled()).thenReturn(true);
+        when(this.wikiContextProvider.get()).thenReturn(this.wikiContext);
+        when(this.wikiContext.getUserReference()).thenReturn(USER);
+        when(this.restURLFactory.getAttachmentReference(FILE_URL)).thenReturn(ATTACHMENT);
+        when(this.authorizationManager.hasAccess(Right.VIEW, USER, ATTACHMENT.getDocumentReference()))
+            .thenReturn(true);
+        when(this.entityReferenceSerializer.serialize(ATTACHMENT)).thenReturn("wiki:Space.Files@file.pdf");
+    }
+
+    @Test
+    void record()
+    {
+        Response response = this.telemetryResource.record("[" + SAMPLE + ", null]");
+
+        assertEquals(Response.Status.NO_CONTENT.getStatusCode(), response.getStatus());
+        ArgumentCaptor<PDFViewerTelemetrySample> sample = ArgumentCaptor.forClass(PDFViewerTelemetrySample.class);
+        // The null samples are ignored.
+        verify(this.telemetry).record(eq("wiki:Space.Files@file.pdf"), sample.capture());
+        verify(this.telemetry).record(any(), any());
+        assertEquals(120.5, sample.getValue().getFirstPage());
+        assertEquals(1024L, sample.getValue().getDownloadedBytes());
+    }
+
+    @Test
+    void recordWithUnknownProperties()
+    {
+        this.telemetryResource.record("[{\"file\":\"" + FILE_URL + "\",\"unknown\":true}]");
+
+        verify(this.telemetry).record(any(), any(PDFViewerTelemetrySample.class));
+    }
+
+    @Test
+    void recordForAttachmentNotViewable()
+    {
+        when(this.authorizationManager.hasAccess(Right.VIEW, USER, ATTACHMENT.getDocumentReference()))
+            .thenReturn(false);
+
+        this.telemetryResource.record("[" + SAMPLE + "]");
+
+        // The sample is still counted, but not aggregated for the attachment.
+        verify(this.telemetry).record(isNull(), any(PDFViewerTelemetrySample.class));
+    }
+
+    @Test
+    void recordWhenDisabled()
+    {
+        when(this.configuration.isEnabled()).thenReturn(false);
+
+        assertStatus(404, "[" + SAMPLE + "]");
+    }
+
+    @Test
+    void recordWithInvalidSamples()
+    {
+        assertStatus(400, null);
+        assertStatus(400, "");
+        assertStatus(400, "not JSON");
+        assertStatus(400, SAMPLE);
+        assertStatus(400, "null");
+    }
+
+    @Test
+    void recordWithTooManySamples()
+    {
+        String samples = "[" + StringUtils.join(Collections.nCopies(50, SAMPLE), ',') + "]";
+        this.telemetryResource.record(samples);
+        verify(this.telemetry, times(50)).record(any(), any(PDFViewerTelemetrySample.class));
+
+        assertStatus(400, "[" + StringUtils.join(Collections.nCopies(51, "{}"), ',') + "]");
+        verify(this.telemetry, times(50)).record(any(), any(PDFViewerTelemetrySample.class));
+    }
+
+    @Test
+    void recordWithTooLargeRequest()
+    {
+        String file = StringUtils.repeat('a', 64 * 1024);
+
+        assertStatus(400, "[{\"file\":\"" + file + "\"}]");
+        verify(this.telemetry, never()).record(any(), any(PDFViewerTelemetrySample.class));
+    }
+
+    private void assertStatus(int status, String samples)
+    {
+        WebApplicationException exception =
+            assertThrows(WebApplicationException.class, () -> this.telemetryResource.record(samples));
+        assertEquals(status, exception.getResponse().getStatus());
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.rest;
+
+import javax.ws.rs.core.EntityTag;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link EntityTags}.
+ *
+ * @version $Id$
+ */
+class EntityTagsTest
+{
+    private static final EntityTag ENTITY_TAG = new EntityTag("1.1-123");
+
+    @Test
+    void matchesWithoutHeader()
+    {
+        assertFalse(EntityTags.matches(null, ENTITY_TAG));
+        assertFalse(EntityTags.matches(" ", ENTITY_TAG));
+    }
+
+    @Test
+    void matchesStrongTag()
+    {
+        assertTrue(EntityTags.matches("\"1.1-123\"", ENTITY_TAG));
+        assertFalse(EntityTags.matches("\"1.1-456\"", ENTITY_TAG));
+        // The entity tags are quoted.
+        assertFalse(EntityTags.matches("1.1-123", ENTITY_TAG));
+    }
+
+    @Test
+    void matchesWeakTag()
+    {
+        // If-None-Match uses the weak comparison.
+        assertTrue(EntityTags.matches("W/\"1.1-123\"", ENTITY_TAG));
+        assertFalse(EntityTags.matches("W/\"1.1-456\"", ENTITY_TAG));
+    }
+
+    @Test
+    void matchesAny()
+    {
+        assertTrue(EntityTags.matches("*", ENTITY_TAG));
+        assertTrue(EntityTags.matches(" * ", ENTITY_TAG));
+    }
+
+    @Test
+    void matchesList()
+    {
+        assertTrue(EntityTags.matches("\"1.1-456\", W/\"1.1-123\"", ENTITY_TAG));
+        assertFalse(EntityTags.matches("\"1.1-456\",\"1.2-123\"", ENTITY_TAG));
+    }
+}
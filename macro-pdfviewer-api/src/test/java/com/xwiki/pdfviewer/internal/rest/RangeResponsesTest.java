@@ -0,0 +1,205 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.internal.rest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Unit tests for {@link RangeResponses}.
+ *
+ * @version $Id$
+ */
+class RangeResponsesTest
+{
+    private static final String CONTENT = "0123456789";
+
+    private static final String MEDIA_TYPE = "application/pdf";
+
+    private static final String FILE_NAME = "file.pdf";
+
+    private static final EntityTag ENTITY_TAG = new EntityTag("1.1-123");
+
+    private static final String CONTENT_RANGE = "Content-Range";
+
+    private static final RangeResponses.Content BYTES = new RangeResponses.Content()
+    {
+        @Override
+        public long getLength()
+        {
+            return CONTENT.length();
+        }
+
+        @Override
+        public InputStream open()
+        {
+            return new ByteArrayInputStream(CONTENT.getBytes(StandardCharsets.UTF_8));
+        }
+    };
+
+    @Test
+    void createWithoutRange() throws Exception
+    {
+        Response response = create(null, null);
+
+        assertEquals(200, response.getStatus());
+        assertNull(response.getHeaderString(CONTENT_RANGE));
+        assertEquals("bytes", response.getHeaderString("Accept-Ranges"));
+        assertEquals(CONTENT, read(response));
+    }
+
+    @Test
+    void createWithRange() throws Exception
+    {
+        Response response = create("bytes=2-5", null);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 2-5/10", response.getHeaderString(CONTENT_RANGE));
+        assertEquals("2345", read(response));
+    }
+
+    @Test
+    void createWithOpenEndedRange() throws Exception
+    {
+        Response response = create("bytes=7-", null);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 7-9/10", response.getHeaderString(CONTENT_RANGE));
+        assertEquals("789", read(response));
+    }
+
+    @Test
+    void createWithSuffixRange() throws Exception
+    {
+        Response response = create("bytes=-4", null);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 6-9/10", response.getHeaderString(CONTENT_RANGE));
+        assertEquals("6789", read(response));
+    }
+
+    @Test
+    void createWithSuffixRangeLargerThanContent() throws Exception
+    {
+        Response response = create("bytes=-20", null);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 0-9/10", response.getHeaderString(CONTENT_RANGE));
+        assertEquals(CONTENT, read(response));
+    }
+
+    @Test
+    void createWithRangeEndAfterContent() throws Exception
+    {
+        Response response = create("bytes=8-100", null);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 8-9/10", response.getHeaderString(CONTENT_RANGE));
+        assertEquals("89", read(response));
+    }
+
+    @Test
+    void createWithUnsatisfiableRange()
+    {
+        Response response = create("bytes=10-", null);
+
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */10", response.getHeaderString(CONTENT_RANGE));
+        assertNull(response.getEntity());
+
+        assertEquals(416, create("bytes=5-2", null).getStatus());
+    }
+
+    @Test
+    void createWithMalformedRange() throws Exception
+    {
+        for (String range : new String[] { "bytes=-", "bytes=1-2,4-5", "items=1-2", "bytes=a-b" }) {
+            Response response = create(range, null);
+
+            assertEquals(200, response.getStatus(), range);
+            assertEquals(CONTENT, read(response), range);
+        }
+    }
+
+    @Test
+    void createWithTooLargeRange() throws Exception
+    {
+        // Positions that don't fit in a long value are ignored rather than failing the request.
+        for (String range : new String[] { "bytes=99999999999999999999-", "bytes=0-99999999999999999999",
+            "bytes=-99999999999999999999" }) {
+            Response response = create(range, null);
+
+            assertEquals(200, response.getStatus(), range);
+            assertEquals(CONTENT, read(response), range);
+        }
+
+        // 18 digits are still accepted.
+        Response response = create("bytes=0-999999999999999999", null);
+        assertEquals(206, response.getStatus());
+        assertEquals(CONTENT, read(response));
+    }
+
+    @Test
+    void createWithMatchingIfRange() throws Exception
+    {
+        Response response = create("bytes=0-1", "\"1.1-123\"");
+
+        assertEquals(206, response.getStatus());
+        assertEquals("01", read(response));
+    }
+
+    @Test
+    void createWithIfRangeMismatch() throws Exception
+    {
+        // The client has an outdated version of the content so the whole content is sent.
+        Response response = create("bytes=0-1", "\"1.1-456\"");
+
+        assertEquals(200, response.getStatus());
+        assertNull(response.getHeaderString(CONTENT_RANGE));
+        assertEquals(CONTENT, read(response));
+
+        // Weak entity tags cannot be used in If-Range.
+        assertEquals(200, create("bytes=0-1", "W/\"1.1-123\"").getStatus());
+    }
+
+    private Response create(String range, String ifRange)
+    {
+        return RangeResponses.create(BYTES, MEDIA_TYPE, FILE_NAME, ENTITY_TAG, range, ifRange).build();
+    }
+
+    private String read(Response response) throws IOException
+    {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(outputStream);
+        return outputStream.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,405 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.pdfviewer.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Provider;
+import javax.script.ScriptContext;
+import javax.script.SimpleScriptContext;
+
+import org.apache.commons.lang3.reflect.FieldUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.localization.ContextualLocalizationManager;
+import org.xwiki.model.reference.AttachmentReference;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceResolver;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.rendering.async.internal.block.BlockAsyncRenderer;
+import org.xwiki.rendering.async.internal.block.BlockAsyncRendererExecutor;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.parser.Parser;
+import org.xwiki.rendering.transformation.MacroTransformationContext;
+import org.xwiki.rendering.transformation.TransformationContext;
+import org.xwiki.script.ScriptContextManager;
+import org.xwiki.script.service.ScriptService;
+import org.xwiki.security.authorization.AuthorizationManager;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.skinx.SkinExtension;
+import org.xwiki.template.Template;
+import org.xwiki.template.TemplateManager;
+import org.xwiki.webjars.script.WebJarsScriptService;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiAttachment;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.web.XWikiRequest;
+import com.xwiki.pdfviewer.internal.MJSMimeTypeRegistrar;
+import com.xwiki.pdfviewer.internal.configuration.PDFViewerConfiguration;
+import com.xwiki.pdfviewer.internal.configuration.PDFViewerConfigurationSnapshot;
+import com.xwiki.pdfviewer.internal.configuration.PDFViewerRenderingConfiguration;
+import com.xwiki.pdfviewer.internal.derivative.PDFDerivativeScheduler;
+import com.xwiki.pdfviewer.internal.license.PDFViewerLicensureCache;
+import com.xwiki.pdfviewer.internal.macro.PDFFileEntry;
+import com.xwiki.pdfviewer.internal.macro.PDFFileEntryCache;
+import com.xwiki.pdfviewer.internal.macro.PDFFileResolver;
+import com.xwiki.pdfviewer.internal.macro.PDFViewerAsyncExecutor;
+import com.xwiki.pdfviewer.internal.macro.PDFViewerBlockAsyncRenderer;
+import com.xwiki.pdfviewer.internal.macro.PDFViewerBlockBuilder;
+import com.xwiki.pdfviewer.internal.macro.PDFViewerMacro;
+import com.xwiki.pdfviewer.internal.macro.PDFViewerRenderingCache;
+import com.xwiki.pdfviewer.internal.macro.PDFViewerRenderingKeys;
+import com.xwiki.pdfviewer.internal.metrics.PDFViewerMetrics;
+import com.xwiki.pdfviewer.internal.metrics.PDFViewerTelemetryConfiguration;
+import com.xwiki.pdfviewer.internal.proxy.PDFProxyCache;
+import com.xwiki.pdfviewer.internal.rest.PDFViewerRestURLFactory;
+import com.xwiki.pdfviewer.macro.PDFFile;
+import com.xwiki.pdfviewer.macro.PDFViewerMacroParameters;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Measures the execution of the PDF Viewer macro, from the parsing of the file parameters to the creation of the
+ * blocks, against mocked XWiki components. The blocks are created by the default Java implementation; the Velocity
+ * template is only mocked. The rendering cache always misses and the asynchronous rendering is executed
+ * synchronously.
+ *
+ * @version $Id$
+ * @since 2.6.3
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PDFViewerMacroBenchmark
+{
+    /**
+     * Where the displayed files come from.
+     */
+    public enum FileSource
+    {
+        /**
+         * Existing attachments, referenced with the {@code file} parameter.
+         */
+        INTERNAL,
+
+        /**
+         * Files outside of the wiki, referenced with the {@code fileFromExternalUrl} parameter.
+         */
+        EXTERNAL,
+
+        /**
+         * Attachments of existing documents, which don't exist themselves.
+         */
+        MISSING
+    }
+
+    /**
+     * The outcome of the view rights checks on the documents holding the attachments.
+     */
+    public enum Rights
+    {
+        /**
+         * The current user can view the documents.
+         */
+        GRANTED,
+
+        /**
+         * Neither the current user nor the content author can view the documents.
+         */
+        DENIED,
+
+        /**
+         * Only the content author can view the documents, and the macro is used with {@code asAuthor=true}.
+         */
+        DELEGATED
+    }
+
+    private static final String WIKI = "xwiki";
+
+    private static final String SPACE = "Benchmark";
+
+    private static final DocumentReference USER = new DocumentReference(WIKI, "XWiki", "User");
+
+    private static final DocumentReference AUTHOR = new DocumentReference(WIKI, "XWiki", "Author");
+
+    private static final DocumentReference CURRENT_DOCUMENT = new DocumentReference(WIKI, SPACE, "WebHome");
+
+    private static final String FILES = "files";
+
+    @Param({ "1", "10", "100" })
+    private int fileCount;
+
+    @Param
+    private FileSource source;
+
+    @Param
+    private Rights rights;
+
+    private PDFViewerMacro macro;
+
+    private PDFViewerMacroParameters parameters;
+
+    private MacroTransformationContext macroContext;
+
+    private ScriptContext scriptContext;
+
+    /**
+     * Create the macro and the mocked components for the current scenario.
+     *
+     * @throws Exception if the mocks cannot be injected
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        XWikiContext wikiContext = mockWikiContext();
+        Provider<XWikiContext> wikiContextProvider = () -> wikiContext;
+
+        // Each file is attached to its own document.
+        List<PDFFileEntry> entries = new ArrayList<>();
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < this.fileCount; i++) {
+            DocumentReference documentReference = new DocumentReference(WIKI, SPACE, "Document" + i);
+            String fileName = "file" + i + ".pdf";
+            if (this.source == FileSource.EXTERNAL) {
+                String url = "https://www.example.org/" + fileName;
+                entries.add(new PDFFileEntry(url, true, new AttachmentReference(url, CURRENT_DOCUMENT)));
+                files.add(url);
+            } else {
+                AttachmentReference reference = new AttachmentReference(fileName, documentReference);
+                String file = SPACE + ".Document" + i + '@' + fileName;
+                entries.add(new PDFFileEntry(file, false, reference));
+                files.add(file);
+                mockDocument(wikiContext, documentReference, fileName);
+            }
+        }
+
+        this.parameters = new PDFViewerMacroParameters();
+        String fileParameter = String.join(",", files);
+        if (this.source == FileSource.EXTERNAL) {
+            this.parameters.setFileFromExternalUrl(fileParameter);
+        } else {
+            this.parameters.setFile(fileParameter);
+        }
+        this.parameters.setAsAuthor(String.valueOf(this.rights == Rights.DELEGATED));
+
+        PDFFileEntryCache fileEntryCache = mock(PDFFileEntryCache.class);
+        when(fileEntryCache.getEntries(fileParameter)).thenReturn(entries);
+
+        this.scriptContext = new SimpleScriptContext();
+        ScriptContextManager scriptContextManager = mock(ScriptContextManager.class);
+        when(scriptContextManager.getScriptContext()).thenReturn(this.scriptContext);
+
+        PDFViewerRestURLFactory restURLFactory = new PDFViewerRestURLFactory();
+        inject(restURLFactory, "wikiContextProvider", wikiContextProvider);
+
+        PDFViewerConfiguration configuration = mock(PDFViewerConfiguration.class);
+        when(configuration.getConfiguration()).thenReturn(PDFViewerConfigurationSnapshot.DEFAULT);
+
+        PDFViewerLicensureCache licensureCache = mock(PDFViewerLicensureCache.class);
+        when(licensureCache.hasLicensure()).thenReturn(true);
+
+        BlockAsyncRendererExecutor asyncRendererExecutor = mock(BlockAsyncRendererExecutor.class);
+        when(asyncRendererExecutor.execute(any(), any())).then(
+            invocation -> invocation.<BlockAsyncRenderer>getArgument(0).render(false, false).getBlock());
+        Provider<PDFViewerBlockAsyncRenderer> asyncRendererProvider = () -> {
+            PDFViewerBlockAsyncRenderer renderer = new PDFViewerBlockAsyncRenderer();
+            inject(renderer, "componentManagerProvider", (Provider<ComponentManager>) () -> null);
+            return renderer;
+        };
+
+        // Not registered in JMX, but recorded like in production.
+        PDFViewerMetrics metrics = new PDFViewerMetrics();
+        PDFFileResolver fileResolver = new PDFFileResolver();
+        inject(fileResolver, "entityReferenceResolver", mock(EntityReferenceResolver.class));
+        inject(fileResolver, "restURLFactory", restURLFactory);
+        inject(fileResolver, "derivativeScheduler", mock(PDFDerivativeScheduler.class));
+        inject(fileResolver, "metrics", metrics);
+        inject(fileResolver, "proxyCache", mock(PDFProxyCache.class));
+
+        PDFViewerRenderingKeys renderingKeys = new PDFViewerRenderingKeys();
+        inject(renderingKeys, "fileResolver", fileResolver);
+
+        PDFViewerAsyncExecutor asyncExecutor = new PDFViewerAsyncExecutor();
+        inject(asyncExecutor, "asyncRendererExecutor", asyncRendererExecutor);
+        inject(asyncExecutor, "asyncRendererProvider", asyncRendererProvider);
+        inject(asyncExecutor, "wikiContextProvider", wikiContextProvider);
+
+        this.macro = new PDFViewerMacro();
+        inject(this.macro, "authorizationManager", mockAuthorizationManager());
+        inject(this.macro, "templateManager", mockTemplateManager());
+        inject(this.macro, "scriptContextManager", scriptContextManager);
+        inject(this.macro, "fileEntryCache", fileEntryCache);
+        inject(this.macro, "licensureCache", licensureCache);
+        inject(this.macro, "wikiContextProvider", wikiContextProvider);
+        inject(this.macro, "mjsMimeTypeRegistrar", mock(MJSMimeTypeRegistrar.class));
+        inject(this.macro, "configuration", configuration);
+        inject(this.macro, "renderingCache", mock(PDFViewerRenderingCache.class));
+        inject(this.macro, "javaScriptExtension", mock(SkinExtension.class));
+        inject(this.macro, "metrics", metrics);
+        inject(this.macro, "renderingConfiguration", mock(PDFViewerRenderingConfiguration.class));
+        inject(this.macro, "telemetryConfiguration", mock(PDFViewerTelemetryConfiguration.class));
+        inject(this.macro, "blockBuilder", createBlockBuilder(wikiContextProvider, restURLFactory));
+        inject(this.macro, "fileResolver", fileResolver);
+        inject(this.macro, "renderingKeys", renderingKeys);
+        inject(this.macro, "asyncExecutor", asyncExecutor);
+
+        this.macroContext = new MacroTransformationContext();
+        this.macroContext.setTransformationContext(new TransformationContext());
+    }
+
+    /**
+     * @return the result of the macro, consumed by JMH so that it is not optimized away
+     * @throws Exception if the macro fails
+     */
+    @Benchmark
+    public List<Block> execute() throws Exception
+    {
+        return this.macro.execute(this.parameters, null, this.macroContext);
+    }
+
+    private PDFViewerBlockBuilder createBlockBuilder(Provider<XWikiContext> wikiContextProvider,
+        PDFViewerRestURLFactory restURLFactory) throws Exception
+    {
+        WebJarsScriptService webJarsScriptService = mock(WebJarsScriptService.class);
+        when(webJarsScriptService.url(anyString(), anyString()))
+            .then(invocation -> "/xwiki/webjars/wiki%3Axwiki/macro-pdfviewer-webjar/2.6.3/"
+                + invocation.getArgument(1) + "?r=1");
+        Parser plainTextParser = mock(Parser.class);
+        when(plainTextParser.parse(any())).thenReturn(new XDOM(Collections.emptyList()));
+
+        PDFViewerBlockBuilder blockBuilder = new PDFViewerBlockBuilder();
+        inject(blockBuilder, "wikiContextProvider", wikiContextProvider);
+        inject(blockBuilder, "localizationManager", mock(ContextualLocalizationManager.class));
+        inject(blockBuilder, "entityReferenceSerializer", mock(EntityReferenceSerializer.class));
+        inject(blockBuilder, "plainTextParser", plainTextParser);
+        inject(blockBuilder, "webJarsScriptServiceProvider", (Provider<ScriptService>) () -> webJarsScriptService);
+        inject(blockBuilder, "javaScriptExtension", mock(SkinExtension.class));
+        inject(blockBuilder, "telemetryConfiguration", mock(PDFViewerTelemetryConfiguration.class));
+        inject(blockBuilder, "restURLFactory", restURLFactory);
+        return blockBuilder;
+    }
+
+    private XWikiContext mockWikiContext()
+    {
+        XWikiContext wikiContext = mock(XWikiContext.class);
+        when(wikiContext.getWikiId()).thenReturn(WIKI);
+        when(wikiContext.getWikiReference()).thenReturn(new WikiReference(WIKI));
+        when(wikiContext.getUserReference()).thenReturn(USER);
+        when(wikiContext.getLocale()).thenReturn(Locale.ENGLISH);
+
+        XWiki wiki = mock(XWiki.class);
+        when(wikiContext.getWiki()).thenReturn(wiki);
+
+        XWikiRequest request = mock(XWikiRequest.class);
+        when(request.getContextPath()).thenReturn("/xwiki");
+        when(wikiContext.getRequest()).thenReturn(request);
+
+        XWikiDocument currentDocument = mock(XWikiDocument.class);
+        when(currentDocument.getDocumentReference()).thenReturn(CURRENT_DOCUMENT);
+        when(currentDocument.getURL(eq("view"), anyString(), any())).thenReturn("/xwiki/bin/view/Benchmark/");
+        when(currentDocument.getContentAuthorReference()).thenReturn(AUTHOR);
+        when(wikiContext.getDoc()).thenReturn(currentDocument);
+        when(wikiContext.get(XWikiDocument.CKEY_SDOC)).thenReturn(currentDocument);
+        return wikiContext;
+    }
+
+    private void mockDocument(XWikiContext wikiContext, DocumentReference documentReference, String fileName)
+        throws Exception
+    {
+        XWikiDocument document = mock(XWikiDocument.class);
+        when(document.getDocumentReference()).thenReturn(documentReference);
+        when(document.getAttachmentURL(eq(fileName), any()))
+            .thenReturn("/xwiki/bin/download/" + SPACE + '/' + documentReference.getName() + '/' + fileName);
+        if (this.source != FileSource.MISSING) {
+            XWikiAttachment attachment = mock(XWikiAttachment.class);
+            when(attachment.getFilename()).thenReturn(fileName);
+            when(attachment.getVersion()).thenReturn("1.1");
+            when(attachment.getReference()).thenReturn(new AttachmentReference(fileName, documentReference));
+            when(document.getAttachment(fileName)).thenReturn(attachment);
+        }
+
+        XWiki wiki = wikiContext.getWiki();
+        when(wiki.exists(documentReference, wikiContext)).thenReturn(true);
+        when(wiki.getDocument(documentReference, wikiContext)).thenReturn(document);
+    }
+
+    private AuthorizationManager mockAuthorizationManager()
+    {
+        AuthorizationManager authorizationManager = mock(AuthorizationManager.class);
+        when(authorizationManager.hasAccess(eq(Right.VIEW), eq(USER), any()))
+            .thenReturn(this.rights == Rights.GRANTED);
+        when(authorizationManager.hasAccess(eq(Right.VIEW), eq(AUTHOR), any()))
+            .thenReturn(this.rights == Rights.DELEGATED);
+        return authorizationManager;
+    }
+
+    private TemplateManager mockTemplateManager() throws Exception
+    {
+        // Resolve the URLs of all the files, like the template does.
+        TemplateManager templateManager = mock(TemplateManager.class);
+        when(templateManager.getTemplate(anyString())).thenReturn(mock(Template.class));
+        when(templateManager.execute(any(Template.class))).then(invocation -> {
+            @SuppressWarnings("unchecked")
+            List<PDFFile> files = (List<PDFFile>) this.scriptContext.getAttribute(FILES);
+            for (PDFFile file : files) {
+                file.getURL();
+                file.getPosterURL();
+                file.getDownloadURL();
+            }
+            return new XDOM(Collections.emptyList());
+        });
+        return templateManager;
+    }
+
+    private static void inject(Object target, String field, Object value)
+    {
+        try {
+            FieldUtils.writeField(target, field, value, true);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(String.format("Failed to inject the field [%s].", field), e);
+        }
+    }
+}
@@ -18,10 +18,14 @@
  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
  */
 (function() {
+   // The viewer opens the file once initialized, after the DOM is loaded, so the whole load is measured.
+   document.addEventListener('DOMContentLoaded', collectTelemetry);
    window.addEventListener('load', function() {
       setExternalLinkTarget();
       setViewRights();
       addPermalinkButton();
+      addServerSideSearch();
+      downloadOriginalFile();
    });
   // #40: Add a copyable link of the PDF file location in the macro toolbar
   function addPermalinkButton() {
@@ -48,6 +52,171 @@
   function setExternalLinkTarget() {
     PDFViewerApplication.preferences.set('externalLinkTarget', 2);
   }
+  // Jump to the pages matching the searched text using the text extracted on the server, so that the find bar doesn't
+  // have to download and parse all the pages of a large file before reaching the first match.
+  function addServerSideSearch() {
+    var lastQuery, timeout;
+    PDFViewerApplication.initializedPromise.then(function() {
+      PDFViewerApplication.eventBus.on('find', function(event) {
+        var query = typeof event.query === 'string' ? event.query.trim() : '';
+        // Only new searches jump, the next and previous matches are handled by the find bar.
+        if (event.type !== '' || query === '' || query === lastQuery) {
+          return;
+        }
+        lastQuery = query;
+        clearTimeout(timeout);
+        // Read on each search since the displayed file can change without reloading the viewer.
+        var searchURL = getSearchURL(new URLSearchParams(window.location.search).get('file'));
+        if (!searchURL) {
+          return;
+        }
+        timeout = setTimeout(function() {
+          searchURL.searchParams.set('q', query);
+          fetch(searchURL, {credentials: 'same-origin'}).then(function(response) {
+            return response.ok ? response.json() : {hits: []};
+          }).then(function(result) {
+            return result.hits.map(function(hit) {
+              return hit.page;
+            });
+          }).catch(function() {
+            return [];
+          }).then(function(pages) {
+            if (query === lastQuery && pages.length > 0) {
+              var currentPage = PDFViewerApplication.page;
+              var nextPage = pages.find(function(page) {
+                return page >= currentPage;
+              }) || pages[0];
+              if (nextPage !== currentPage) {
+                PDFViewerApplication.page = nextPage;
+              }
+            }
+          });
+        }, 250);
+      });
+    });
+  }
+  function getSearchURL(fileURL) {
+    if (!fileURL) {
+      return null;
+    }
+    var url = new URL(fileURL, window.location.href);
+    if (url.origin !== window.location.origin || !/\/rest\/pdfviewer\/.*\/file$/.test(url.pathname)) {
+      return null;
+    }
+    url.pathname = url.pathname.replace(/\/file$/, '/search');
+    // The page numbers of the hits have to match the displayed pages.
+    var pages = url.searchParams.get('pages');
+    url.search = '';
+    if (pages) {
+      url.searchParams.set('pages', pages);
+    }
+    return url;
+  }
+  // The viewer can load a smaller derivative of the attachment (web optimized copy, page range) but the download button
+  // has to save the original file, as the permalink button does.
+  function downloadOriginalFile() {
+    PDFViewerApplication.initializedPromise.then(function() {
+      var downloadOrSave = PDFViewerApplication.downloadOrSave;
+      PDFViewerApplication.downloadOrSave = function() {
+        // Read on each download since the displayed file can change without reloading the viewer.
+        var searchParams = new URLSearchParams(window.location.search);
+        var originalURL = searchParams.get('permalink');
+        if (!originalURL || originalURL === searchParams.get('file')) {
+          return downloadOrSave.apply(this, arguments);
+        }
+        var link = document.createElement('a');
+        link.href = originalURL;
+        link.download = '';
+        document.body.append(link);
+        link.click();
+        link.remove();
+        return Promise.resolve();
+      };
+    });
+  }
+  // Report how long the files take to display, as measured by the browser, when the telemetry is enabled on the server.
+  function collectTelemetry() {
+    var searchParams = new URLSearchParams(window.location.search);
+    if (searchParams.get('telemetry') !== '1' || typeof navigator.sendBeacon !== 'function') {
+      return;
+    }
+    var samples = [];
+    var flush = function() {
+      if (samples.length > 0) {
+        var blob = new Blob([JSON.stringify(samples)], {type: 'application/json'});
+        navigator.sendBeacon(getTelemetryURL(), blob);
+        samples = [];
+      }
+    };
+    document.addEventListener('visibilitychange', function() {
+      if (document.visibilityState === 'hidden') {
+        flush();
+      }
+    });
+    window.addEventListener('pagehide', flush);
+    var addSample = function(sample) {
+      samples.push(sample);
+      if (samples.length >= 10) {
+        flush();
+      }
+    };
+    // The tabs of the multi-file viewers open the other files without reloading the viewer.
+    var open = PDFViewerApplication.open;
+    PDFViewerApplication.open = function(args) {
+      var fileURL = args && typeof args.url === 'string' ? args.url : searchParams.get('file');
+      var sample = {file: fileURL};
+      var start = performance.now();
+      var eventBus = PDFViewerApplication.eventBus;
+      var onPageRendered = function() {
+        sample.firstPage = performance.now() - start;
+        eventBus.off('pagerendered', onPageRendered);
+      };
+      if (eventBus) {
+        eventBus.on('pagerendered', onPageRendered);
+      }
+      return open.apply(this, arguments).then(function(result) {
+        sample.documentLoad = performance.now() - start;
+        var pdfDocument = PDFViewerApplication.pdfDocument;
+        return (pdfDocument ? pdfDocument.getDownloadInfo() : Promise.resolve({})).then(function(downloadInfo) {
+          sample.fileSize = downloadInfo.length;
+          return result;
+        });
+      }, function(error) {
+        sample.error = true;
+        throw error;
+      }).finally(function() {
+        // Give the first page some time to render before reporting the sample.
+        setTimeout(function() {
+          if (eventBus) {
+            eventBus.off('pagerendered', onPageRendered);
+          }
+          addResourceTimings(sample, fileURL, start);
+          addSample(sample);
+        }, 1000);
+      });
+    };
+  }
+  function addResourceTimings(sample, fileURL, start) {
+    var absoluteFileURL = new URL(fileURL, window.location.href).href;
+    var downloadedBytes = 0;
+    performance.getEntriesByType('resource').forEach(function(entry) {
+      // The file can be fetched with several range requests.
+      if (entry.startTime >= start && entry.name === absoluteFileURL) {
+        downloadedBytes += entry.transferSize || 0;
+      } else if (entry.name.indexOf('pdf.worker') >= 0 && sample.workerStart === undefined) {
+        sample.workerStart = entry.responseEnd - entry.startTime;
+      }
+    });
+    // The transfer size is not exposed for the cross origin files, unless allowed by the server.
+    if (downloadedBytes > 0) {
+      sample.downloadedBytes = downloadedBytes;
+    }
+  }
+  function getTelemetryURL() {
+    var pathname = window.location.pathname;
+    var contextPath = pathname.substring(0, Math.max(pathname.indexOf('/webjars/'), 0));
+    return contextPath + '/rest/pdfviewer/telemetry';
+  }
   // PDFVIEWER-13: Allow author of the macro to delegate its view right on the PDF document.
   function setViewRights() {
     const searchParams = new URLSearchParams(window.location.search);
@@ -0,0 +1,189 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+/**
+ * Renders the PDF files directly in the page, without the iframe of the full viewer. All the embedded viewers of a page
+ * share this module, and thus a single pdf.js library instance and a single worker.
+ */
+import * as pdfjsLib from './build/pdf.mjs';
+
+pdfjsLib.GlobalWorkerOptions.workerSrc = new URL('./build/pdf.worker.mjs', import.meta.url).href;
+
+// Pages are rendered a bit before they are scrolled into view and released once they are far from it.
+const PAGE_MARGIN = '100% 0px';
+
+// Leave room for the vertical scroll bar of the container when fitting the pages to its width.
+const SCROLLBAR_WIDTH = 20;
+
+let sharedWorker;
+
+function getWorker() {
+  if (!sharedWorker || sharedWorker.destroyed) {
+    sharedWorker = new pdfjsLib.PDFWorker({name: 'pdfviewer-embedded'});
+  }
+  return sharedWorker;
+}
+
+/**
+ * Display the PDF file of an embedded viewer.
+ *
+ * @param container the element with the {@code pdfviewer-embedded} class, holding the file URL in its data attributes
+ * @return a promise resolved once the document is loaded
+ */
+export function render(container) {
+  if (container.dataset.pdfviewerRendered) {
+    return Promise.resolve();
+  }
+  container.dataset.pdfviewerRendered = 'true';
+  if (container.dataset.lazy === 'true' && window.IntersectionObserver) {
+    return new Promise(function(resolve) {
+      const observer = new IntersectionObserver(function(entries) {
+        if (entries.some(entry => entry.isIntersecting)) {
+          observer.disconnect();
+          resolve(load(container));
+        }
+      }, {rootMargin: '200px 0px'});
+      observer.observe(container);
+    });
+  }
+  return load(container);
+}
+
+function load(container) {
+  const loadingTask = pdfjsLib.getDocument({
+    url: container.dataset.file,
+    withCredentials: container.dataset.withCredentials === '1',
+    worker: getWorker()
+  });
+  return loadingTask.promise.then(pdfDocument => {
+    return pdfDocument.getPage(1).then(firstPage => addPages(container, pdfDocument, firstPage));
+  }).catch(error => {
+    console.error('Failed to load the PDF file.', error);
+    const message = document.createElement('div');
+    message.className = 'box errormessage';
+    message.textContent = container.dataset.errorMessage || error.message;
+    container.replaceChildren(message);
+  });
+}
+
+function addPages(container, pdfDocument, firstPage) {
+  const pagesContainer = document.createElement('div');
+  pagesContainer.className = 'pdfviewer-embedded-pages';
+  // Size all the pages like the first one until they are rendered, so that the scroll bar is stable.
+  const scale = (container.clientWidth - SCROLLBAR_WIDTH) / firstPage.getViewport({scale: 1}).width;
+  const firstViewport = firstPage.getViewport({scale});
+  const pages = new Map();
+  const observer = new IntersectionObserver(function(entries) {
+    entries.forEach(entry => {
+      const page = pages.get(entry.target);
+      if (entry.isIntersecting) {
+        page.show();
+      } else {
+        page.hide();
+      }
+    });
+  }, {root: container, rootMargin: PAGE_MARGIN});
+  for (let pageNumber = 1; pageNumber <= pdfDocument.numPages; pageNumber++) {
+    const page = new EmbeddedPage(pdfDocument, pageNumber, scale, firstViewport);
+    pages.set(page.element, page);
+    pagesContainer.appendChild(page.element);
+    observer.observe(page.element);
+  }
+  container.appendChild(pagesContainer);
+  // Remove the poster once the first page is displayed.
+  const poster = container.querySelector('.pdfviewer-poster');
+  if (poster) {
+    pagesContainer.firstChild.addEventListener('pdfviewer:pagerendered', () => poster.remove(), {once: true});
+  }
+}
+
+class EmbeddedPage {
+  constructor(pdfDocument, pageNumber, scale, defaultViewport) {
+    this.pdfDocument = pdfDocument;
+    this.pageNumber = pageNumber;
+    this.scale = scale;
+    this.element = document.createElement('div');
+    this.element.className = 'pdfviewer-embedded-page';
+    this.element.style.margin = '0 auto 10px';
+    this.element.style.backgroundColor = 'white';
+    this.setSize(defaultViewport);
+  }
+
+  setSize(viewport) {
+    this.element.style.width = Math.floor(viewport.width) + 'px';
+    this.element.style.height = Math.floor(viewport.height) + 'px';
+  }
+
+  show() {
+    this.visible = true;
+    if (this.rendering || this.canvas) {
+      return;
+    }
+    this.rendering = true;
+    this.pdfDocument.getPage(this.pageNumber).then(page => {
+      if (!this.visible) {
+        return;
+      }
+      this.page = page;
+      const viewport = page.getViewport({scale: this.scale});
+      const outputScale = window.devicePixelRatio || 1;
+      const canvas = document.createElement('canvas');
+      canvas.width = Math.floor(viewport.width * outputScale);
+      canvas.height = Math.floor(viewport.height * outputScale);
+      canvas.style.width = '100%';
+      canvas.style.height = '100%';
+      this.setSize(viewport);
+      this.renderTask = page.render({
+        canvasContext: canvas.getContext('2d'),
+        viewport,
+        transform: outputScale !== 1 ? [outputScale, 0, 0, outputScale, 0, 0] : null
+      });
+      return this.renderTask.promise.then(() => {
+        this.canvas = canvas;
+        this.element.replaceChildren(canvas);
+        this.element.dispatchEvent(new CustomEvent('pdfviewer:pagerendered'));
+      });
+    }).catch(error => {
+      if (!(error instanceof pdfjsLib.RenderingCancelledException)) {
+        console.error(`Failed to render the page ${this.pageNumber}.`, error);
+      }
+    }).finally(() => {
+      this.rendering = false;
+      this.renderTask = null;
+    });
+  }
+
+  hide() {
+    // Release the memory used by the pages far from the view; they are rendered again when needed.
+    this.visible = false;
+    if (this.renderTask) {
+      this.renderTask.cancel();
+    }
+    if (this.canvas) {
+      this.canvas.width = 0;
+      this.canvas.height = 0;
+      this.canvas = null;
+      this.element.replaceChildren();
+    }
+    if (this.page) {
+      this.page.cleanup();
+      this.page = null;
+    }
+  }
+}